@@ -0,0 +1,151 @@
+package edu.ucsd.cse110.sharednotes.activity;
+
+import android.util.Log;
+import android.view.View;
+import android.widget.EditText;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.*;
+
+@RunWith(AndroidJUnit4.class)
+public class NoteTextUpdateTest {
+    private static final int WIDTH = 1080;
+    // Every 3 seconds for 3 minutes, with a remote edit every third poll.
+    private static final int POLLS = 60;
+    private static final int CHANGE_EVERY = 3;
+
+    private EditText view;
+    private String content;
+
+    @Before
+    public void setUp() {
+        var line = new StringBuilder();
+        while (line.length() < 99) line.append("lorem ipsum ");
+        var text = new StringBuilder();
+        while (text.length() < 100_000) text.append(line, 0, 99).append('\n');
+        content = text.toString();
+
+        onMain(() -> {
+            var context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+            view = new EditText(context);
+            view.setText(content);
+            layout();
+        });
+    }
+
+    @Test
+    public void keepsTheSelection() {
+        onMain(() -> {
+            // Select something after the change, and something before it.
+            view.setSelection(90_000, 90_010);
+            var changed = "changed" + content.substring(5);
+            assertTrue(NoteActivity.updateText(view.getText(), content, changed));
+            assertEquals(changed, view.getText().toString());
+            assertEquals(90_002, view.getSelectionStart());
+            assertEquals(90_012, view.getSelectionEnd());
+
+            view.setSelection(10);
+            var cut = "changed" + content.substring(5, 50_000) + content.substring(50_100);
+            assertTrue(NoteActivity.updateText(view.getText(), changed, cut));
+            assertEquals(cut, view.getText().toString());
+            assertEquals(10, view.getSelectionStart());
+            assertTrue(NoteActivity.updateText(view.getText(), cut, cut));
+        });
+    }
+
+    @Test
+    public void editsAtBothEndsLeaveTheMiddleAlone() {
+        onMain(() -> {
+            // Select something in the middle, which one splice over the whole note would replace.
+            view.setSelection(50_000, 50_010);
+            var changed = "x" + content.substring(1, content.length() - 1) + "y";
+            assertTrue(NoteActivity.updateText(view.getText(), content, changed));
+            assertEquals(changed, view.getText().toString());
+            assertEquals(50_000, view.getSelectionStart());
+            assertEquals(50_010, view.getSelectionEnd());
+        });
+    }
+
+    @Test
+    public void unsavedTypingIsNotReverted() {
+        onMain(() -> {
+            view.getText().insert(0, "typed ");
+            var typed = view.getText().toString();
+
+            assertFalse(NoteActivity.updateText(view.getText(), content, content + "theirs"));
+            assertEquals(typed, view.getText().toString());
+            // Once it's saved and comes back, it's the note again.
+            assertTrue(NoteActivity.updateText(view.getText(), content, typed));
+            assertEquals(typed, view.getText().toString());
+        });
+    }
+
+    /** Layout time for a 100 KB note while it's being polled, setText() vs. updateText(). */
+    @Test
+    public void pollingBenchmark() {
+        var setText = new long[1];
+        var update = new long[1];
+        onMain(() -> {
+            setText[0] = poll(true);
+            view.setText(content);
+            layout();
+
+            // The user is reading near the top while someone edits further down.
+            view.setSelection(1_000, 1_010);
+            update[0] = poll(false);
+            assertEquals(polled, view.getText().toString());
+            assertEquals(1_000, view.getSelectionStart());
+            assertEquals(1_010, view.getSelectionEnd());
+        });
+
+        Log.i("Benchmark", String.format(
+                "%d polls of a 100 KB note: setText %.1f ms, updateText %.1f ms",
+                POLLS, setText[0] / 1e6, update[0] / 1e6
+        ));
+    }
+
+    // The note as the last poll brought it.
+    private String polled;
+
+    /** How long showing every poll's note (and laying it out) takes, in ns. */
+    private long poll(boolean useSetText) {
+        var shown = content;
+        var next = content;
+        var start = System.nanoTime();
+        for (int i = 0; i < POLLS; i++) {
+            if (i % CHANGE_EVERY == 0) {
+                // Someone edits a line in the middle.
+                var at = 50_000 + i;
+                next = next.substring(0, at) + "x" + next.substring(at + 1);
+            }
+            if (useSetText) {
+                // What we used to do: every poll, changed or not.
+                view.setText(next);
+            } else if (!next.equals(shown)) {
+                assertTrue(NoteActivity.updateText(view.getText(), shown, next));
+            }
+            shown = next;
+            layout();
+        }
+        polled = next;
+        return System.nanoTime() - start;
+    }
+
+    private void layout() {
+        view.measure(
+                View.MeasureSpec.makeMeasureSpec(WIDTH, View.MeasureSpec.EXACTLY),
+                View.MeasureSpec.makeMeasureSpec(0, View.MeasureSpec.UNSPECIFIED)
+        );
+        view.layout(0, 0, view.getMeasuredWidth(), view.getMeasuredHeight());
+    }
+
+    private static void onMain(Runnable runnable) {
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(runnable);
+    }
+}
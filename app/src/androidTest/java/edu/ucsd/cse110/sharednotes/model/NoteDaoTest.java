@@ -0,0 +1,702 @@
+package edu.ucsd.cse110.sharednotes.model;
+
+import android.content.Context;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.paging.PagingSource;
+import androidx.room.Room;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import kotlin.coroutines.Continuation;
+import kotlin.coroutines.CoroutineContext;
+import kotlin.coroutines.EmptyCoroutineContext;
+import kotlin.coroutines.intrinsics.IntrinsicsKt;
+
+import static org.junit.Assert.*;
+
+@RunWith(AndroidJUnit4.class)
+public class NoteDaoTest {
+    private NoteDatabase db;
+    private NoteDao dao;
+
+    @Before
+    public void setUp() {
+        Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        db = Room.inMemoryDatabaseBuilder(context, NoteDatabase.class).build();
+        dao = db.getDao();
+    }
+
+    @After
+    public void tearDown() {
+        db.close();
+    }
+
+    @Test
+    public void upsertIfNewerSkipsOlderVersions() {
+        assertTrue(dao.upsertIfNewer(new Note("a", "two", 2)));
+        assertFalse(dao.upsertIfNewer(new Note("a", "one", 1)));
+        assertFalse(dao.upsertIfNewer(new Note("a", "two again", 2)));
+        assertTrue(dao.upsertIfNewer(new Note("a", "three", 3)));
+
+        assertEquals(3, dao.getVersion("a"));
+    }
+
+    @Test
+    public void saveIncrementsOnce() {
+        var note = new Note("a", "", 0);
+        dao.save(note, "device");
+        assertEquals(1, note.version);
+        dao.save(note, "device");
+        assertEquals(2, note.version);
+        assertEquals(2, dao.getVersion("a"));
+    }
+
+    @Test
+    public void saveAlwaysLandsAboveTheCurrentVersion() {
+        dao.upsertIfNewer(new Note("a", "remote", 10));
+
+        var note = new Note("a", "local", 3);
+        dao.save(note, "device");
+
+        assertEquals(11, note.version);
+        assertEquals(11, dao.getVersion("a"));
+    }
+
+    @Test
+    public void concurrentEditsBecomeConflicts() {
+        var base = new Note("a", "base", 1, VersionVector.EMPTY.increment("x"));
+        dao.upsert(base);
+
+        // We edit it here...
+        var ours = base.copy();
+        ours.content = "ours";
+        dao.save(ours, "here");
+
+        // ...while someone else edits it there.
+        var theirs = new Note("a", "theirs", 2, base.vector.increment("there"));
+        assertEquals(NoteDao.Applied.CONFLICT, dao.applyRemote(theirs));
+        assertEquals("ours", dao.find("a").content);
+        assertEquals("theirs", dao.findConflict("a").content);
+
+        var resolved = dao.resolveConflict("a", "both", "here");
+        assertEquals(VersionVector.Order.AFTER, resolved.vector.compare(theirs.vector));
+        assertEquals(VersionVector.Order.AFTER, resolved.vector.compare(ours.vector));
+        assertNull(dao.findConflict("a"));
+
+        // Once the server has the resolved note, echoing it back changes nothing.
+        assertEquals(NoteDao.Applied.SKIPPED, dao.applyRemote(resolved));
+    }
+
+    @Test
+    public void savingTwiceFromTheSameNoteIsNotAConflict() {
+        // The note as the screen got it, which doesn't catch up with saves until Room re-emits.
+        var shown = new Note("a", "", 0);
+        var first = shown.copy();
+        first.content = "one";
+        dao.save(first, "here");
+        var second = shown.copy();
+        second.content = "one two";
+        dao.save(second, "here");
+
+        assertNull(dao.findConflict("a"));
+        assertEquals("one two", dao.find("a").content);
+        assertEquals(2, dao.getVersion("a"));
+        assertEquals(2, dao.find("a").vector.get("here"));
+
+        // An edit from elsewhere that the screen never saw still is one.
+        var theirs = new Note("a", "theirs", 3, dao.find("a").vector.increment("there"));
+        assertEquals(NoteDao.Applied.WRITTEN, dao.applyRemote(theirs));
+        var third = shown.copy();
+        third.content = "one two three";
+        dao.save(third, "here");
+        assertEquals("theirs", dao.findConflict("a").content);
+    }
+
+    @Test
+    public void newestVersionWinsWhateverTheOrder() throws InterruptedException {
+        var versions = new ArrayList<Long>();
+        for (long v = 1; v <= 200; v++) versions.add(v);
+        Collections.shuffle(versions);
+
+        // Deliberately race the writes on several threads.
+        var pool = Executors.newFixedThreadPool(4);
+        var done = new CountDownLatch(versions.size());
+        for (var version : versions) {
+            pool.execute(() -> {
+                dao.upsertIfNewer(new Note("a", "v" + version, version));
+                done.countDown();
+            });
+        }
+        assertTrue(done.await(30, TimeUnit.SECONDS));
+        pool.shutdown();
+
+        assertEquals(200, dao.getVersion("a"));
+        List<Note> notes = dao.getAll(List.of("a"));
+        assertEquals("v200", notes.get(0).content);
+    }
+
+    @Test
+    public void racedSavesAndRemoteNotesEndUpAsIfOneAtATime() throws InterruptedException {
+        var base = new Note("a", "base", 1, VersionVector.EMPTY.increment("x"));
+        // Saves from a screen that never caught up with anything, and a run of edits made
+        // elsewhere that never saw any of them.
+        var ops = new ArrayList<Consumer<NoteDao>>();
+        var theirs = base.vector;
+        for (int i = 1; i <= 50; i++) {
+            var content = "ours " + i;
+            ops.add(target -> {
+                var ours = base.copy();
+                ours.content = content;
+                target.save(ours, "here");
+            });
+            theirs = theirs.increment("there");
+            var remote = new Note("a", "theirs " + i, 1 + i, theirs);
+            ops.add(target -> target.applyRemote(remote.copy()));
+        }
+        dao.upsert(base.copy());
+
+        // Race them, noting the order the transactions actually ran in.
+        var order = Collections.synchronizedList(new ArrayList<Integer>());
+        var pool = Executors.newFixedThreadPool(4);
+        var done = new CountDownLatch(ops.size());
+        for (int i = 0; i < ops.size(); i++) {
+            var op = i;
+            pool.execute(() -> {
+                db.runInTransaction(() -> {
+                    order.add(op);
+                    ops.get(op).accept(dao);
+                });
+                done.countDown();
+            });
+        }
+        assertTrue(done.await(30, TimeUnit.SECONDS));
+        pool.shutdown();
+
+        // The same, one at a time in that order.
+        Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        var serialDb = Room.inMemoryDatabaseBuilder(context, NoteDatabase.class).build();
+        var serial = serialDb.getDao();
+        serial.upsert(base.copy());
+        for (var op : order) ops.get(op).accept(serial);
+
+        var note = dao.find("a");
+        var expected = serial.find("a");
+        assertEquals(expected.content, note.content);
+        assertEquals(expected.version, note.version);
+        assertEquals(expected.vector, note.vector);
+        var conflict = dao.findConflict("a");
+        var expectedConflict = serial.findConflict("a");
+        // Neither side ever saw the other's edits, so one of those is always kept aside.
+        assertNotNull(conflict);
+        assertEquals(expectedConflict.content, conflict.content);
+        assertEquals(expectedConflict.vector, conflict.vector);
+        serialDb.close();
+
+        // Whatever the order, every save counted exactly once.
+        assertEquals(50, note.vector.get("here"));
+        assertTrue(note.version > 50);
+        assertEquals(note.version, dao.getVersion("a"));
+    }
+
+    private static String text(int length) {
+        var line = "the quick brown fox edits a shared note, version ";
+        var text = new StringBuilder(length + 100);
+        for (int i = 0; text.length() < length; i++) text.append(line).append(i).append('\n');
+        text.setLength(length);
+        return text.toString();
+    }
+
+    @Test
+    public void longNotesAreStoredInChunks() {
+        var content = text(3_000_000);
+        dao.upsert(new Note("a", content, 1));
+
+        assertEquals(content, dao.find("a").content);
+        assertEquals(content, dao.getAll(List.of("a")).get(0).content);
+
+        // Newer versions replace the chunks, and shrinking back below the limit drops them.
+        assertEquals(1, dao.updateIfNewer("a", content + "!", 2, VersionVector.EMPTY));
+        assertEquals(content + "!", dao.find("a").content);
+        dao.upsert(new Note("a", "short", 3));
+        var note = dao.find("a");
+        assertEquals("short", note.content);
+        assertEquals(0, note.chunks);
+
+        dao.upsert(new Note("b", content, 1));
+        dao.delete("b");
+        assertNull(dao.find("b"));
+        assertEquals(0, chunkCount());
+    }
+
+    @Test
+    public void savingALongNoteKeepsItWhole() {
+        var content = text(500_000);
+        var note = new Note("a", content, 0);
+        dao.save(note, "here");
+        note.content = content + "more";
+        dao.save(note, "here");
+
+        assertEquals(content + "more", dao.find("a").content);
+        assertNull(dao.findConflict("a"));
+        assertEquals(content, dao.getRevisionContent("a", 1));
+        assertEquals(content + "more", dao.getRevisionContent("a", 2));
+    }
+
+    @Test
+    public void longCopiesOfANoteAreStoredInChunksToo() {
+        var content = text(3_000_000);
+        var outbox = db.getOutboxDao();
+
+        outbox.enqueue(OutboxEntry.of(new Note("a", content, 1)));
+        var due = outbox.getDue(Long.MAX_VALUE, 16);
+        assertEquals(1, due.size());
+        assertTrue(due.get(0).chunks > 0);
+        assertEquals(NoteChunk.head(content), due.get(0).content);
+        assertEquals(content, outbox.get("a").content);
+
+        outbox.acknowledge(NoteBase.of(new Note("a", content, 1)));
+        assertEquals(content, outbox.getBase("a").content);
+        outbox.remove("a", 1);
+        assertNull(outbox.get("a"));
+        assertEquals(content, outbox.getBase("a").content);
+
+        dao.upsertConflict(NoteConflict.of(new Note("a", content, 2)));
+        assertEquals(content, dao.findConflict("a").content);
+        dao.deleteConflict("a");
+        assertNull(dao.findConflict("a"));
+
+        // Only the base is left.
+        try (var cursor = db.query("SELECT DISTINCT store FROM note_chunks", null)) {
+            assertEquals(1, cursor.getCount());
+            cursor.moveToFirst();
+            assertEquals(NoteChunk.BASES, cursor.getString(0));
+        }
+    }
+
+    private long chunkCount() {
+        try (var cursor = db.query("SELECT COUNT(*) FROM note_chunks", null)) {
+            cursor.moveToFirst();
+            return cursor.getLong(0);
+        }
+    }
+
+    /** Database size, and write and read times, for notes of 10 KB, 1 MB and 10 MB. */
+    @Test
+    public void storageBenchmark() {
+        for (var length : new int[]{10_000, 1_000_000, 10_000_000}) {
+            var content = text(length);
+            var title = "note " + length;
+            var before = databaseBytes();
+
+            var writeStart = System.nanoTime();
+            dao.upsert(new Note(title, content, 1));
+            var writeNs = System.nanoTime() - writeStart;
+
+            var readStart = System.nanoTime();
+            var read = dao.find(title);
+            var readNs = System.nanoTime() - readStart;
+
+            assertEquals(content, read.content);
+            Log.i("Benchmark", String.format(
+                    "%,d chars: %,d bytes in the database, write %.1f ms, read %.1f ms",
+                    length, databaseBytes() - before, writeNs / 1e6, readNs / 1e6
+            ));
+        }
+    }
+
+    private long databaseBytes() {
+        try (var cursor = db.query("SELECT page_count * page_size FROM pragma_page_count(), pragma_page_size()", null)) {
+            cursor.moveToFirst();
+            return cursor.getLong(0);
+        }
+    }
+
+    @Test
+    public void historyRebuildsEveryVersion() {
+        var versions = new ArrayList<String>();
+        var note = new Note("a", "", 0);
+        for (int i = 0; i < 3 * NoteRevision.KEYFRAME_EVERY; i++) {
+            // Edits at the start, middle and end, and now and then a rewrite.
+            var content = i % 10 == 9 ? "rewritten " + i : "start " + i + " " + note.content + " end " + i;
+            note.content = content;
+            dao.save(note, "here");
+            versions.add(content);
+        }
+
+        for (int i = 0; i < versions.size(); i++) {
+            assertEquals(versions.get(i), dao.getRevisionContent("a", i + 1));
+        }
+        assertNull(dao.getRevisionContent("a", versions.size() + 1));
+        assertTrue(revisionCount("keyframe") >= versions.size() / NoteRevision.KEYFRAME_EVERY);
+
+        dao.delete("a");
+        assertEquals(0, revisionCount("1"));
+    }
+
+    @Test
+    public void historyHasOneRevisionPerVersion() {
+        dao.upsert(new Note("a", "one", 1));
+        // Written again under the same version: the history goes with what the note is now.
+        dao.upsert(new Note("a", "one again", 1));
+        assertFalse(dao.upsertIfNewer(new Note("a", "zero", 0)));
+        assertTrue(dao.upsertIfNewer(new Note("a", "one again!", 2)));
+
+        assertEquals("one again", dao.getRevisionContent("a", 1));
+        assertEquals("one again!", dao.getRevisionContent("a", 2));
+        assertEquals(2, revisionCount("1"));
+    }
+
+    @Test
+    public void oldRevisionsAreCompactedAway() {
+        var note = new Note("a", "", 0);
+        for (int i = 0; i < 40; i++) {
+            note.content = note.content + i;
+            dao.save(note, "here");
+        }
+
+        // Long after: everything but the latest is past keeping, and the latest becomes a keyframe.
+        var later = System.currentTimeMillis() + NoteRevision.MAX_AGE_MS + 1;
+        assertEquals(39, dao.compactRevisions("a", later));
+        assertEquals(note.content, dao.getRevisionContent("a", 40));
+        assertNull(dao.getRevisionContent("a", 39));
+        assertEquals(0, dao.compactRevisions("a", later));
+
+        // History carries on from there.
+        note.content = "after";
+        dao.save(note, "here");
+        assertEquals("after", dao.getRevisionContent("a", 41));
+    }
+
+    @Test
+    public void historyOfAChunkedNote() {
+        var content = text(100_000);
+        var note = new Note("a", content, 0);
+        dao.save(note, "here");
+        note.content = "edited " + content;
+        dao.save(note, "here");
+        note.content = note.content + " and again";
+        dao.save(note, "here");
+
+        assertEquals(content, dao.getRevisionContent("a", 1));
+        assertEquals("edited " + content, dao.getRevisionContent("a", 2));
+        assertEquals("edited " + content + " and again", dao.getRevisionContent("a", 3));
+    }
+
+    @Test
+    public void shrinkingAChunkedNote() {
+        var content = text(100_000);
+        var note = new Note("a", content, 0);
+        dao.save(note, "here");
+        assertTrue(chunkCount() > 0);
+
+        var shorter = content.substring(0, NoteChunk.MAX_INLINE - 1);
+        note.content = shorter;
+        dao.save(note, "here");
+
+        var saved = dao.find("a");
+        assertEquals(shorter, saved.content);
+        assertEquals(0, saved.chunks);
+        assertEquals(0, chunkCount());
+        assertEquals(content, dao.getRevisionContent("a", 1));
+        assertEquals(shorter, dao.getRevisionContent("a", 2));
+    }
+
+    @Test
+    public void veryLongNotesHaveNoHistory() {
+        dao.upsert(new Note("a", text(NoteRevision.MAX_CONTENT + 1), 1));
+        assertEquals(0, revisionCount("1"));
+        assertNull(dao.getRevisionContent("a", 1));
+    }
+
+    /**
+     * How long rebuilding revisions takes (which shouldn't grow with the history), and how much
+     * room the history takes, for a 10 KB note saved thousands of times with small edits.
+     */
+    @Test
+    public void historyBenchmark() {
+        final int saves = 3000;
+        var random = new Random(1);
+        var note = new Note("a", text(10_000), 0);
+        var before = databaseBytes();
+        for (int i = 0; i < saves; i++) {
+            var at = random.nextInt(note.content.length());
+            var end = Math.min(note.content.length(), at + random.nextInt(8));
+            note.content = note.content.substring(0, at) + "edit " + i + note.content.substring(end);
+            dao.save(note, "here");
+        }
+        var historyBytes = databaseBytes() - before;
+
+        // Compaction keeps the history to about MAX_REVISIONS (it runs at each keyframe).
+        var kept = revisionCount("1");
+        assertTrue(kept <= NoteRevision.MAX_REVISIONS + NoteRevision.KEYFRAME_EVERY);
+        var oldest = saves - kept + 1;
+        assertNotNull(dao.getRevisionContent("a", oldest));
+        assertEquals(note.content, dao.getRevisionContent("a", saves));
+
+        var times = new long[500];
+        for (int i = 0; i < times.length; i++) {
+            var version = oldest + random.nextInt((int) kept);
+            var start = System.nanoTime();
+            assertNotNull(dao.getRevisionContent("a", version));
+            times[i] = System.nanoTime() - start;
+        }
+        Arrays.sort(times);
+        var median = times[times.length / 2] / 1e6;
+        Log.i("Benchmark", String.format(
+                "%,d revisions kept of %,d saves, %,d bytes of history (%,d bytes if stored whole): "
+                        + "rebuild median %.2f ms, p99 %.2f ms, max %.2f ms",
+                kept, saves, historyBytes, kept * note.content.length() * 2L,
+                median, times[times.length * 99 / 100] / 1e6, times[times.length - 1] / 1e6
+        ));
+    }
+
+    private long revisionCount(String where) {
+        try (var cursor = db.query("SELECT COUNT(*) FROM note_revisions WHERE " + where, null)) {
+            cursor.moveToFirst();
+            return cursor.getLong(0);
+        }
+    }
+
+    /** The first 10,000 notes' list: the first page, against every row like the list used to. */
+    @Test
+    public void pagingBenchmark() throws InterruptedException {
+        addNotes(10_000, 500);
+
+        var start = System.nanoTime();
+        var page = firstPage(dao.getSummaries(), 40);
+        var pageNs = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        var rows = 0;
+        try (var cursor = db.query("SELECT * FROM notes ORDER BY title", null)) {
+            var content = cursor.getColumnIndexOrThrow("content");
+            while (cursor.moveToNext()) {
+                cursor.getString(content);
+                rows++;
+            }
+        }
+        var allNs = System.nanoTime() - start;
+
+        assertEquals(40, page.size());
+        assertEquals(10_000, rows);
+        Log.i("Benchmark", String.format(
+                "10,000 notes: first page of 40 %.1f ms, every note %.1f ms", pageNs / 1e6, allNs / 1e6
+        ));
+    }
+
+    /** A page of long notes for the list: just the previews, against the whole notes. */
+    @Test
+    public void summaryBenchmark() throws InterruptedException {
+        addNotes(200, 32_000);
+
+        var start = System.nanoTime();
+        var page = firstPage(dao.getSummaries(), 40);
+        var summaryNs = System.nanoTime() - start;
+        var summaryChars = 0L;
+        for (var summary : page) summaryChars += summary.title.length() + summary.preview.length();
+
+        start = System.nanoTime();
+        var fullChars = 0L;
+        try (var cursor = db.query("SELECT * FROM notes ORDER BY title LIMIT 40", null)) {
+            var title = cursor.getColumnIndexOrThrow("title");
+            var content = cursor.getColumnIndexOrThrow("content");
+            while (cursor.moveToNext()) {
+                fullChars += cursor.getString(title).length() + cursor.getString(content).length();
+            }
+        }
+        var fullNs = System.nanoTime() - start;
+
+        assertEquals(40, page.size());
+        assertEquals(NoteSummary.PREVIEW_LENGTH, page.get(0).preview.length());
+        Log.i("Benchmark", String.format(
+                "A page of 40 notes of 32,000 chars: previews %,d chars in %.1f ms, whole notes %,d chars in %.1f ms",
+                summaryChars, summaryNs / 1e6, fullChars, fullNs / 1e6
+        ));
+        assertTrue(summaryChars * 100 < fullChars);
+    }
+
+    /** Searching 10,000 notes for a word only a few have: the FTS index, against LIKE. */
+    @Test
+    public void searchBenchmark() throws InterruptedException {
+        addNotes(10_000, 500);
+        db.runInTransaction(() -> {
+            for (int i = 0; i < 20; i++) {
+                dao.upsert(new Note("trip " + i, "flights to Zanzibar, day " + i + "\n" + text(500), 1));
+            }
+        });
+        var like = "SELECT title, version, substr(content, 1, " + NoteSummary.PREVIEW_LENGTH + ") "
+                + "FROM notes WHERE title LIKE ? OR content LIKE ? ORDER BY title LIMIT 40";
+        var args = new Object[]{"%zanzib%", "%zanzib%"};
+
+        // Warm both up first.
+        firstPage(dao.search("\"zanzib*\""), 40);
+        db.query(like, args).close();
+
+        var start = System.nanoTime();
+        var found = firstPage(dao.search("\"zanzib*\""), 40);
+        var ftsNs = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        var scanned = 0;
+        try (var cursor = db.query(like, args)) {
+            while (cursor.moveToNext()) scanned++;
+        }
+        var likeNs = System.nanoTime() - start;
+
+        assertEquals(20, found.size());
+        assertEquals(20, scanned);
+        assertTrue(found.get(0).preview.contains(NoteSummary.MATCH_START + "Zanzibar" + NoteSummary.MATCH_END));
+        Log.i("Benchmark", String.format(
+                "Searching 10,000 notes: FTS %.1f ms, LIKE %.1f ms", ftsNs / 1e6, likeNs / 1e6
+        ));
+    }
+
+    @Test
+    public void creatingANoteNeverOverwritesIt() {
+        var note = new Note("a", "", 0);
+        assertNotEquals(-1, dao.insertIfAbsent(note));
+        note.content = "typed";
+        dao.save(note, "here");
+
+        // e.g. the note opened again from a stale list.
+        assertEquals(-1, dao.insertIfAbsent(new Note("a", "")));
+        assertEquals("typed", dao.find("a").content);
+    }
+
+    @Test
+    public void deletedNotesLeaveNothingBehind() {
+        var outbox = db.getOutboxDao();
+        var content = text(3_000_000);
+        var note = new Note("a", content, 0);
+        dao.save(note, "here");
+        dao.save(note, "here");
+        outbox.enqueue(OutboxEntry.of(new Note("a", content, 1)));
+        outbox.acknowledge(NoteBase.of(new Note("a", content, 1)));
+        dao.upsertConflict(NoteConflict.of(new Note("a", "theirs", 2)));
+        dao.upsertCrdt(new NoteCrdtState("a", "v1.0", new byte[]{1}));
+
+        assertEquals(1, dao.delete("a"));
+        assertNull(dao.find("a"));
+        assertNull(outbox.get("a"));
+        assertNull(outbox.getBase("a"));
+        assertNull(dao.findConflict("a"));
+        assertNull(dao.getCrdt("a"));
+        assertNull(dao.getRevisionContent("a", 2));
+        assertEquals(0, chunkCount());
+
+        // Made again under the same title, it starts from nothing.
+        var again = new Note("a", "", 0);
+        assertNotEquals(-1, dao.insertIfAbsent(again));
+        again.content = "new";
+        dao.save(again, "here");
+        assertEquals(1, again.version);
+        assertEquals("new", dao.find("a").content);
+        assertNull(dao.findConflict("a"));
+        assertEquals("new", dao.getRevisionContent("a", 1));
+        assertNull(dao.getRevisionContent("a", 2));
+    }
+
+    /**
+     * 500 notes pulled from the server, written one transaction each, against one for the whole
+     * batch like the sync engine does. On disk, so that each commit costs what it really does.
+     */
+    @Test
+    public void batchedWritesBenchmark() {
+        Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        var name = "batch-benchmark.db";
+        context.deleteDatabase(name);
+        var disk = Room.databaseBuilder(context, NoteDatabase.class, name).build();
+        var diskDao = disk.getDao();
+        var outboxDao = disk.getOutboxDao();
+
+        var one = new ArrayList<Note>();
+        var batch = new ArrayList<Note>();
+        for (int i = 0; i < 500; i++) {
+            one.add(new Note("one " + i, "pulled note " + i, 1, VersionVector.EMPTY.increment("server")));
+            batch.add(new Note("batch " + i, "pulled note " + i, 1, VersionVector.EMPTY.increment("server")));
+        }
+
+        var start = System.nanoTime();
+        for (var note : one) {
+            disk.runInTransaction(() -> {
+                diskDao.applyRemote(note);
+                outboxDao.acknowledge(NoteBase.of(note));
+            });
+        }
+        var oneNs = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        disk.runInTransaction(() -> {
+            for (var note : batch) diskDao.applyRemote(note);
+            var bases = new ArrayList<NoteBase>();
+            for (var note : batch) bases.add(NoteBase.of(note));
+            outboxDao.acknowledgeAll(bases);
+        });
+        var batchNs = System.nanoTime() - start;
+
+        assertEquals("pulled note 499", diskDao.find("one 499").content);
+        assertEquals("pulled note 499", diskDao.find("batch 499").content);
+        disk.close();
+        context.deleteDatabase(name);
+
+        Log.i("Benchmark", String.format(
+                "500 remote notes: one transaction each %.1f ms, one for the batch %.1f ms",
+                oneNs / 1e6, batchNs / 1e6
+        ));
+    }
+
+    /** Add {@code count} notes of {@code length} chars each, in one go. */
+    private void addNotes(int count, int length) {
+        var content = text(length);
+        db.runInTransaction(() -> {
+            for (int i = 0; i < count; i++) {
+                dao.upsert(new Note(String.format("note %05d", i), i + " " + content, 1));
+            }
+        });
+    }
+
+    /** Load the first page from a PagingSource, the way the list does. */
+    @SuppressWarnings("unchecked")
+    private static <T> List<T> firstPage(PagingSource<Integer, T> source, int size) throws InterruptedException {
+        var result = new Object[1];
+        var done = new CountDownLatch(1);
+        var params = new PagingSource.LoadParams.Refresh<Integer>(null, size, false);
+        // load() is a suspend fun: it either returns right away, or calls us back when it's done.
+        var returned = source.load(params, new Continuation<PagingSource.LoadResult<Integer, T>>() {
+            @NonNull
+            @Override
+            public CoroutineContext getContext() {
+                return EmptyCoroutineContext.INSTANCE;
+            }
+
+            @Override
+            public void resumeWith(@NonNull Object value) {
+                result[0] = value;
+                done.countDown();
+            }
+        });
+        if (returned == IntrinsicsKt.getCOROUTINE_SUSPENDED()) {
+            assertTrue(done.await(30, TimeUnit.SECONDS));
+        } else {
+            result[0] = returned;
+        }
+        return ((PagingSource.LoadResult.Page<Integer, T>) result[0]).getData();
+    }
+}
@@ -0,0 +1,91 @@
+package edu.ucsd.cse110.sharednotes.model;
+
+import android.content.Context;
+import android.database.sqlite.SQLiteDatabase;
+
+import androidx.room.Room;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.*;
+
+@RunWith(AndroidJUnit4.class)
+public class NoteMigrationsTest {
+    private static final String NAME = "migration_test.db";
+
+    private Context context;
+    private NoteDatabase db;
+
+    @Before
+    public void setUp() {
+        context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        context.deleteDatabase(NAME);
+    }
+
+    @After
+    public void tearDown() {
+        if (db != null) db.close();
+        context.deleteDatabase(NAME);
+    }
+
+    @Test
+    public void notesSurviveEveryUpgradeFromTheFirstVersion() {
+        var longContent = "a long note\n".repeat(20_000);
+
+        // The database as the first version of the app left it.
+        try (var old = SQLiteDatabase.openOrCreateDatabase(context.getDatabasePath(NAME), null)) {
+            old.execSQL("CREATE TABLE IF NOT EXISTS `notes` (`title` TEXT NOT NULL, `content` TEXT NOT NULL, "
+                    + "`version` INTEGER NOT NULL, PRIMARY KEY(`title`))");
+            old.execSQL("INSERT INTO notes VALUES ('groceries', 'milk and eggs', 3)");
+            old.execSQL("INSERT INTO notes VALUES ('novel', ?, 7)", new Object[]{longContent});
+            old.setVersion(2);
+        }
+
+        // Room checks every table against the entities as it opens, so a migration that gets a
+        // table even slightly wrong fails right here.
+        db = Room.databaseBuilder(context, NoteDatabase.class, NAME)
+                .addMigrations(NoteMigrations.ALL)
+                .build();
+        var dao = db.getDao();
+
+        var groceries = dao.find("groceries");
+        assertEquals("milk and eggs", groceries.content);
+        assertEquals(3, groceries.version);
+        assertTrue(groceries.vector.isEmpty());
+
+        // Long notes were moved into chunks on the way.
+        var novel = dao.find("novel");
+        assertEquals(longContent, novel.content);
+        try (var cursor = db.query("SELECT chunks, length(content) FROM notes WHERE title = 'novel'", null)) {
+            cursor.moveToFirst();
+            assertTrue(cursor.getInt(0) > 0);
+            assertEquals(NoteChunk.MAX_INLINE, cursor.getInt(1));
+        }
+        try (var cursor = db.query("SELECT DISTINCT store FROM note_chunks", null)) {
+            cursor.moveToFirst();
+            assertEquals(NoteChunk.NOTES, cursor.getString(0));
+        }
+
+        // Notes from before the search index existed can be found too.
+        try (var cursor = db.query("SELECT rowid FROM notes_fts WHERE notes_fts MATCH 'eggs'", null)) {
+            assertEquals(1, cursor.getCount());
+        }
+
+        // And the tables added along the way work.
+        dao.save(new Note("groceries", "milk, eggs and bread", 3), "here");
+        assertEquals("milk, eggs and bread", dao.find("groceries").content);
+        assertEquals(4, dao.getVersion("groceries"));
+        // History starts from the first save after the upgrade.
+        assertEquals("milk, eggs and bread", dao.getRevisionContent("groceries", 4));
+        assertNull(dao.getRevisionContent("groceries", 3));
+        db.getOutboxDao().upsertCursor(new SyncCursor("notes", "c1"));
+        assertEquals("c1", db.getOutboxDao().getCursor("notes"));
+        dao.upsertCrdt(new NoteCrdtState("groceries", "v4.0", new byte[]{1}));
+        assertEquals("v4.0", dao.getCrdt("groceries").origin);
+    }
+}
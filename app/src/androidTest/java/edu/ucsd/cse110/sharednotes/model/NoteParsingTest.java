@@ -0,0 +1,62 @@
+package edu.ucsd.cse110.sharednotes.model;
+
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import com.google.gson.Gson;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.*;
+
+@RunWith(AndroidJUnit4.class)
+public class NoteParsingTest {
+    /** What notes were parsed as before: by reflection, with a new Gson every time. */
+    private static class ReflectedNote {
+        String title;
+        String content;
+        long version;
+    }
+
+    /** Parsing a small and a 100 KB note with the adapter, against a new Gson and reflection. */
+    @Test
+    public void parsingBenchmark() {
+        var small = new Note("groceries", "eggs, milk, bread", 42).toJSON();
+        var large = new Note("essay", "lorem ipsum ".repeat(8500), 42).toJSON();
+
+        var notes = new String[]{small, large};
+        var runCounts = new int[]{20_000, 500};
+        for (int n = 0; n < notes.length; n++) {
+            var json = notes[n];
+            var runs = runCounts[n];
+
+            // Both read the same note.
+            var parsed = Note.fromJSON(json);
+            var reflected = new Gson().fromJson(json, ReflectedNote.class);
+            assertEquals(reflected.title, parsed.title);
+            assertEquals(reflected.content, parsed.content);
+            assertEquals(reflected.version, parsed.version);
+
+            // Warm up both first.
+            for (int i = 0; i < runs; i++) {
+                Note.fromJSON(json);
+                new Gson().fromJson(json, ReflectedNote.class);
+            }
+
+            var start = System.nanoTime();
+            for (int i = 0; i < runs; i++) Note.fromJSON(json);
+            var adapterNs = (System.nanoTime() - start) / runs;
+
+            start = System.nanoTime();
+            for (int i = 0; i < runs; i++) new Gson().fromJson(json, ReflectedNote.class);
+            var reflectedNs = (System.nanoTime() - start) / runs;
+
+            Log.i("Benchmark", String.format(
+                    "Parsing a %d B note: adapter %.1f us, new Gson + reflection %.1f us",
+                    json.length(), adapterNs / 1e3, reflectedNs / 1e3
+            ));
+        }
+    }
+}
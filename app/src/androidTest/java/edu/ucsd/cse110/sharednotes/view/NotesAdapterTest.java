@@ -0,0 +1,181 @@
+package edu.ucsd.cse110.sharednotes.view;
+
+import android.view.View;
+import android.view.ViewGroup;
+
+import androidx.annotation.NonNull;
+import androidx.lifecycle.Lifecycle;
+import androidx.lifecycle.LifecycleOwner;
+import androidx.lifecycle.LifecycleRegistry;
+import androidx.paging.PagingData;
+import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.BooleanSupplier;
+
+import edu.ucsd.cse110.sharednotes.model.NoteSummary;
+
+import static org.junit.Assert.*;
+
+@RunWith(AndroidJUnit4.class)
+public class NotesAdapterTest {
+    private static final int WIDTH = 1080;
+    private static final int HEIGHT = 1920;
+
+    private RecordingAdapter adapter;
+    private RecyclerView list;
+    private Lifecycle lifecycle;
+
+    /** Records every bind, with its payloads, and how many rows were made. */
+    private static class RecordingAdapter extends NotesAdapter {
+        final List<List<Object>> binds = new ArrayList<>();
+        int created = 0;
+
+        @NonNull
+        @Override
+        public ViewHolder onCreateViewHolder(ViewGroup parent, int viewType) {
+            created++;
+            return super.onCreateViewHolder(parent, viewType);
+        }
+
+        @Override
+        public void onBindViewHolder(@NonNull ViewHolder holder, int position, @NonNull List<Object> payloads) {
+            binds.add(new ArrayList<>(payloads));
+            super.onBindViewHolder(holder, position, payloads);
+        }
+    }
+
+    @Before
+    public void setUp() throws InterruptedException {
+        onMain(() -> {
+            var context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+            adapter = new RecordingAdapter();
+            adapter.setOnNoteClickListener(note -> {});
+            adapter.setOnNoteDeleteClickListener(note -> {});
+
+            list = new RecyclerView(context);
+            list.setLayoutManager(new LinearLayoutManager(context));
+            list.setAdapter(adapter);
+
+            var owner = new LifecycleOwner() {
+                final LifecycleRegistry registry = new LifecycleRegistry(this);
+
+                @NonNull
+                @Override
+                public Lifecycle getLifecycle() {
+                    return registry;
+                }
+            };
+            owner.registry.setCurrentState(Lifecycle.State.RESUMED);
+            lifecycle = owner.registry;
+        });
+
+        submit(List.of(
+                new NoteSummary("eggs", 1, "buy eggs"),
+                new NoteSummary("milk", 1, "buy milk")
+        ));
+        waitFor(() -> adapter.getItemCount() == 2);
+        onMain(this::layout);
+        onMain(() -> {
+            assertEquals(2, adapter.created);
+            assertEquals(List.of(List.of(), List.of()), adapter.binds);
+            adapter.binds.clear();
+        });
+    }
+
+    @Test
+    public void previewChangeOnlyRebindsThePreview() throws InterruptedException {
+        var changed = new ArrayList<Object>();
+        onMain(() -> adapter.registerAdapterDataObserver(new RecyclerView.AdapterDataObserver() {
+            @Override
+            public void onItemRangeChanged(int positionStart, int itemCount, Object payload) {
+                changed.add(payload);
+            }
+        }));
+
+        // Same version, different snippet: what a search for "milk" does to the row.
+        var snippet = "buy " + NoteSummary.MATCH_START + "milk" + NoteSummary.MATCH_END;
+        submit(List.of(
+                new NoteSummary("eggs", 1, "buy eggs"),
+                new NoteSummary("milk", 1, snippet)
+        ));
+        waitFor(() -> !changed.isEmpty());
+        onMain(this::layout);
+
+        onMain(() -> {
+            assertEquals(List.of(NotesAdapter.PAYLOAD_PREVIEW), changed);
+            // Only the changed row, and only its preview.
+            assertEquals(List.of(List.of(NotesAdapter.PAYLOAD_PREVIEW)), adapter.binds);
+            // Updated in place: no new row to cross-fade to.
+            assertEquals(2, adapter.created);
+
+            var holder = (NotesAdapter.ViewHolder) list.findViewHolderForAdapterPosition(1);
+            assertEquals("buy milk", holder.previewView.getText().toString());
+            assertEquals("milk", holder.nameView.getText().toString());
+        });
+    }
+
+    @Test
+    public void unchangedNotesAreNotRebound() throws InterruptedException {
+        var changed = new ArrayList<Object>();
+        onMain(() -> adapter.registerAdapterDataObserver(new RecyclerView.AdapterDataObserver() {
+            @Override
+            public void onItemRangeChanged(int positionStart, int itemCount, Object payload) {
+                changed.add(payload);
+            }
+
+            @Override
+            public void onItemRangeInserted(int positionStart, int itemCount) {
+                changed.add(positionStart);
+            }
+        }));
+
+        submit(List.of(
+                new NoteSummary("eggs", 1, "buy eggs"),
+                new NoteSummary("milk", 1, "buy milk"),
+                new NoteSummary("tea", 1, "buy tea")
+        ));
+        waitFor(() -> adapter.getItemCount() == 3);
+        onMain(this::layout);
+
+        onMain(() -> {
+            assertEquals(List.of(2), changed);
+            assertEquals(List.of(List.of()), adapter.binds);
+        });
+    }
+
+    private void submit(List<NoteSummary> notes) {
+        onMain(() -> adapter.submitData(lifecycle, PagingData.from(notes)));
+    }
+
+    private void layout() {
+        list.measure(
+                View.MeasureSpec.makeMeasureSpec(WIDTH, View.MeasureSpec.EXACTLY),
+                View.MeasureSpec.makeMeasureSpec(HEIGHT, View.MeasureSpec.EXACTLY)
+        );
+        list.layout(0, 0, WIDTH, HEIGHT);
+    }
+
+    /** The diff is worked out in the background, so wait for it to land. */
+    private static void waitFor(BooleanSupplier condition) throws InterruptedException {
+        var done = new boolean[1];
+        for (int i = 0; i < 500; i++) {
+            onMain(() -> done[0] = condition.getAsBoolean());
+            if (done[0]) return;
+            Thread.sleep(10);
+        }
+        fail("Timed out");
+    }
+
+    private static void onMain(Runnable runnable) {
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(runnable);
+    }
+}
@@ -0,0 +1,28 @@
+package edu.ucsd.cse110.sharednotes;
+
+import android.app.Application;
+import android.os.StrictMode;
+
+public class SharedNotesApplication extends Application {
+    @Override
+    public void onCreate() {
+        super.onCreate();
+
+        // In debug builds, crash as soon as anything touches the disk or network on the main
+        // thread, so that kind of regression gets caught right away instead of as jank.
+        if (BuildConfig.DEBUG) {
+            StrictMode.setThreadPolicy(new StrictMode.ThreadPolicy.Builder()
+                    .detectDiskReads()
+                    .detectDiskWrites()
+                    .detectNetwork()
+                    .penaltyLog()
+                    .penaltyDeath()
+                    .build());
+            StrictMode.setVmPolicy(new StrictMode.VmPolicy.Builder()
+                    .detectLeakedClosableObjects()
+                    .detectLeakedSqlLiteObjects()
+                    .penaltyLog()
+                    .build());
+        }
+    }
+}
@@ -12,12 +12,14 @@ import androidx.recyclerview.widget.RecyclerView;
 
 import android.annotation.SuppressLint;
 import android.os.Bundle;
+import android.text.Editable;
+import android.text.TextWatcher;
 import android.util.Log;
 import android.view.inputmethod.EditorInfo;
 import android.widget.EditText;
 
 import edu.ucsd.cse110.sharednotes.R;
-import edu.ucsd.cse110.sharednotes.model.Note;
+import edu.ucsd.cse110.sharednotes.model.NoteSummary;
 import edu.ucsd.cse110.sharednotes.view.NotesAdapter;
 import edu.ucsd.cse110.sharednotes.viewmodel.ListViewModel;
 
@@ -100,6 +102,14 @@ public class ListActivity extends AppCompatActivity {
         setupViews(viewModel, adapter);
     }
 
+    @Override
+    protected void onStart() {
+        super.onStart();
+        // Every time the list comes back, catch up on notes edited elsewhere in the meantime.
+        // The view model provider hands back the same view model every time.
+        setupViewModel().sync();
+    }
+
     private ListViewModel setupViewModel() {
         return new ViewModelProvider(this).get(ListViewModel.class);
     }
@@ -107,15 +117,15 @@ public class ListActivity extends AppCompatActivity {
     @NonNull
     private NotesAdapter setupAdapter(ListViewModel viewModel) {
         NotesAdapter adapter = new NotesAdapter();
-        adapter.setHasStableIds(true);
         adapter.setOnNoteClickListener(note -> onNoteClicked(note, viewModel));
         adapter.setOnNoteDeleteClickListener(note -> onNoteDeleteClicked(note, viewModel));
-        viewModel.getNotes().observe(this, adapter::setNotes);
+        viewModel.getNotes().observe(this, notes -> adapter.submitData(getLifecycle(), notes));
         return adapter;
     }
 
     private void setupViews(ListViewModel viewModel, NotesAdapter adapter) {
         setupToolbar();
+        setupSearch(viewModel);
         setupRecycler(adapter);
         setupInput(viewModel);
     }
@@ -135,6 +145,23 @@ public class ListActivity extends AppCompatActivity {
         recyclerView.setAdapter(adapter);
     }
 
+    private void setupSearch(ListViewModel viewModel) {
+        var search = (EditText) findViewById(R.id.input_search);
+        search.addTextChangedListener(new TextWatcher() {
+            @Override
+            public void beforeTextChanged(CharSequence s, int start, int count, int after) {}
+
+            @Override
+            public void onTextChanged(CharSequence s, int start, int before, int count) {}
+
+            @Override
+            public void afterTextChanged(Editable s) {
+                // The view model waits for typing to pause before actually searching.
+                viewModel.search(s.toString());
+            }
+        });
+    }
+
     private void setupInput(ListViewModel viewModel) {
         var input = (EditText) findViewById(R.id.input_new_note_title);
         input.setOnEditorActionListener((view, actionId, event) -> {
@@ -149,6 +176,8 @@ public class ListActivity extends AppCompatActivity {
 
             // ...wait for the database to finish persisting it...
             note.observe(this, noteEntity -> {
+                if (noteEntity == null) return;
+
                 // ...stop observing.
                 note.removeObservers(this);
 
@@ -163,19 +192,19 @@ public class ListActivity extends AppCompatActivity {
 
     /* Mediation Logic */
 
-    public void onNoteClicked(Note note, ListViewModel viewModel) {
+    public void onNoteClicked(NoteSummary note, ListViewModel viewModel) {
         // Launch NoteActivity
         // Note that we do _NOT_ want to call itemView.getContext().startActivity() inside
         // ViewHolder,because it is the context of a ViewHolder which might get recycled.
         // Therefore, we delegate to the NoteActivity class to create the intent.
         Log.d("NotesAdapter", "Opened note " + note.title);
-        var intent = NoteActivity.intentFor(this, note);
+        var intent = NoteActivity.intentFor(this, note.title);
         startActivity(intent);
     }
 
-    public void onNoteDeleteClicked(Note note, ListViewModel viewModel) {
+    public void onNoteDeleteClicked(NoteSummary note, ListViewModel viewModel) {
         // Delete the note
         Log.d("NotesAdapter", "Deleted note " + note.title);
-        viewModel.delete(note);
+        viewModel.delete(note.title);
     }
 }
\ No newline at end of file
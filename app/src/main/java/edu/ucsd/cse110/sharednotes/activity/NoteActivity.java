@@ -3,27 +3,52 @@ package edu.ucsd.cse110.sharednotes.activity;
 import android.content.Context;
 import android.content.Intent;
 import android.os.Bundle;
+import android.text.Editable;
+import android.text.TextWatcher;
+import android.text.format.DateUtils;
 import android.view.View;
 import android.widget.EditText;
 import android.widget.Toast;
 
+import androidx.annotation.VisibleForTesting;
+import androidx.appcompat.app.AlertDialog;
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.appcompat.widget.Toolbar;
 import androidx.lifecycle.LiveData;
+import androidx.lifecycle.Observer;
 import androidx.lifecycle.ViewModelProvider;
 
+import java.util.List;
+
 import edu.ucsd.cse110.sharednotes.R;
 import edu.ucsd.cse110.sharednotes.model.Note;
+import edu.ucsd.cse110.sharednotes.model.NoteCoEditor;
+import edu.ucsd.cse110.sharednotes.model.NoteConflict;
 import edu.ucsd.cse110.sharednotes.model.NoteDao;
 import edu.ucsd.cse110.sharednotes.model.NoteDatabase;
+import edu.ucsd.cse110.sharednotes.model.NoteDelta;
+import edu.ucsd.cse110.sharednotes.model.NoteRevision;
+import edu.ucsd.cse110.sharednotes.model.TextMerge;
 import edu.ucsd.cse110.sharednotes.viewmodel.ListViewModel;
 import edu.ucsd.cse110.sharednotes.viewmodel.NoteViewModel;
 
 public class NoteActivity extends AppCompatActivity {
+    // How much of a note dialogs show: the whole thing can be restored, or kept, regardless.
+    private static final int PREVIEW_LENGTH = 8 * 1024;
 
     private LiveData<Note> note;
     private NoteDao dao;
     private EditText contentView;
+    private NoteViewModel viewModel;
+    private AlertDialog conflictDialog;
+    private AlertDialog historyDialog;
+    // Decided once, so a note doesn't switch to co-editing halfway through.
+    private boolean coEdit;
+    private NoteCoEditor.Session coEditing;
+    private boolean applyingRemoteEdit = false;
+    // What the note was the last time we showed it. Not the Note itself: saving changes that.
+    private long shownVersion = -1;
+    private String shownContent = null;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -34,7 +59,7 @@ public class NoteActivity extends AppCompatActivity {
         var intent = getIntent();
         var title = intent.getStringExtra("note_title");
 
-        var viewModel = setupViewModel();
+        viewModel = setupViewModel();
         note = viewModel.getNote(title);
         
         // Set up the toolbar.
@@ -42,9 +67,15 @@ public class NoteActivity extends AppCompatActivity {
 
         // Set up button.
         setupSaveButton(viewModel);
+        setupHistoryButton(title);
 
         // Set up the contents to update.
         note.observe(this, this::onNoteChanged);
+        coEdit = NoteCoEditor.isEnabled();
+        if (coEdit) contentView.addTextChangedListener(new CoEditWatcher());
+
+        // Let the user settle edits made elsewhere at the same time as theirs.
+        viewModel.getConflict(title).observe(this, this::onConflictChanged);
     }
 
     private NoteViewModel setupViewModel() {
@@ -69,24 +100,220 @@ public class NoteActivity extends AppCompatActivity {
     private void setupSaveButton(NoteViewModel viewModel) {
         var saveButton = findViewById(R.id.button_save);
         saveButton.setOnClickListener((View v) -> {
-            var updatedNote = note.getValue();
+            var shownNote = note.getValue();
             var updatedContent = contentView.getText().toString();
-            assert updatedNote != null;
+            assert shownNote != null;
 
+            // Everyone showing this note shares the one Note (see NoteRepository): change a copy.
+            var updatedNote = shownNote.copy();
             updatedNote.content = updatedContent;
 
             viewModel.save(updatedNote);
         });
     }
 
+    private void setupHistoryButton(String title) {
+        var historyButton = findViewById(R.id.button_history);
+        historyButton.setOnClickListener((View v) ->
+                observeOnce(viewModel.getHistory(title), revisions -> showHistory(title, revisions)));
+    }
+
+    /** List the note's earlier versions. Picking one shows it, and lets the user restore it. */
+    private void showHistory(String title, List<NoteRevision.Summary> revisions) {
+        if (revisions.isEmpty()) {
+            Toast.makeText(this, R.string.history_empty, Toast.LENGTH_SHORT).show();
+            return;
+        }
+
+        var items = new String[revisions.size()];
+        for (int i = 0; i < items.length; i++) {
+            var revision = revisions.get(i);
+            var savedAt = DateUtils.formatDateTime(this, revision.savedAt,
+                    DateUtils.FORMAT_SHOW_DATE | DateUtils.FORMAT_SHOW_TIME | DateUtils.FORMAT_ABBREV_ALL);
+            items[i] = getString(R.string.history_item, revision.version, savedAt, revision.length);
+        }
+
+        showHistoryDialog(new AlertDialog.Builder(this)
+                .setTitle(R.string.history)
+                .setItems(items, (dialog, which) -> {
+                    var version = revisions.get(which).version;
+                    observeOnce(viewModel.getRevision(title, version), content -> showRevision(version, content));
+                })
+                .setNegativeButton(R.string.history_close, null));
+    }
+
+    private void showRevision(long version, String content) {
+        // Compacted away since the list was shown.
+        if (content == null) {
+            Toast.makeText(this, R.string.history_missing, Toast.LENGTH_SHORT).show();
+            return;
+        }
+
+        showHistoryDialog(new AlertDialog.Builder(this)
+                .setTitle(getString(R.string.history_revision_title, version))
+                .setMessage(preview(content))
+                .setPositiveButton(R.string.history_restore, (dialog, which) -> restore(content))
+                .setNegativeButton(R.string.history_close, null));
+    }
+
+    /** Save an old version as a new edit, so the versions since then stay in the history too. */
+    private void restore(String content) {
+        var shownNote = note.getValue();
+        if (shownNote == null) return;
+
+        // Through the text, so a co-editing session sees it as our edit. It replaces whatever the
+        // user has typed: that's what restoring means.
+        var text = contentView.getText();
+        updateText(text, text.toString(), content);
+        var restoredNote = shownNote.copy();
+        restoredNote.content = content;
+        viewModel.save(restoredNote);
+    }
+
+    /** The start of a note to show in a dialog, which would choke on a long one. */
+    private static String preview(String content) {
+        if (content.length() <= PREVIEW_LENGTH) return content;
+        var end = PREVIEW_LENGTH;
+        if (Character.isHighSurrogate(content.charAt(end - 1))) end--;
+        return content.substring(0, end) + "…";
+    }
+
+    private void showHistoryDialog(AlertDialog.Builder builder) {
+        if (historyDialog != null) historyDialog.dismiss();
+        historyDialog = builder.show();
+    }
+
+    /** Get the first value {@code data} is set to, e.g. a one-off query. */
+    private <T> void observeOnce(LiveData<T> data, Observer<T> observer) {
+        data.observe(this, new Observer<>() {
+            @Override
+            public void onChanged(T value) {
+                data.removeObserver(this);
+                observer.onChanged(value);
+            }
+        });
+    }
+
     private void onNoteChanged(Note note) {
-        contentView.setText(note.content);
+        // The note hasn't been created yet.
+        if (note == null) return;
+
+        if (coEdit) {
+            // While co-editing, the text is kept up to date edit by edit instead.
+            if (coEditing == null) coEditing = viewModel.coEdit(note, new CoEditListener());
+            return;
+        }
+
+        // Nothing changed since the last time, e.g. the poller brought back what we have.
+        if (note.version == shownVersion && note.content.equals(shownContent)) return;
+
+        var shown = shownContent == null ? "" : shownContent;
+        // If the user has typed since, their text stays until they save it (or don't).
+        if (!updateText(contentView.getText(), shown, note.content)) return;
+        shownVersion = note.version;
+        shownContent = note.content;
+    }
+
+    /**
+     * Change {@code text} from {@code shown} to {@code content}, only replacing the parts that are
+     * actually different. Unlike setText(), this keeps the cursor, selection and scroll position
+     * where they were (wherever the changes allow), and only the changed lines are laid out
+     * again, which on big notes is the difference between a dropped frame and none.
+     *
+     * @param shown what {@code text} was set to last. If it has been edited since, it's left
+     *              alone: replacing it would throw away what the user typed.
+     * @return whether {@code text} is now {@code content}.
+     */
+    @VisibleForTesting
+    static boolean updateText(Editable text, String shown, String content) {
+        if (!shown.contentEquals(text)) return content.contentEquals(text);
+
+        for (var change : TextMerge.diff(shown, content)) {
+            text.replace(change.start, change.start + change.deleteCount, change.insert);
+        }
+        return true;
+    }
+
+    /** Change the text without the change being taken for the user's own edit. */
+    private void applyRemoteEdit(Runnable edit) {
+        applyingRemoteEdit = true;
+        try {
+            edit.run();
+        } finally {
+            applyingRemoteEdit = false;
+        }
+    }
+
+    private class CoEditListener implements NoteCoEditor.Listener {
+        @Override
+        public void onLoaded(String text) {
+            applyRemoteEdit(() -> contentView.setText(text));
+        }
+
+        @Override
+        public void onRemoteEdit(List<NoteDelta> changes) {
+            // Splice each change in, rather than replacing the whole text, so whatever the user
+            // is doing (typing, selecting, scrolling) isn't interrupted.
+            applyRemoteEdit(() -> {
+                var editable = contentView.getText();
+                for (var change : changes) {
+                    editable.replace(change.start, change.start + change.deleteCount, change.insert);
+                }
+            });
+        }
+    }
+
+    private class CoEditWatcher implements TextWatcher {
+        @Override
+        public void beforeTextChanged(CharSequence s, int start, int count, int after) {}
+
+        @Override
+        public void onTextChanged(CharSequence s, int start, int before, int count) {
+            if (applyingRemoteEdit || coEditing == null) return;
+            var inserted = s.subSequence(start, start + count).toString();
+            coEditing.onLocalEdit(new NoteDelta(start, before, inserted));
+        }
+
+        @Override
+        public void afterTextChanged(Editable s) {}
+    }
+
+    @Override
+    protected void onDestroy() {
+        // Don't leak the dialog's window, it's shown again when we're recreated.
+        if (conflictDialog != null) conflictDialog.dismiss();
+        if (historyDialog != null) historyDialog.dismiss();
+        if (coEditing != null) coEditing.close();
+        super.onDestroy();
+    }
+
+    private void onConflictChanged(NoteConflict conflict) {
+        if (conflictDialog != null) {
+            conflictDialog.dismiss();
+            conflictDialog = null;
+        }
+        if (conflict == null) return;
+
+        conflictDialog = new AlertDialog.Builder(this)
+                .setTitle(R.string.conflict_title)
+                .setMessage(getString(R.string.conflict_message, preview(conflict.content)))
+                .setPositiveButton(R.string.conflict_keep_mine, (dialog, which) ->
+                        viewModel.resolveConflict(conflict.title, contentView.getText().toString()))
+                .setNegativeButton(R.string.conflict_use_theirs, (dialog, which) ->
+                        viewModel.resolveConflict(conflict.title, conflict.content))
+                .setCancelable(false)
+                .show();
     }
 
     /** Utility method to create an intent for this activity. */
     public static Intent intentFor(Context context, Note note) {
+        return intentFor(context, note.title);
+    }
+
+    /** Utility method to create an intent for this activity, without having the note loaded. */
+    public static Intent intentFor(Context context, String title) {
         var intent = new Intent(context, NoteActivity.class);
-        intent.putExtra("note_title", note.title);
+        intent.putExtra("note_title", title);
         return intent;
     }
 }
\ No newline at end of file
@@ -0,0 +1,97 @@
+package edu.ucsd.cse110.sharednotes.model;
+
+import androidx.annotation.Nullable;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Reads the server's "changes since" feed, which looks like
+ * {"notes": [note, ...], "cursor": "...", "more": false}.
+ * <p>
+ * The feed can hold thousands of notes, so it's read as a stream: notes are parsed one at a time
+ * and handed on in batches as soon as each batch is full, without ever holding the whole
+ * response (or every note in it) in memory.
+ */
+public class ChangeFeed {
+    /** Matches the batches {@link NoteSyncEngine} writes in. */
+    public static final int BATCH_SIZE = 500;
+
+    private static final Note.Adapter NOTES = new Note.Adapter();
+
+    private ChangeFeed() {}
+
+    /** Where a page of the feed left off. */
+    public static class Page {
+        /** Pass this as "since" next time, to only get what changed after this page. */
+        @Nullable
+        public final String cursor;
+        /** Whether the server has more changes for us right away. */
+        public final boolean more;
+
+        public Page(@Nullable String cursor, boolean more) {
+            this.cursor = cursor;
+            this.more = more;
+        }
+    }
+
+    /**
+     * Read one page of the feed.
+     *
+     * @param json      the response body
+     * @param batchSize how many notes to hand on at a time
+     * @param onBatch   given each batch of notes, in order, while the rest is still being read.
+     * @return where the page left off.
+     */
+    public static Page read(Reader json, int batchSize, Consumer<List<Note>> onBatch) throws IOException {
+        var in = new JsonReader(json);
+        String cursor = null;
+        var more = false;
+
+        in.beginObject();
+        while (in.hasNext()) {
+            var name = in.nextName();
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                continue;
+            }
+            switch (name) {
+                case "notes":
+                    readNotes(in, batchSize, onBatch);
+                    break;
+                case "cursor":
+                    cursor = in.nextString();
+                    break;
+                case "more":
+                    more = in.nextBoolean();
+                    break;
+                default:
+                    in.skipValue();
+            }
+        }
+        in.endObject();
+
+        return new Page(cursor, more);
+    }
+
+    private static void readNotes(JsonReader in, int batchSize, Consumer<List<Note>> onBatch) throws IOException {
+        var batch = new ArrayList<Note>(batchSize);
+        in.beginArray();
+        while (in.hasNext()) {
+            var note = NOTES.read(in);
+            if (note != null) batch.add(note);
+            if (batch.size() == batchSize) {
+                onBatch.accept(batch);
+                batch = new ArrayList<>(batchSize);
+            }
+        }
+        in.endArray();
+        if (!batch.isEmpty()) onBatch.accept(batch);
+    }
+}
@@ -0,0 +1,71 @@
+package edu.ucsd.cse110.sharednotes.model;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.util.concurrent.atomic.AtomicLong;
+
+import okhttp3.Call;
+import okhttp3.Connection;
+import okhttp3.EventListener;
+import okhttp3.Handshake;
+
+/**
+ * Counts how often calls got to reuse a pooled connection instead of opening a new one.
+ * <p>
+ * Every call acquires a connection. Either it's a new one, which costs a TCP connect and a TLS
+ * handshake, or it's one from the pool (or an HTTP/2 connection shared with other calls), which
+ * costs nothing. One instance is shared by every call on the client, so it must be thread-safe.
+ */
+public class ConnectionMetrics extends EventListener {
+    private final AtomicLong calls = new AtomicLong();
+    private final AtomicLong connectionsAcquired = new AtomicLong();
+    private final AtomicLong connects = new AtomicLong();
+    private final AtomicLong handshakes = new AtomicLong();
+
+    @Override
+    public void callStart(@NonNull Call call) {
+        calls.incrementAndGet();
+    }
+
+    @Override
+    public void connectStart(@NonNull Call call, @NonNull InetSocketAddress address, @NonNull Proxy proxy) {
+        connects.incrementAndGet();
+    }
+
+    @Override
+    public void secureConnectEnd(@NonNull Call call, @Nullable Handshake handshake) {
+        handshakes.incrementAndGet();
+    }
+
+    @Override
+    public void connectionAcquired(@NonNull Call call, @NonNull Connection connection) {
+        connectionsAcquired.incrementAndGet();
+    }
+
+    public long calls() {
+        return calls.get();
+    }
+
+    public long connects() {
+        return connects.get();
+    }
+
+    public long handshakes() {
+        return handshakes.get();
+    }
+
+    /** How many times a call reused an existing connection, skipping a connect and handshake. */
+    public long handshakesAvoided() {
+        return Math.max(0, connectionsAcquired.get() - connects.get());
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return "ConnectionMetrics{calls=" + calls() + ", connects=" + connects()
+                + ", handshakes=" + handshakes() + ", avoided=" + handshakesAvoided() + "}";
+    }
+}
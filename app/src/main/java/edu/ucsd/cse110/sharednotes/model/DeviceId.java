@@ -0,0 +1,35 @@
+package edu.ucsd.cse110.sharednotes.model;
+
+import android.content.Context;
+
+import androidx.annotation.WorkerThread;
+
+import java.util.UUID;
+
+/**
+ * A random id for this install of the app, which is how a {@link VersionVector} tells this
+ * device's edits apart from everyone else's. It's made up the first time it's needed, and kept
+ * for as long as the app's data is.
+ */
+public class DeviceId {
+    private static final String PREFS = "device";
+    private static final String KEY = "id";
+
+    private volatile static String instance = null;
+
+    /** Reads (or writes) the app's preferences the first time, so not on the main thread. */
+    @WorkerThread
+    public synchronized static String provide(Context context) {
+        if (instance == null) {
+            var prefs = context.getSharedPreferences(PREFS, Context.MODE_PRIVATE);
+            var id = prefs.getString(KEY, null);
+            if (id == null) {
+                // Vectors carry one of these per device that edited the note, so keep it short.
+                id = UUID.randomUUID().toString().substring(0, 8);
+                prefs.edit().putString(KEY, id).apply();
+            }
+            instance = id;
+        }
+        return instance;
+    }
+}
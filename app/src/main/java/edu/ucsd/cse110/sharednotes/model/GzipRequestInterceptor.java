@@ -0,0 +1,75 @@
+package edu.ucsd.cse110.sharednotes.model;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import java.io.IOException;
+
+import okhttp3.Interceptor;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okio.Buffer;
+import okio.BufferedSink;
+import okio.GzipSink;
+import okio.Okio;
+
+/**
+ * Gzips request bodies (i.e. note uploads) that are big enough for it to be worth it.
+ * <p>
+ * Notes are plain text, which usually shrinks to a fraction of its size. Small bodies are sent
+ * as-is: below a kilobyte or so, the gzip header and the CPU time cost more than they save.
+ * <p>
+ * Not every server accepts compressed request bodies. If the server answers 415 (Unsupported
+ * Media Type), we resend the request uncompressed, and stop compressing from then on.
+ */
+public class GzipRequestInterceptor implements Interceptor {
+    private static final int HTTP_UNSUPPORTED_MEDIA_TYPE = 415;
+
+    private final long minBytes;
+    private volatile boolean supported = true;
+
+    public GzipRequestInterceptor(long minBytes) {
+        this.minBytes = minBytes;
+    }
+
+    @NonNull
+    @Override
+    public Response intercept(@NonNull Chain chain) throws IOException {
+        var request = chain.request();
+        var body = request.body();
+
+        if (!supported
+                || body == null
+                || request.header("Content-Encoding") != null
+                || body.contentLength() < minBytes) {
+            return chain.proceed(request);
+        }
+
+        var compressed = request.newBuilder()
+                .header("Content-Encoding", "gzip")
+                .method(request.method(), gzip(body))
+                .build();
+
+        var response = chain.proceed(compressed);
+        if (response.code() != HTTP_UNSUPPORTED_MEDIA_TYPE) return response;
+
+        Log.w("Gzip", "Server doesn't accept gzipped bodies, sending uncompressed from now on");
+        supported = false;
+        response.close();
+        return chain.proceed(request);
+    }
+
+    /**
+     * Compress the body up front (rather than streaming it) so we know its length, and can
+     * send it with a Content-Length rather than chunked.
+     */
+    private static RequestBody gzip(RequestBody body) throws IOException {
+        var buffer = new Buffer();
+        try (BufferedSink sink = Okio.buffer(new GzipSink(buffer))) {
+            body.writeTo(sink);
+        }
+        return RequestBody.create(buffer.readByteString(), body.contentType());
+    }
+}
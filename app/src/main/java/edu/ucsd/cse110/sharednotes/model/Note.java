@@ -1,21 +1,33 @@
 package edu.ucsd.cse110.sharednotes.model;
 
 import androidx.annotation.NonNull;
+import androidx.room.ColumnInfo;
 import androidx.room.Entity;
 import androidx.room.Ignore;
 import androidx.room.PrimaryKey;
 
 import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
 import com.google.gson.TypeAdapter;
 import com.google.gson.annotations.JsonAdapter;
 import com.google.gson.annotations.SerializedName;
 import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
 import com.google.gson.stream.JsonWriter;
 
-import java.time.Instant;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.HashMap;
 
 @Entity(tableName = "notes")
+@JsonAdapter(Note.Adapter.class)
 public class Note {
+    /**
+     * Creating a Gson is surprisingly expensive, and it's thread-safe, so everyone shares one.
+     * It picks up {@link Adapter} from the annotation above.
+     */
+    private static final Gson GSON = new Gson();
+
     /** The title of the note. Used as the primary key for shared notes (even on the cloud). */
     @PrimaryKey
     @SerializedName("title")
@@ -35,6 +47,22 @@ public class Note {
     @SerializedName(value = "version")
     public long version = 0;
 
+    /**
+     * Which edits, from which devices, this note includes. Unlike the version, this can tell
+     * edits made one after the other apart from edits made at the same time on two devices.
+     */
+    @ColumnInfo(defaultValue = "")
+    @NonNull
+    public VersionVector vector = VersionVector.EMPTY;
+
+    /**
+     * How many {@link NoteChunk}s the content is stored in, or 0 if it's stored whole. Only the
+     * database cares: notes read through {@link NoteDao} come with their whole content, except
+     * from its LiveData queries, where a note with chunks only has the start of it.
+     */
+    @ColumnInfo(defaultValue = "0")
+    public int chunks = 0;
+
     /** General constructor for a note. */
     public Note(@NonNull String title, @NonNull String content) {
         this.title = title;
@@ -49,11 +77,106 @@ public class Note {
         this.version = version;
     }
 
+    @Ignore
+    public Note(@NonNull String title, @NonNull String content, long version, @NonNull VersionVector vector) {
+        this.title = title;
+        this.content = content;
+        this.version = version;
+        this.vector = vector;
+    }
+
+    /** A copy of this note as it is now, which won't change when this one does. */
+    public Note copy() {
+        return new Note(title, content, version, vector);
+    }
+
     public static Note fromJSON(String json) {
-        return new Gson().fromJson(json, Note.class);
+        return GSON.fromJson(json, Note.class);
+    }
+
+    /** Parse a note straight from a stream (e.g. a response body), without buffering it first. */
+    public static Note fromJSON(Reader json) {
+        return GSON.fromJson(json, Note.class);
     }
 
     public String toJSON() {
-        return new Gson().toJson(this);
+        return GSON.toJson(this);
+    }
+
+    /**
+     * Reads and writes notes field by field. Gson would otherwise do this by reflection, which
+     * is a lot slower and allocates a lot more for something we do on every poll.
+     */
+    public static class Adapter extends TypeAdapter<Note> {
+        @Override
+        public void write(JsonWriter out, Note note) throws IOException {
+            if (note == null) {
+                out.nullValue();
+                return;
+            }
+            out.beginObject();
+            out.name("title").value(note.title);
+            out.name("content").value(note.content);
+            out.name("version").value(note.version);
+            out.name("vector").beginObject();
+            for (var entry : note.vector.asMap().entrySet()) {
+                out.name(entry.getKey()).value(entry.getValue());
+            }
+            out.endObject();
+            out.endObject();
+        }
+
+        @Override
+        public Note read(JsonReader in) throws IOException {
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                return null;
+            }
+
+            String title = null;
+            String content = "";
+            long version = 0;
+            var vector = VersionVector.EMPTY;
+
+            in.beginObject();
+            while (in.hasNext()) {
+                var name = in.nextName();
+                if (in.peek() == JsonToken.NULL) {
+                    in.nextNull();
+                    continue;
+                }
+                switch (name) {
+                    case "title":
+                        title = in.nextString();
+                        break;
+                    case "content":
+                        content = in.nextString();
+                        break;
+                    case "version":
+                        // Also accepts versions sent as strings, which we used to do.
+                        version = in.nextLong();
+                        break;
+                    case "vector":
+                        vector = readVector(in);
+                        break;
+                    default:
+                        in.skipValue();
+                }
+            }
+            in.endObject();
+
+            if (title == null) throw new JsonParseException("Note has no title");
+            return new Note(title, content, version, vector);
+        }
+
+        private static VersionVector readVector(JsonReader in) throws IOException {
+            var counts = new HashMap<String, Long>();
+            in.beginObject();
+            while (in.hasNext()) {
+                counts.put(in.nextName(), in.nextLong());
+            }
+            in.endObject();
+            return VersionVector.of(counts);
+        }
     }
 }
@@ -1,20 +1,42 @@
 package edu.ucsd.cse110.sharednotes.model;
 
+import android.content.Context;
 import android.util.Log;
 
-import androidx.lifecycle.LiveData;
-import androidx.lifecycle.MutableLiveData;
 import androidx.annotation.AnyThread;
-import androidx.annotation.MainThread;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
 import androidx.annotation.WorkerThread;
 
-import com.google.gson.Gson;
+import com.google.gson.JsonParser;
 
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
 
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.HttpUrl;
+import okhttp3.MediaType;
 import okhttp3.OkHttpClient;
 import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okhttp3.WebSocket;
+import okhttp3.WebSocketListener;
 
 public class NoteAPI {
     // TODO: Implement the API using OkHttp!
@@ -23,38 +45,425 @@ public class NoteAPI {
     // TODO: Read the docs: https://square.github.io/okhttp/
     // TODO: Read the docs: https://sharednotes.goto.ucsd.edu/docs
 
+    private static final long BATCH_TIMEOUT_MS = 10_000;
+    private static final int HTTP_NOT_MODIFIED = 304;
+    private static final int HTTP_IM_USED = 226;
+    private static final MediaType JSON = MediaType.parse("application/json; charset=utf-8");
+    private static final String CHANGES_URL = "https://sharednotes.goto.ucsd.edu/notes/changes";
+    /** How much of the notes we pulled we keep to apply pulled deltas to. */
+    private static final long DELTA_BASE_BYTES = 4L * 1024 * 1024;
+
     private volatile static NoteAPI instance = null;
 
-    private OkHttpClient client;
+    private final OkHttpClient client;
+
+    private final Map<String, Validator> validators = new ConcurrentHashMap<>();
+    // The content of the notes we pulled, to apply the next pull's delta to. Only as much as
+    // fits: a note that isn't here is pulled in full.
+    private final NoteCache<NoteBase> deltaBases = new NoteCache<>(
+            DELTA_BASE_BYTES, base -> 2L * base.content.length());
+    private final AtomicLong unchangedPulls = new AtomicLong();
+    // Cleared the first time the server turns down PATCH as such (rather than one delta), so we
+    // stop paying a round trip for it on every upload. As with GzipRequestInterceptor.
+    private volatile boolean patchSupported = true;
+    // Likewise for the changes feed, which is asked for every time the list comes into view.
+    private volatile boolean changesSupported = true;
 
-    public NoteAPI() {
-        this.client = new OkHttpClient();
+    @VisibleForTesting
+    public NoteAPI(OkHttpClient client) {
+        this.client = client;
     }
 
-    public static NoteAPI provide() {
+    public synchronized static NoteAPI provide(Context context) {
         if (instance == null) {
-            instance = new NoteAPI();
+            instance = new NoteAPI(NoteHttpClient.provide(context));
         }
         return instance;
     }
 
-    public MutableLiveData<Note> pullFromRemote(String title) {
-        MutableLiveData ans = new MutableLiveData();
-        String msg = title.replace(" ", "%20"); //ig this is the input string or name of note?
+    /**
+     * Fetch the server's copy of a note.
+     *
+     * This does a blocking network request, so it must be called on a background thread.
+     *
+     * @param title the title of the note
+     * @return the note, or null if the request failed or the note hasn't changed since the last
+     *         time it was pulled.
+     */
+    @WorkerThread
+    public Note pullFromRemote(String title) {
+        try (var response = client.newCall(pullRequest(title)).execute()) {
+            return parsePull(title, response);
+        } catch (Exception e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * Fetch the server's copies of several notes at once.
+     * <p>
+     * Rather than doing one blocking round trip after another, every request is handed to the
+     * client's dispatcher up front, so they all go out together over the client's shared
+     * connection (multiplexed on HTTP/2, pooled on HTTP/1.1). We then wait for the whole batch.
+     *
+     * @param titles the titles of the notes
+     * @return the notes that were fetched successfully and changed since they were last pulled,
+     *         by title.
+     */
+    @WorkerThread
+    public Map<String, Note> pullFromRemote(Collection<String> titles) {
+        var notes = new ConcurrentHashMap<String, Note>();
+        var remaining = new CountDownLatch(titles.size());
+
+        for (var title : titles) {
+            client.newCall(pullRequest(title)).enqueue(new Callback() {
+                @Override
+                public void onFailure(@NonNull Call call, @NonNull IOException e) {
+                    Log.w("Pull", "Failed to pull " + title, e);
+                    remaining.countDown();
+                }
+
+                @Override
+                public void onResponse(@NonNull Call call, @NonNull Response response) {
+                    try (response) {
+                        var note = parsePull(title, response);
+                        if (note != null) notes.put(title, note);
+                    } catch (Exception e) {
+                        Log.w("Pull", "Failed to parse " + title, e);
+                    } finally {
+                        remaining.countDown();
+                    }
+                }
+            });
+        }
+
+        try {
+            if (!remaining.await(BATCH_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+                Log.w("Pull", "Batch timed out, " + remaining.getCount() + " still pending");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return notes;
+    }
+
+    /**
+     * Fetch everything that changed on the server since {@code cursor}, in one streamed response
+     * (see {@link ChangeFeed}). Notes are handed on in batches while the rest is still being read.
+     * <p>
+     * If nothing changed, the response is just the cursor, a few dozen bytes no matter how many
+     * notes there are, where pulling every note would cost a round trip (and a 304) per note.
+     *
+     * This does a blocking network request, so it must be called on a background thread.
+     *
+     * @param cursor where the last page left off, or null to get every note.
+     * @param onBatch given each batch of changed notes, in order.
+     * @return where this page left off, or null if the request failed (the server may not have a
+     *         feed at all, in which case we stop asking). Batches already handed on are still
+     *         valid either way.
+     */
+    @WorkerThread
+    @Nullable
+    public ChangeFeed.Page pullChanges(@Nullable String cursor, Consumer<List<Note>> onBatch) {
+        if (!changesSupported) return null;
+
+        var url = HttpUrl.get(CHANGES_URL).newBuilder();
+        if (cursor != null) url.addQueryParameter("since", cursor);
+
         var request = new Request.Builder()
-                .url("https://sharednotes.goto.ucsd.edu/notes/" + msg)
+                .url(url.build())
                 .method("GET", null)
                 .build();
-        try(var response = client.newCall(request).execute()) {
-            var body = response.body().string();
-            Note toAdd = Note.fromJSON(body); //make a new note to add with the title and whatever was retrieved?
-            ans.postValue(toAdd); //add this to our mutablelivedata
-            Log.i("Pull", body);
-        } catch(Exception e) {
-            e.printStackTrace();
-        } //after this maybe we need to update local?
 
-        return ans;
+        try (var response = client.newCall(request).execute()) {
+            if (isFeedUnsupported(response.code())) {
+                Log.w("Changes", "Server has no changes feed (" + response.code() + "), not asking again");
+                changesSupported = false;
+                return null;
+            }
+            if (!response.isSuccessful()) {
+                Log.i("Changes", "Failed to pull changes (" + response.code() + ")");
+                return null;
+            }
+            // Parse straight off the wire: a first sync can be every note there is.
+            return ChangeFeed.read(response.body().charStream(), ChangeFeed.BATCH_SIZE, onBatch);
+        } catch (IOException | RuntimeException e) {
+            Log.w("Changes", "Failed to pull changes", e);
+            return null;
+        }
+    }
+
+    private static String noteUrl(String title) {
+        // URLs cannot contain spaces, so we replace them with %20.
+        return "https://sharednotes.goto.ucsd.edu/notes/" + title.replace(" ", "%20");
+    }
+
+    private Request pullRequest(String title) {
+        var builder = new Request.Builder()
+                .url(noteUrl(title))
+                .method("GET", null);
+
+        // If we've seen this note before, only ask for it if it changed.
+        var validator = validators.get(title);
+        if (validator != null && validator.etag != null) {
+            builder.header("If-None-Match", validator.etag);
+        }
+        if (validator != null && validator.lastModified != null) {
+            builder.header("If-Modified-Since", validator.lastModified);
+        }
+
+        // And if it did change, a delta against what we have is enough.
+        if (validator != null && hasDeltaBase(title, validator.version)) {
+            builder.header("A-IM", "splice");
+            builder.header("X-Base-Version", Long.toString(validator.version));
+        }
+
+        return builder.build();
+    }
+
+    private Note parsePull(String title, Response response) throws IOException {
+        // The server says nothing changed: don't even look at the body.
+        if (response.code() == HTTP_NOT_MODIFIED) {
+            unchangedPulls.incrementAndGet();
+            return null;
+        }
+        if (!response.isSuccessful()) return null;
+
+        var previous = validators.get(title);
+        var etag = response.header("ETag");
+        var lastModified = response.header("Last-Modified");
+
+        // Same ETag as the copy we have, even though the server sent it anyway (not every server
+        // or proxy honours If-None-Match): it's the same note, so skip parsing it.
+        if (previous != null && etag != null && etag.equals(previous.etag)) {
+            unchangedPulls.incrementAndGet();
+            return null;
+        }
+
+        // Parse straight off the wire, the body is never held as one big string.
+        var body = response.body().charStream();
+        var note = response.code() == HTTP_IM_USED
+                ? applyPulledDelta(title, previous, body)
+                : Note.fromJSON(body);
+        if (note == null) return null;
+
+        validators.put(title, new Validator(etag, lastModified, note.version));
+        deltaBases.put(title, new NoteBase(title, note.content, note.version));
+
+        // Servers without validators still tell us the version, so at least don't pass on a
+        // note we already have.
+        if (previous != null && previous.version == note.version) {
+            unchangedPulls.incrementAndGet();
+            return null;
+        }
+
+        Log.i("Pull", title + " is now at version " + note.version);
+        return note;
+    }
+
+    /**
+     * The server answered with a delta against the version we told it we had. Returns null (and
+     * forgets what we had, so the next pull is a full one) if it doesn't fit.
+     */
+    private Note applyPulledDelta(String title, Validator previous, Reader body) {
+        try {
+            var json = JsonParser.parseReader(body).getAsJsonObject();
+            var base = deltaBases.getIfPresent(title);
+            if (previous == null || base == null || json.get("base_version").getAsLong() != base.version) {
+                forget(title);
+                return null;
+            }
+
+            var delta = new NoteDelta(
+                    json.get("start").getAsInt(),
+                    json.get("delete").getAsInt(),
+                    json.get("insert").getAsString()
+            );
+            // The delta's own note fields are parsed like any other note's.
+            json.addProperty("title", title);
+            json.remove("content");
+            var note = Note.fromJSON(json.toString());
+            note.content = delta.apply(base.content);
+            return note;
+        } catch (RuntimeException e) {
+            Log.w("Pull", "Bad delta for " + title, e);
+            forget(title);
+            return null;
+        }
+    }
+
+    private boolean hasDeltaBase(String title, long version) {
+        var base = deltaBases.getIfPresent(title);
+        return base != null && base.version == version;
+    }
+
+    /**
+     * Forget everything we know about the server's copy of a note, e.g. because the note was
+     * deleted here. The next pull of it is a full one, as if it had never been pulled.
+     */
+    @AnyThread
+    public void forget(String title) {
+        validators.remove(title);
+        deltaBases.invalidate(title, base -> true);
+    }
+
+    /** How many pulls found the note unchanged and were cut short. */
+    @AnyThread
+    public long unchangedPullCount() {
+        return unchangedPulls.get();
+    }
+
+    /**
+     * What we know about the last copy of a note we pulled, to make the next pull conditional.
+     * Its content, to apply deltas to, is kept apart, in {@link #deltaBases}.
+     */
+    private static class Validator {
+        final String etag;
+        final String lastModified;
+        final long version;
+
+        Validator(String etag, String lastModified, long version) {
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.version = version;
+        }
+    }
+
+    /**
+     * Upload a note to the server.
+     * <p>
+     * If we know which version the server already has, and the note changed little enough since
+     * then, we only send a {@link NoteDelta} against that version. If the server can't apply the
+     * delta (it doesn't have that version any more, or doesn't do deltas at all), we fall back to
+     * uploading the whole note. A server that doesn't do deltas at all is only asked once.
+     *
+     * This does a blocking network request, so it must be called on a background thread.
+     *
+     * @param note the note to upload
+     * @param base the last version of the note the server is known to have, or null.
+     * @return the HTTP status code, or -1 if the request didn't get a response at all.
+     */
+    @WorkerThread
+    public int pushToRemote(Note note, @Nullable NoteBase base) {
+        if (patchSupported && base != null && base.version < note.version) {
+            var delta = NoteDelta.between(base.content, note.content);
+            // Not worth it if the delta is most of the note anyway.
+            if (delta.insert.length() < note.content.length() / 2) {
+                var status = patchRemote(note, base.version, delta);
+                if (isPatchUnsupported(status)) {
+                    Log.w("Push", "Server doesn't take deltas (" + status + "), sending in full from now on");
+                    patchSupported = false;
+                } else if (isDeltaRejected(status)) {
+                    Log.i("Push", "Delta rejected for " + note.title + " (" + status + "), sending in full");
+                } else {
+                    return status;
+                }
+            }
+        }
+        return putRemote(note);
+    }
+
+    private int putRemote(Note note) {
+        var json = new JSONObject();
+        try {
+            json.put("title", note.title);
+            json.put("content", note.content);
+            json.put("version", Long.toString(note.version));
+            json.put("vector", new JSONObject(note.vector.asMap()));
+        } catch (JSONException e) {
+            throw new RuntimeException(e);
+        }
+
+        var request = new Request.Builder()
+                .url(noteUrl(note.title))
+                .put(RequestBody.create(json.toString(), JSON))
+                .build();
+
+        return execute(note.title, request);
+    }
+
+    private int patchRemote(Note note, long baseVersion, NoteDelta delta) {
+        var json = new JSONObject();
+        try {
+            json.put("title", note.title);
+            json.put("version", Long.toString(note.version));
+            json.put("vector", new JSONObject(note.vector.asMap()));
+            json.put("base_version", Long.toString(baseVersion));
+            json.put("start", delta.start);
+            json.put("delete", delta.deleteCount);
+            json.put("insert", delta.insert);
+        } catch (JSONException e) {
+            throw new RuntimeException(e);
+        }
+
+        var request = new Request.Builder()
+                .url(noteUrl(note.title))
+                .patch(RequestBody.create(json.toString(), JSON))
+                .build();
+
+        return execute(note.title, request);
+    }
+
+    private int execute(String title, Request request) {
+        try (var response = client.newCall(request).execute()) {
+            Log.i("Push", request.method() + " " + title + " -> " + response.code());
+            return response.code();
+        } catch (IOException e) {
+            Log.w("Push", "Failed to push " + title, e);
+            return -1;
+        }
+    }
+
+    /** Whether the server turned down this one delta, e.g. it's against a version it's past. */
+    private static boolean isDeltaRejected(int status) {
+        switch (status) {
+            case 404: // The server doesn't have the note at all.
+            case 409: // The server has moved past our base version.
+            case 412:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /** Whether the server turned down PATCH itself, which it will do for every note. */
+    private static boolean isPatchUnsupported(int status) {
+        switch (status) {
+            case 405: // The server doesn't do PATCH.
+            case 415: // The server doesn't understand our deltas.
+            case 501:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /** Whether the server has no changes feed, rather than failing to serve it this time. */
+    private static boolean isFeedUnsupported(int status) {
+        switch (status) {
+            case 404: // There's no such URL.
+            case 405:
+            case 501:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Open the WebSocket the server pushes note updates down. See {@link NotePushChannel}.
+     *
+     * @param listener receives the socket's events, on OkHttp's threads.
+     * @return the socket, which is still connecting when this returns.
+     */
+    @AnyThread
+    public WebSocket openPushChannel(WebSocketListener listener) {
+        var request = new Request.Builder()
+                .url("wss://sharednotes.goto.ucsd.edu/notes/subscribe")
+                .build();
+
+        return client.newWebSocket(request, listener);
     }
 
     /**
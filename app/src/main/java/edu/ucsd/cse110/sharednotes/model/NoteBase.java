@@ -0,0 +1,43 @@
+package edu.ucsd.cse110.sharednotes.model;
+
+import androidx.annotation.NonNull;
+import androidx.room.ColumnInfo;
+import androidx.room.Entity;
+import androidx.room.PrimaryKey;
+
+/**
+ * The last version of a note that we know the server has, either because we uploaded it or
+ * because we pulled it. Uploads are sent as a {@link NoteDelta} against this instead of in full,
+ * and it's the common ancestor that concurrent edits are merged against (see {@link TextMerge}).
+ */
+@Entity(tableName = "note_bases")
+public class NoteBase {
+    @PrimaryKey
+    @NonNull
+    public String title;
+
+    @NonNull
+    public String content;
+
+    public long version;
+
+    @ColumnInfo(defaultValue = "")
+    @NonNull
+    public VersionVector vector = VersionVector.EMPTY;
+
+    /** As with {@link Note#chunks}. Bases from {@link OutboxDao#getBase(String)} are always whole. */
+    @ColumnInfo(defaultValue = "0")
+    public int chunks = 0;
+
+    public NoteBase(@NonNull String title, @NonNull String content, long version) {
+        this.title = title;
+        this.content = content;
+        this.version = version;
+    }
+
+    public static NoteBase of(Note note) {
+        var base = new NoteBase(note.title, note.content, note.version);
+        base.vector = note.vector;
+        return base;
+    }
+}
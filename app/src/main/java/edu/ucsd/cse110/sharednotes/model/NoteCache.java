@@ -0,0 +1,186 @@
+package edu.ucsd.cse110.sharednotes.model;
+
+import androidx.annotation.AnyThread;
+import androidx.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.ToLongFunction;
+
+/**
+ * A cache of something per note title, least recently used first out, bounded by how much memory
+ * it all takes up rather than by how many titles there are. One huge note can push out many
+ * small ones.
+ * <p>
+ * A value's weight can change while it's cached (e.g. when its note is edited), so callers tell
+ * the cache to {@link #reweigh(String)} it. Values that are evicted are simply forgotten: whoever
+ * still holds one can keep using it, the next caller just gets a fresh one.
+ * <p>
+ * Safe to use from any thread.
+ *
+ * @param <V> the cached values
+ */
+public class NoteCache<V> {
+    private final long maxBytes;
+    private final ToLongFunction<V> weigher;
+
+    // Access order: iterating starts at the least recently used title.
+    private final LinkedHashMap<String, Entry<V>> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long residentBytes = 0;
+    private long hits = 0;
+    private long misses = 0;
+    private long evictions = 0;
+
+    private static class Entry<V> {
+        final V value;
+        long weight;
+
+        Entry(V value, long weight) {
+            this.value = value;
+            this.weight = weight;
+        }
+    }
+
+    /**
+     * @param maxBytes how much the cached values may weigh in total.
+     * @param weigher  roughly how many bytes a value takes up.
+     */
+    public NoteCache(long maxBytes, ToLongFunction<V> weigher) {
+        this.maxBytes = maxBytes;
+        this.weigher = weigher;
+    }
+
+    /** Get the cached value for a title, loading (and caching) it if there isn't one. */
+    @AnyThread
+    public synchronized V get(String title, Function<String, V> load) {
+        var entry = entries.get(title);
+        if (entry != null) {
+            hits++;
+            return entry.value;
+        }
+
+        misses++;
+        var value = load.apply(title);
+        entry = new Entry<>(value, weigher.applyAsLong(value));
+        entries.put(title, entry);
+        residentBytes += entry.weight;
+        trim(title);
+        return value;
+    }
+
+    /** Get the cached value for a title, or null if there isn't one. */
+    @AnyThread
+    public synchronized V getIfPresent(String title) {
+        var entry = entries.get(title);
+        if (entry == null) {
+            misses++;
+            return null;
+        }
+        hits++;
+        return entry.value;
+    }
+
+    /** Cache a value for a title, in place of whatever was cached for it. */
+    @AnyThread
+    public synchronized void put(String title, V value) {
+        var entry = new Entry<>(value, weigher.applyAsLong(value));
+        var previous = entries.put(title, entry);
+        if (previous != null) residentBytes -= previous.weight;
+        residentBytes += entry.weight;
+        trim(title);
+    }
+
+    /** The value for a title changed size. Evicts others if it no longer all fits. */
+    @AnyThread
+    public synchronized void reweigh(String title) {
+        var entry = entries.get(title);
+        if (entry == null) return;
+        var weight = weigher.applyAsLong(entry.value);
+        residentBytes += weight - entry.weight;
+        entry.weight = weight;
+        trim(title);
+    }
+
+    /** Forget the value for a title, if there is one and it matches. */
+    @AnyThread
+    public synchronized void invalidate(String title, Predicate<V> stale) {
+        var entry = entries.get(title);
+        if (entry == null || !stale.test(entry.value)) return;
+        entries.remove(title);
+        residentBytes -= entry.weight;
+    }
+
+    /** Forget every value that matches. */
+    @AnyThread
+    public synchronized void invalidateIf(Predicate<V> stale) {
+        var it = entries.values().iterator();
+        while (it.hasNext()) {
+            var entry = it.next();
+            if (stale.test(entry.value)) {
+                residentBytes -= entry.weight;
+                it.remove();
+            }
+        }
+    }
+
+    /** The titles that have a value cached, least recently used first. */
+    @AnyThread
+    public synchronized List<String> titles() {
+        return new ArrayList<>(entries.keySet());
+    }
+
+    /** Evict least recently used values until everything fits, keeping {@code keep} if we can. */
+    private void trim(String keep) {
+        var it = entries.entrySet().iterator();
+        while (residentBytes > maxBytes && it.hasNext()) {
+            var entry = it.next();
+            // One value bigger than the whole cache stays, as long as it's the one in use.
+            if (entry.getKey().equals(keep)) continue;
+            residentBytes -= entry.getValue().weight;
+            it.remove();
+            evictions++;
+        }
+    }
+
+    @AnyThread
+    public synchronized Stats stats() {
+        return new Stats(hits, misses, evictions, entries.size(), residentBytes, maxBytes);
+    }
+
+    /** How well the cache is doing, for tuning its size. */
+    public static class Stats {
+        public final long hits;
+        public final long misses;
+        /** How many values were pushed out to make room (not counting invalidations). */
+        public final long evictions;
+        public final int size;
+        public final long residentBytes;
+        public final long maxBytes;
+
+        public Stats(long hits, long misses, long evictions, int size, long residentBytes, long maxBytes) {
+            this.hits = hits;
+            this.misses = misses;
+            this.evictions = evictions;
+            this.size = size;
+            this.residentBytes = residentBytes;
+            this.maxBytes = maxBytes;
+        }
+
+        public double hitRate() {
+            var total = hits + misses;
+            return total == 0 ? 0 : (double) hits / total;
+        }
+
+        @NonNull
+        @Override
+        public String toString() {
+            return String.format(
+                    "%d%% hits (%d/%d), %d evictions, %d notes, %d/%d bytes",
+                    Math.round(hitRate() * 100), hits, hits + misses, evictions, size, residentBytes, maxBytes
+            );
+        }
+    }
+}
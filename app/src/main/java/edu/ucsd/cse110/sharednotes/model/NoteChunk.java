@@ -0,0 +1,123 @@
+package edu.ucsd.cse110.sharednotes.model;
+
+import androidx.annotation.NonNull;
+import androidx.room.Entity;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * A piece of a large note's content, compressed.
+ * <p>
+ * SQLite hands rows to us through a 2 MB window, and a row that doesn't fit can't be read at
+ * all. So notes longer than {@link #MAX_INLINE} are not stored whole in the notes table: that
+ * only keeps the start of the content (enough for the list's preview and for search), and the
+ * whole content is deflated and split into chunks of at most {@link #CHUNK_BYTES}. Text deflates
+ * well, so a large note also takes up a lot less room this way.
+ * <p>
+ * The same goes for every other table that keeps a copy of a note's content (the outbox, the
+ * bases and the conflicts): {@link #store} says whose chunks these are. {@link NoteDao} and
+ * {@link OutboxDao} do the splitting and putting back together, and each row's {@code chunks}
+ * says whether they have to.
+ */
+@Entity(tableName = "note_chunks", primaryKeys = {"store", "title", "idx"})
+public class NoteChunk {
+    // Stores, named after the table whose content is chunked.
+    public static final String NOTES = "notes";
+    public static final String OUTBOX = "outbox";
+    public static final String BASES = "note_bases";
+    public static final String CONFLICTS = "note_conflicts";
+
+    /** Notes with more chars than this are stored in chunks. */
+    public static final int MAX_INLINE = 64 * 1024;
+
+    /** The most (compressed) bytes a chunk holds, so a chunk always fits a window easily. */
+    public static final int CHUNK_BYTES = 256 * 1024;
+
+    /** Which table's content this is a piece of, e.g. {@link #NOTES}. */
+    @NonNull
+    public String store;
+
+    @NonNull
+    public String title;
+
+    /** Which chunk this is, from 0. */
+    public int idx;
+
+    @NonNull
+    public byte[] data;
+
+    public NoteChunk(@NonNull String store, @NonNull String title, int idx, @NonNull byte[] data) {
+        this.store = store;
+        this.title = title;
+        this.idx = idx;
+        this.data = data;
+    }
+
+    /**
+     * Split a note's content into chunks, or none if it's short enough to be stored whole.
+     */
+    public static List<NoteChunk> split(String store, String title, String content) {
+        var chunks = new ArrayList<NoteChunk>();
+        if (content.length() <= MAX_INLINE) return chunks;
+
+        // Best speed: large notes are saved on the write thread, and other writes wait for them.
+        // It compresses text nearly as well as the default level, in a fraction of the time.
+        var deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            deflater.setInput(content.getBytes(StandardCharsets.UTF_8));
+            deflater.finish();
+            var buffer = new byte[CHUNK_BYTES];
+            while (!deflater.finished()) {
+                // Fill each chunk right up before starting the next one.
+                int filled = 0;
+                while (filled < CHUNK_BYTES && !deflater.finished()) {
+                    filled += deflater.deflate(buffer, filled, CHUNK_BYTES - filled);
+                }
+                chunks.add(new NoteChunk(store, title, chunks.size(), Arrays.copyOf(buffer, filled)));
+            }
+        } finally {
+            deflater.end();
+        }
+        return chunks;
+    }
+
+    /** The reverse of {@link #split(String, String, String)}: the whole content, from its chunks in order. */
+    public static String join(List<NoteChunk> chunks) {
+        var inflater = new Inflater();
+        var out = new ByteArrayOutputStream(chunks.size() * CHUNK_BYTES * 3);
+        var buffer = new byte[64 * 1024];
+        try {
+            for (var chunk : chunks) {
+                inflater.setInput(chunk.data);
+                while (!inflater.needsInput() && !inflater.finished()) {
+                    out.write(buffer, 0, inflater.inflate(buffer));
+                }
+            }
+            if (!inflater.finished()) throw new IllegalStateException("Note content is missing chunks");
+        } catch (DataFormatException e) {
+            throw new IllegalStateException("Note content is corrupt", e);
+        } finally {
+            inflater.end();
+        }
+        // Not out.toString(charset), which needs API 33.
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * The start of a long note's content, which is all the notes table keeps of it. Never ends
+     * halfway through a surrogate pair.
+     */
+    public static String head(String content) {
+        if (content.length() <= MAX_INLINE) return content;
+        var end = MAX_INLINE;
+        if (Character.isHighSurrogate(content.charAt(end - 1))) end--;
+        return content.substring(0, end);
+    }
+}
@@ -0,0 +1,223 @@
+package edu.ucsd.cse110.sharednotes.model;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import androidx.annotation.AnyThread;
+import androidx.annotation.MainThread;
+import androidx.annotation.VisibleForTesting;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Real-time co-editing of open notes. While a note is open, its content is an {@link RgaText}:
+ * every keystroke becomes ops that are sent to everyone else with the note open, over the push
+ * channel, and their ops are applied to ours as they arrive. Everyone ends up with the same text
+ * without anyone having to merge anything, and remote edits show up as small splices rather than
+ * a whole new text.
+ * <p>
+ * Documents are only touched on the main thread, the same thread the user types on. That way an
+ * edit is always made against exactly the text the user saw, with nothing slipping in between.
+ * Encoded documents are stored in the database now and then, so that the next session carries on
+ * with the same ids as everyone else.
+ * <p>
+ * This sits next to the regular sync, it doesn't replace it: the note itself is still saved and
+ * uploaded as usual. Ops that arrive for notes nobody has open are ignored. A stored document is
+ * only picked up again while its note is still the version it was seeded from: once the note has
+ * moved on, everyone seeds a new one from the note (see {@link #open(Note, Listener)}).
+ */
+public class NoteCoEditor {
+    /** Whether to co-edit notes that are opened from now on. It needs the push channel. */
+    @AnyThread
+    public static boolean isEnabled() {
+        return NotePushChannel.isEnabled();
+    }
+
+    private static final long SAVE_DELAY_MS = 2000;
+
+    private volatile static NoteCoEditor instance = null;
+
+    private final NoteDao dao;
+    private final NotePoller poller;
+    private final Supplier<String> device;
+    private final Handler main = new Handler(Looper.getMainLooper());
+    private final Map<String, Session> sessions = new ConcurrentHashMap<>();
+
+    /** Told about changes to the document, on the main thread. */
+    public interface Listener {
+        /** The document is ready, and this is its text. Show it in place of whatever was shown. */
+        void onLoaded(String text);
+
+        /** Someone else edited the note. Apply these changes to the text, in order. */
+        void onRemoteEdit(List<NoteDelta> changes);
+    }
+
+    @VisibleForTesting
+    public NoteCoEditor(NoteDao dao, NotePoller poller, Supplier<String> device) {
+        this.dao = dao;
+        this.poller = poller;
+        this.device = device;
+    }
+
+    public synchronized static NoteCoEditor provide(Context context) {
+        if (instance == null) {
+            var app = context.getApplicationContext();
+            instance = new NoteCoEditor(
+                    NoteDatabase.provide(app).getDao(),
+                    NotePoller.provide(app),
+                    () -> DeviceId.provide(app)
+            );
+        }
+        return instance;
+    }
+
+    /**
+     * Start co-editing a note. Nothing should be sent to the session until the listener has been
+     * told it's loaded.
+     *
+     * @param note the note as it is now
+     * @param listener told when the document is loaded, and about remote edits after that.
+     */
+    @MainThread
+    public Session open(Note note, Listener listener) {
+        var session = new Session(note.title, listener);
+        sessions.put(note.title, session);
+
+        NoteDatabase.reads().execute(() -> {
+            var replica = device.get();
+            var origin = origin(note);
+            var stored = dao.getCrdt(note.title);
+            RgaText doc;
+            if (stored != null && stored.origin.equals(origin)) {
+                doc = RgaText.decode(stored.state, replica);
+            } else {
+                // Everyone who starts from this same version of the note ends up with the same
+                // document, and so can co-edit it. A stored document from an older version is
+                // thrown away rather than caught up: catching up would make new ops of our own
+                // for text everyone else seeds, and it would show up twice.
+                doc = RgaText.seed(note.content, origin, replica);
+            }
+            main.post(() -> session.loaded(doc, origin));
+        });
+        return session;
+    }
+
+    /** What a document for this version of the note is seeded from. The same on every device. */
+    static String origin(Note note) {
+        return "v" + note.version + "." + Integer.toHexString(note.content.hashCode());
+    }
+
+    /** An update came in over the push channel. */
+    @AnyThread
+    void onRemoteUpdate(String title, long stable, byte[] encoded) {
+        if (!sessions.containsKey(title)) return;
+
+        List<RgaText.Op> ops;
+        try {
+            ops = RgaText.decodeOps(encoded);
+        } catch (IllegalArgumentException e) {
+            Log.w("CoEdit", "Ignoring malformed ops for " + title, e);
+            return;
+        }
+
+        main.post(() -> {
+            var session = sessions.get(title);
+            if (session != null) session.onRemote(stable, ops);
+        });
+    }
+
+    /** One open note. Only to be used on the main thread. */
+    public class Session {
+        private final String title;
+        private final Listener listener;
+        private RgaText doc;
+        private String origin;
+        private boolean closed = false;
+        private final List<RgaText.Op> unsent = new ArrayList<>();
+        // Ops that arrived while we were still loading, and the latest stable counter.
+        private final List<RgaText.Op> early = new ArrayList<>();
+        private long stable = 0;
+
+        private final Runnable save = this::save;
+
+        private Session(String title, Listener listener) {
+            this.title = title;
+            this.listener = listener;
+        }
+
+        private void loaded(RgaText doc, String origin) {
+            if (closed) return;
+            this.doc = doc;
+            this.origin = origin;
+
+            if (!early.isEmpty()) {
+                doc.apply(early);
+                early.clear();
+            }
+
+            listener.onLoaded(doc.text());
+            scheduleSave();
+        }
+
+        /**
+         * The user edited the text. This must be called for every edit, with positions in the
+         * text as it was right before the edit.
+         */
+        @MainThread
+        public void onLocalEdit(NoteDelta edit) {
+            if (doc == null || closed) return;
+            unsent.addAll(doc.edit(edit));
+            flush();
+            scheduleSave();
+        }
+
+        private void onRemote(long stable, List<RgaText.Op> ops) {
+            if (closed) return;
+            this.stable = Math.max(this.stable, stable);
+            if (doc == null) {
+                early.addAll(ops);
+                return;
+            }
+
+            var changes = doc.apply(ops);
+            if (!changes.isEmpty()) listener.onRemoteEdit(changes);
+            // The channel is clearly up, so catch up on anything we couldn't send before.
+            flush();
+            scheduleSave();
+        }
+
+        private void flush() {
+            if (unsent.isEmpty()) return;
+            if (poller.sendUpdate(title, RgaText.encodeOps(unsent))) unsent.clear();
+        }
+
+        private void scheduleSave() {
+            main.removeCallbacks(save);
+            main.postDelayed(save, SAVE_DELAY_MS);
+        }
+
+        private void save() {
+            if (doc == null) return;
+            // Only worth compacting right before we store it.
+            if (stable > 0) doc.compact(stable);
+            var state = new NoteCrdtState(title, origin, doc.encode());
+            NoteDatabase.writes().execute(() -> dao.upsertCrdt(state));
+        }
+
+        /** Stop co-editing, e.g. because the note was closed. */
+        @MainThread
+        public void close() {
+            if (closed) return;
+            closed = true;
+            sessions.remove(title, this);
+            main.removeCallbacks(save);
+            save();
+        }
+    }
+}
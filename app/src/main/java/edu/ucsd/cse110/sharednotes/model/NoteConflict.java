@@ -0,0 +1,46 @@
+package edu.ucsd.cse110.sharednotes.model;
+
+import androidx.annotation.NonNull;
+import androidx.room.ColumnInfo;
+import androidx.room.Entity;
+import androidx.room.PrimaryKey;
+
+/**
+ * A version of a note that was edited at the same time as ours, on another device, and so can't
+ * simply replace ours or be dropped. It stays here until the user decides what to keep (see
+ * {@link NoteRepository#resolveConflict(String, String)}).
+ */
+@Entity(tableName = "note_conflicts")
+public class NoteConflict {
+    @PrimaryKey
+    @NonNull
+    public String title;
+
+    @NonNull
+    public String content;
+
+    public long version;
+
+    @ColumnInfo(defaultValue = "")
+    @NonNull
+    public VersionVector vector = VersionVector.EMPTY;
+
+    /**
+     * As with {@link Note#chunks}. Conflicts from {@link NoteDao#findConflict(String)} are whole,
+     * from {@link NoteDao#getConflict(String)} they may only have the start of their content.
+     */
+    @ColumnInfo(defaultValue = "0")
+    public int chunks = 0;
+
+    public NoteConflict(@NonNull String title, @NonNull String content, long version) {
+        this.title = title;
+        this.content = content;
+        this.version = version;
+    }
+
+    public static NoteConflict of(Note note) {
+        var conflict = new NoteConflict(note.title, note.content, note.version);
+        conflict.vector = note.vector;
+        return conflict;
+    }
+}
@@ -0,0 +1,32 @@
+package edu.ucsd.cse110.sharednotes.model;
+
+import androidx.annotation.NonNull;
+import androidx.room.ColumnInfo;
+import androidx.room.Entity;
+import androidx.room.PrimaryKey;
+
+/**
+ * The {@link RgaText} of a note that has been co-edited, as encoded by {@link RgaText#encode()}.
+ * Kept so that the next session picks up with the same element ids as everyone else, as long as
+ * the note is still the version the document was seeded from.
+ */
+@Entity(tableName = "note_crdt")
+public class NoteCrdtState {
+    @PrimaryKey
+    @NonNull
+    public String title;
+
+    /** What the document was seeded from, see {@link NoteCoEditor#origin(Note)}. */
+    @ColumnInfo(defaultValue = "")
+    @NonNull
+    public String origin;
+
+    @NonNull
+    public byte[] state;
+
+    public NoteCrdtState(@NonNull String title, @NonNull String origin, @NonNull byte[] state) {
+        this.title = title;
+        this.origin = origin;
+        this.state = state;
+    }
+}
@@ -1,15 +1,18 @@
 package edu.ucsd.cse110.sharednotes.model;
 
 import androidx.lifecycle.LiveData;
+import androidx.paging.PagingSource;
 import androidx.room.Dao;
-import androidx.room.Delete;
 import androidx.room.Insert;
+import androidx.room.MapInfo;
+import androidx.room.OnConflictStrategy;
 import androidx.room.Query;
 import androidx.room.Transaction;
 import androidx.room.Update;
 import androidx.room.Upsert;
 
 import java.util.List;
+import java.util.Map;
 
 /** Data access object for the {@link Note} class. */
 @Dao
@@ -21,19 +24,485 @@ public abstract class NoteDao {
      * Here we replace both @Insert and @Update with @Upsert. An @Upsert method will insert a new
      * item into the database if one with the title doesn't already exist, or update an existing
      * item if it does.
+     * <p>
+     * (The @Upsert itself is {@link #upsertRow(Note)}: long notes are split into chunks first.)
+     */
+    @Transaction
+    public long upsert(Note note) {
+        // Recorded first: the delta needs the old content, and a long note's is in the chunks
+        // about to be replaced.
+        recordRevision(findRow(note.title), note);
+        var chunks = NoteChunk.split(NoteChunk.NOTES, note.title, note.content);
+        replaceChunks(NoteChunk.NOTES, note.title, chunks);
+        return upsertRow(rowOf(note, chunks));
+    }
+
+    /** Upsert a whole batch of notes, in one transaction. */
+    @Transaction
+    public void upsertAll(List<Note> notes) {
+        for (var note : notes) upsert(note);
+    }
+
+    /**
+     * Insert a note only if there isn't one with that title already. Unlike checking
+     * {@link #exists(String)} first, the check and the insert are one transaction, so nothing can
+     * sneak in between.
+     *
+     * @return the new row's id, or -1 if there already was a note with that title.
+     */
+    @Transaction
+    public long insertIfAbsent(Note note) {
+        var chunks = NoteChunk.split(NoteChunk.NOTES, note.title, note.content);
+        var id = insertRowIfAbsent(rowOf(note, chunks));
+        if (id != -1) {
+            replaceChunks(NoteChunk.NOTES, note.title, chunks);
+            recordRevision(null, note);
+        }
+        return id;
+    }
+
+    @Transaction
+    public List<Note> getAll(List<String> titles) {
+        var notes = getRows(titles);
+        for (var note : notes) loadChunks(note);
+        return notes;
+    }
+
+    @Transaction
+    public Note find(String title) {
+        var note = findRow(title);
+        if (note != null) loadChunks(note);
+        return note;
+    }
+
+    @Query("SELECT version FROM notes WHERE title = :title")
+    public abstract long getVersion(String title);
+
+    /** The versions of those of the notes that exist, by title. */
+    @MapInfo(keyColumn = "title", valueColumn = "version")
+    @Query("SELECT title, version FROM notes WHERE title IN (:titles)")
+    public abstract Map<String, Long> getVersions(List<String> titles);
+
+    /**
+     * Overwrite a note, but only if the given version is newer than the one we have. If it isn't,
+     * nothing is written at all (so nobody observing the note gets woken up for nothing).
+     *
+     * @return 1 if the note was written, 0 if not.
+     */
+    @Transaction
+    public int updateIfNewer(String title, String content, long version, VersionVector vector) {
+        // Don't bother compressing a big note we're not going to write.
+        var before = findRow(title);
+        if (before == null || before.version >= version) return 0;
+
+        // Before the update, as in upsert(): it's sure to go through, we're in its transaction.
+        recordRevision(before, new Note(title, content, version, vector));
+        var chunks = NoteChunk.split(NoteChunk.NOTES, title, content);
+        var updated = updateRowIfNewer(title, NoteChunk.head(content), chunks.size(), version, vector);
+        if (updated > 0) replaceChunks(NoteChunk.NOTES, title, chunks);
+        return updated;
+    }
+
+    /**
+     * Write a note if we don't have it yet, or only have an older version of it, going by plain
+     * versions. This is what notes without a {@link VersionVector} fall back to.
+     *
+     * @return whether the note was written.
+     */
+    @Transaction
+    public boolean upsertIfNewer(Note note) {
+        // Checked first so a long note we already have isn't compressed just to find that out.
+        if (!exists(note.title) && insertIfAbsent(note) != -1) return true;
+        return updateIfNewer(note.title, note.content, note.version, note.vector) > 0;
+    }
+
+    /** What happened to a note from the server, see {@link #applyRemote(Note)}. */
+    public enum Applied { WRITTEN, SKIPPED, CONFLICT }
+
+    /**
+     * Write a note from the server, if it's newer than ours. Notes are compared by their
+     * {@link VersionVector}s, so an edit made here and one made elsewhere at the same time are
+     * not mistaken for one coming after the other: the server's is kept as a
+     * {@link NoteConflict} instead, and ours stays as it is.
+     */
+    @Transaction
+    public Applied applyRemote(Note theirs) {
+        // Only the row: most of the time, the content isn't needed.
+        var ours = findRow(theirs.title);
+        if (ours == null) {
+            upsert(theirs);
+            return Applied.WRITTEN;
+        }
+        if (ours.vector.isEmpty() || theirs.vector.isEmpty()) {
+            return upsertIfNewer(theirs) ? Applied.WRITTEN : Applied.SKIPPED;
+        }
+
+        switch (theirs.vector.compare(ours.vector)) {
+            case AFTER:
+                upsert(theirs);
+                // It may also include whatever we were in conflict with.
+                var conflict = findConflictRow(theirs.title);
+                if (conflict != null) {
+                    var order = conflict.vector.compare(theirs.vector);
+                    if (order == VersionVector.Order.BEFORE || order == VersionVector.Order.EQUAL) {
+                        deleteConflict(theirs.title);
+                    }
+                }
+                return Applied.WRITTEN;
+            case CONCURRENT:
+                loadChunks(ours);
+                if (theirs.content.equals(ours.content)) {
+                    // Both sides made the same edit, so there's nothing to choose between.
+                    ours.version = Math.max(ours.version, theirs.version);
+                    ours.vector = ours.vector.merge(theirs.vector);
+                    upsert(ours);
+                    return Applied.WRITTEN;
+                }
+                upsertConflict(NoteConflict.of(theirs));
+                return Applied.CONFLICT;
+            default:
+                // We already have this, or something newer.
+                return Applied.SKIPPED;
+        }
+    }
+
+    /**
+     * Save a local edit. Unlike a note from the server, an edit always lands: its version is
+     * bumped past both the version it was based on and the one we have now, and it's counted as
+     * a new edit by {@code device}. The note is updated to match.
+     * <p>
+     * If something landed since the edit was started that it never saw, that is kept as a
+     * conflict rather than silently overwritten. Earlier saves from {@code device} don't count:
+     * the edit was made in the same place as those, on top of them, even if the note it came in
+     * with hasn't caught up with their versions yet (e.g. Save tapped twice in a row).
      */
+    @Transaction
+    public void save(Note note, String device) {
+        var ours = findRow(note.title);
+        if (ours != null) {
+            var order = ours.vector.without(device).compare(note.vector.without(device));
+            if (order == VersionVector.Order.AFTER || order == VersionVector.Order.CONCURRENT) {
+                loadChunks(ours);
+                upsertConflict(NoteConflict.of(ours));
+            }
+            note.version = Math.max(note.version, ours.version);
+            note.vector = note.vector.merge(ours.vector);
+        }
+        note.version = note.version + 1;
+        note.vector = note.vector.increment(device);
+        upsert(note);
+    }
+
+    /**
+     * Settle a conflict by saving {@code content}, as a new edit that has seen both our version
+     * and the conflicting one. Does nothing if there is no conflict.
+     *
+     * @return the note as saved, or null if there was nothing to resolve.
+     */
+    @Transaction
+    public Note resolveConflict(String title, String content, String device) {
+        var conflict = findConflictRow(title);
+        var ours = findRow(title);
+        if (conflict == null || ours == null) return null;
+
+        var resolved = new Note(
+                title,
+                content,
+                Math.max(ours.version, conflict.version) + 1,
+                ours.vector.merge(conflict.vector).increment(device)
+        );
+        upsert(resolved);
+        deleteConflict(title);
+        return resolved;
+    }
+
+    /**
+     * Watch a note's conflict. As with {@link #get(String)}, a long conflict only has the start of
+     * its content here: use {@link #findConflict(String)} for the rest.
+     */
+    @Query("SELECT * FROM note_conflicts WHERE title = :title")
+    public abstract LiveData<NoteConflict> getConflict(String title);
+
+    @Transaction
+    public NoteConflict findConflict(String title) {
+        var conflict = findConflictRow(title);
+        if (conflict != null && conflict.chunks > 0) {
+            conflict.content = NoteChunk.join(getChunks(NoteChunk.CONFLICTS, title));
+            conflict.chunks = 0;
+        }
+        return conflict;
+    }
+
+    /** Keep a conflict, long ones in chunks like notes. */
+    @Transaction
+    public void upsertConflict(NoteConflict conflict) {
+        var chunks = NoteChunk.split(NoteChunk.CONFLICTS, conflict.title, conflict.content);
+        replaceChunks(NoteChunk.CONFLICTS, conflict.title, chunks);
+
+        var row = new NoteConflict(conflict.title, NoteChunk.head(conflict.content), conflict.version);
+        row.vector = conflict.vector;
+        row.chunks = chunks.size();
+        upsertConflictRow(row);
+    }
+
+    @Transaction
+    public void deleteConflict(String title) {
+        deleteChunks(NoteChunk.CONFLICTS, title);
+        deleteConflictRow(title);
+    }
+
+    @Query("SELECT * FROM note_crdt WHERE title = :title")
+    public abstract NoteCrdtState getCrdt(String title);
+
     @Upsert
-    public abstract long upsert(Note note);
+    public abstract void upsertCrdt(NoteCrdtState state);
 
     @Query("SELECT EXISTS(SELECT 1 FROM notes WHERE title = :title)")
     public abstract boolean exists(String title);
 
+    /**
+     * Watch a note. If it's stored in chunks, only the start of its content is read here: use
+     * {@link #find(String)} for the rest (see {@link NoteRepository#getLocal(String)}).
+     */
     @Query("SELECT * FROM notes WHERE title = :title")
     public abstract LiveData<Note> get(String title);
 
+    /** Watch every note. As with {@link #get(String)}, long notes only have their start. */
     @Query("SELECT * FROM notes ORDER BY title")
     public abstract LiveData<List<Note>> getAll();
 
-    @Delete
-    public abstract int delete(Note note);
+    /**
+     * Like {@link #getAll()}, but only loads the rows that are actually needed, a page at a time,
+     * and only the start of each note's content.
+     */
+    @Query("SELECT title, version, substr(content, 1, " + NoteSummary.PREVIEW_LENGTH + ") AS preview "
+            + "FROM notes ORDER BY title")
+    public abstract PagingSource<Integer, NoteSummary> getSummaries();
+
+    /**
+     * Search the notes' titles and contents, best matches first. Matched terms are highlighted
+     * in each result's preview, see {@link NoteSummary}. Only the start of a long note (as much
+     * as its row keeps, see {@link NoteChunk}) is searched.
+     *
+     * @param query an FTS4 MATCH expression, see {@link NoteRepository#searchLocal(String)}.
+     */
+    @Query("SELECT notes.title AS title, notes.version AS version, "
+            + "snippet(notes_fts, '" + NoteSummary.MATCH_START + "', '" + NoteSummary.MATCH_END + "', '…', -1, "
+            + NoteSummary.SNIPPET_WORDS + ") AS preview "
+            + "FROM notes JOIN notes_fts ON notes.rowid = notes_fts.rowid "
+            + "WHERE notes_fts MATCH :query "
+            // offsets() has one entry per matched term occurrence, so the longer it is, the more
+            // often the note matched. A crude rank, but FTS4 has nothing built in and it's cheap.
+            + "ORDER BY length(offsets(notes_fts)) DESC, notes.title")
+    public abstract PagingSource<Integer, NoteSummary> search(String query);
+
+    @Transaction
+    public int delete(Note note) {
+        return delete(note.title);
+    }
+
+    /**
+     * Delete a note, along with everything else kept about it: its history, any conflict, its
+     * merge base, its co-editing document and any upload still waiting in the outbox. A note
+     * created later with the same title starts from nothing.
+     */
+    @Transaction
+    public int delete(String title) {
+        return deleteAll(List.of(title));
+    }
+
+    /** Delete a whole batch of notes by title, in one transaction, as {@link #delete(String)} does. */
+    @Transaction
+    public int deleteAll(List<String> titles) {
+        // Every store's chunks, not just the notes'.
+        deleteAllChunks(titles);
+        deleteRevisions(titles);
+        deleteConflictRows(titles);
+        deleteBaseRows(titles);
+        deleteOutboxRows(titles);
+        deleteCrdts(titles);
+        return deleteRows(titles);
+    }
+
+    // History
+    // =======
+    // Every version of a note we've had, mostly as deltas from the one before, see NoteRevision.
+
+    /** Watch the note's history, newest first. */
+    @Query("SELECT version, length, saved_at FROM note_revisions WHERE title = :title ORDER BY version DESC")
+    public abstract LiveData<List<NoteRevision.Summary>> getHistory(String title);
+
+    /**
+     * The note's content as it was at {@code version}, or null if its history doesn't have that
+     * version (any more). However long the history is, this reads one keyframe and at most
+     * {@link NoteRevision#KEYFRAME_EVERY} deltas.
+     */
+    @Transaction
+    public String getRevisionContent(String title, long version) {
+        var chain = getRevisionChain(title, version);
+        if (chain.isEmpty() || chain.get(chain.size() - 1).version != version) return null;
+        return NoteRevision.rebuild(chain);
+    }
+
+    /**
+     * Drop the revisions of a note that are past keeping: all but the latest
+     * {@link NoteRevision#MAX_REVISIONS}, and any older than {@link NoteRevision#MAX_AGE_MS}. The
+     * oldest one kept becomes a keyframe, if it isn't one already, since the revisions it was a
+     * delta from are gone.
+     * <p>
+     * This runs by itself each time a keyframe is recorded, so it only has to be called directly
+     * to go by a different clock.
+     *
+     * @return how many revisions were dropped.
+     */
+    @Transaction
+    public int compactRevisions(String title, long now) {
+        var oldest = findOldestRevisionToKeep(title, now - NoteRevision.MAX_AGE_MS, NoteRevision.MAX_REVISIONS);
+        if (oldest == null || oldest.keyframe && !hasRevisionsBefore(title, oldest.version)) return 0;
+
+        if (!oldest.keyframe) {
+            var content = NoteRevision.rebuild(getRevisionChain(title, oldest.version));
+            // The revisions after it keep their depth, which now overcounts: that just means the
+            // next keyframe comes a little early.
+            upsertRevision(NoteRevision.keyframe(title, oldest.version, content, oldest.savedAt));
+        }
+        return deleteRevisionsBefore(title, oldest.version);
+    }
+
+    /**
+     * Add the note's new version to its history. {@code before} is the note's row as it was
+     * (or null if it's new), for the delta. Call this before writing the note, while the old
+     * chunks are still there.
+     */
+    private void recordRevision(Note before, Note after) {
+        if (after.content.length() > NoteRevision.MAX_CONTENT) return;
+        var latest = findLatestRevision(after.title);
+        if (latest != null && latest.version > after.version) return;
+
+        var now = System.currentTimeMillis();
+        NoteRevision revision = null;
+        // A delta only works from the revision the note was actually at. If the history has a
+        // gap (the note was too long for a while, say), start again from a keyframe. So does a
+        // note written again under the same version, which replaces that version's revision.
+        if (latest != null && before != null && latest.version == before.version
+                && latest.version < after.version
+                && latest.depth + 1 < NoteRevision.KEYFRAME_EVERY) {
+            loadChunks(before);
+            var delta = NoteDelta.between(before.content, after.content);
+            // A delta that's most of the note might as well be a keyframe, and shortens the chain.
+            if (delta.insert.length() < after.content.length() / 2) {
+                revision = NoteRevision.delta(after.title, after.version, latest.depth + 1, delta,
+                        after.content.length(), now);
+            }
+        }
+        if (revision == null) revision = NoteRevision.keyframe(after.title, after.version, after.content, now);
+
+        upsertRevision(revision);
+        if (revision.keyframe) compactRevisions(after.title, now);
+    }
+
+    @Query("SELECT * FROM note_revisions WHERE title = :title ORDER BY version DESC LIMIT 1")
+    protected abstract NoteRevision findLatestRevision(String title);
+
+    /** The revisions {@link NoteRevision#rebuild(List)} needs for {@code version}, in order. */
+    @Query("SELECT * FROM note_revisions WHERE title = :title AND version <= :version "
+            + "AND version >= (SELECT MAX(version) FROM note_revisions "
+            + "WHERE title = :title AND version <= :version AND keyframe) "
+            + "ORDER BY version")
+    protected abstract List<NoteRevision> getRevisionChain(String title, long version);
+
+    // The latest revision is always kept, however old.
+    @Query("SELECT * FROM note_revisions WHERE title = :title AND version = (SELECT MIN(version) FROM "
+            + "(SELECT version FROM note_revisions WHERE title = :title AND (saved_at >= :cutoff "
+            + "OR version = (SELECT MAX(version) FROM note_revisions WHERE title = :title)) "
+            + "ORDER BY version DESC LIMIT :max))")
+    protected abstract NoteRevision findOldestRevisionToKeep(String title, long cutoff, int max);
+
+    @Query("SELECT EXISTS(SELECT 1 FROM note_revisions WHERE title = :title AND version < :version)")
+    protected abstract boolean hasRevisionsBefore(String title, long version);
+
+    @Upsert
+    protected abstract void upsertRevision(NoteRevision revision);
+
+    @Query("DELETE FROM note_revisions WHERE title = :title AND version < :version")
+    protected abstract int deleteRevisionsBefore(String title, long version);
+
+    @Query("DELETE FROM note_revisions WHERE title IN (:titles)")
+    protected abstract void deleteRevisions(List<String> titles);
+
+    // Rows
+    // ====
+    // Notes as they're stored: a long note's row only holds the start of its content, the rest is
+    // in its chunks (see NoteChunk). Everything above reads and writes whole notes through these.
+
+    /** The row to store for a note, given its chunks. */
+    private static Note rowOf(Note note, List<NoteChunk> chunks) {
+        var row = new Note(note.title, NoteChunk.head(note.content), note.version, note.vector);
+        row.chunks = chunks.size();
+        return row;
+    }
+
+    /** Put the whole content back into a note read from its row. */
+    private void loadChunks(Note note) {
+        if (note.chunks == 0) return;
+        note.content = NoteChunk.join(getChunks(NoteChunk.NOTES, note.title));
+        note.chunks = 0;
+    }
+
+    private void replaceChunks(String store, String title, List<NoteChunk> chunks) {
+        deleteChunks(store, title);
+        if (!chunks.isEmpty()) insertChunks(chunks);
+    }
+
+    @Upsert
+    protected abstract long upsertRow(Note note);
+
+    @Insert(onConflict = OnConflictStrategy.IGNORE)
+    protected abstract long insertRowIfAbsent(Note note);
+
+    @Query("SELECT * FROM notes WHERE title = :title")
+    protected abstract Note findRow(String title);
+
+    @Query("SELECT * FROM notes WHERE title IN (:titles)")
+    protected abstract List<Note> getRows(List<String> titles);
+
+    @Query("UPDATE notes SET content = :content, chunks = :chunks, version = :version, vector = :vector "
+            + "WHERE title = :title AND version < :version")
+    protected abstract int updateRowIfNewer(String title, String content, int chunks, long version, VersionVector vector);
+
+    @Query("DELETE FROM notes WHERE title IN (:titles)")
+    protected abstract int deleteRows(List<String> titles);
+
+    @Query("SELECT * FROM note_conflicts WHERE title = :title")
+    protected abstract NoteConflict findConflictRow(String title);
+
+    @Upsert
+    protected abstract void upsertConflictRow(NoteConflict conflict);
+
+    @Query("DELETE FROM note_conflicts WHERE title = :title")
+    protected abstract void deleteConflictRow(String title);
+
+    @Query("DELETE FROM note_conflicts WHERE title IN (:titles)")
+    protected abstract void deleteConflictRows(List<String> titles);
+
+    @Query("DELETE FROM note_bases WHERE title IN (:titles)")
+    protected abstract void deleteBaseRows(List<String> titles);
+
+    @Query("DELETE FROM outbox WHERE title IN (:titles)")
+    protected abstract void deleteOutboxRows(List<String> titles);
+
+    @Query("DELETE FROM note_crdt WHERE title IN (:titles)")
+    protected abstract void deleteCrdts(List<String> titles);
+
+    @Query("SELECT * FROM note_chunks WHERE store = :store AND title = :title ORDER BY idx")
+    protected abstract List<NoteChunk> getChunks(String store, String title);
+
+    @Insert
+    protected abstract void insertChunks(List<NoteChunk> chunks);
+
+    @Query("DELETE FROM note_chunks WHERE store = :store AND title = :title")
+    protected abstract void deleteChunks(String store, String title);
+
+    @Query("DELETE FROM note_chunks WHERE title IN (:titles)")
+    protected abstract void deleteAllChunks(List<String> titles);
 }
@@ -6,13 +6,38 @@ import androidx.annotation.VisibleForTesting;
 import androidx.room.Database;
 import androidx.room.Room;
 import androidx.room.RoomDatabase;
+import androidx.room.TypeConverters;
 
-@Database(entities = {Note.class}, version = 2, exportSchema = false)
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * The app's database. Queries are never run on the main thread: reads run on a small pool
+ * (Room also uses it for LiveData and paging queries), and writes on a single thread of their
+ * own, since SQLite only allows one writer at a time anyway. The database is in write-ahead
+ * logging mode, so readers don't wait for the writer (or each other).
+ */
+@Database(
+        entities = {
+                Note.class, NoteFts.class, OutboxEntry.class, NoteBase.class, NoteConflict.class,
+                NoteCrdtState.class, SyncCursor.class, NoteChunk.class, NoteRevision.class
+        },
+        version = 13,
+        exportSchema = false
+)
+@TypeConverters(VersionVector.class)
 public abstract class NoteDatabase extends RoomDatabase {
+    private static final int READ_THREADS = 4;
+
     private volatile static NoteDatabase instance = null;
 
+    private static final ExecutorService reads = Executors.newFixedThreadPool(READ_THREADS);
+    private static final ExecutorService writes = Executors.newSingleThreadExecutor();
+
     public abstract NoteDao getDao();
 
+    public abstract OutboxDao getOutboxDao();
+
     public synchronized static NoteDatabase provide(Context context) {
         if (instance == null) {
             instance = NoteDatabase.make(context);
@@ -20,10 +45,25 @@ public abstract class NoteDatabase extends RoomDatabase {
         return instance;
     }
 
+    /** Where to run one-off queries that only read. */
+    public static ExecutorService reads() {
+        return reads;
+    }
+
+    /** Where to run anything that writes. Writes run one at a time, in the order submitted. */
+    public static ExecutorService writes() {
+        return writes;
+    }
+
     private static NoteDatabase make(Context context) {
         return Room.databaseBuilder(context, NoteDatabase.class, "note_app.db")
-                .allowMainThreadQueries()
-                .fallbackToDestructiveMigration()
+                .setQueryExecutor(reads)
+                .setTransactionExecutor(writes)
+                .setJournalMode(JournalMode.WRITE_AHEAD_LOGGING)
+                // Upgrades keep everyone's notes, see NoteMigrations. There's no telling what the
+                // database looked like before version 2, so that's the only one that starts over.
+                .addMigrations(NoteMigrations.ALL)
+                .fallbackToDestructiveMigrationFrom(1)
                 .build();
     }
 
@@ -0,0 +1,62 @@
+package edu.ucsd.cse110.sharednotes.model;
+
+import androidx.annotation.NonNull;
+
+/**
+ * The difference between two versions of a note's content, as a single splice: delete
+ * {@link #deleteCount} characters at {@link #start}, then insert {@link #insert} there.
+ * <p>
+ * Most edits are typing in one place (often at the end), which a single splice captures exactly,
+ * so sending the splice instead of the whole content is a huge saving on big notes. Edits in
+ * several places still work, the splice just covers everything between the first and last one.
+ * <p>
+ * Offsets are in UTF-16 code units (i.e. Java/JavaScript string indices), and never split a
+ * surrogate pair.
+ */
+public class NoteDelta {
+    public final int start;
+    public final int deleteCount;
+    @NonNull
+    public final String insert;
+
+    public NoteDelta(int start, int deleteCount, @NonNull String insert) {
+        this.start = start;
+        this.deleteCount = deleteCount;
+        this.insert = insert;
+    }
+
+    /** Compute the splice that turns {@code before} into {@code after}. */
+    public static NoteDelta between(String before, String after) {
+        var max = Math.min(before.length(), after.length());
+
+        var prefix = 0;
+        while (prefix < max && before.charAt(prefix) == after.charAt(prefix)) prefix++;
+        if (prefix > 0 && Character.isHighSurrogate(before.charAt(prefix - 1))) prefix--;
+
+        // The suffix can't overlap the prefix in either string.
+        var suffix = 0;
+        while (suffix < max - prefix
+                && before.charAt(before.length() - 1 - suffix) == after.charAt(after.length() - 1 - suffix)) {
+            suffix++;
+        }
+        if (suffix > 0 && Character.isLowSurrogate(before.charAt(before.length() - suffix))) suffix--;
+
+        return new NoteDelta(
+                prefix,
+                before.length() - prefix - suffix,
+                after.substring(prefix, after.length() - suffix)
+        );
+    }
+
+    /** Apply this splice to {@code before}. */
+    public String apply(String before) {
+        if (start < 0 || deleteCount < 0 || start + deleteCount > before.length()) {
+            throw new IllegalArgumentException("Delta doesn't fit a string of length " + before.length());
+        }
+        return before.substring(0, start) + insert + before.substring(start + deleteCount);
+    }
+
+    public boolean isEmpty() {
+        return deleteCount == 0 && insert.isEmpty();
+    }
+}
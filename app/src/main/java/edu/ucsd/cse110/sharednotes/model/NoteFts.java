@@ -0,0 +1,29 @@
+package edu.ucsd.cse110.sharednotes.model;
+
+import androidx.annotation.NonNull;
+import androidx.room.Entity;
+import androidx.room.Fts4;
+import androidx.room.FtsOptions;
+
+/**
+ * A full-text index over the notes' titles and contents, so searching doesn't have to scan
+ * every note with LIKE '%term%'.
+ * <p>
+ * This is an "external content" table: it doesn't store its own copy of the text, it points back
+ * into the notes table (by rowid). Room installs triggers on notes that keep the index up to date
+ * whenever a note is inserted, updated or deleted, so nothing else needs to know it exists.
+ */
+@Fts4(contentEntity = Note.class, tokenizer = FtsOptions.TOKENIZER_UNICODE61)
+@Entity(tableName = "notes_fts")
+public class NoteFts {
+    @NonNull
+    public String title;
+
+    @NonNull
+    public String content;
+
+    public NoteFts(@NonNull String title, @NonNull String content) {
+        this.title = title;
+        this.content = content;
+    }
+}
@@ -0,0 +1,84 @@
+package edu.ucsd.cse110.sharednotes.model;
+
+import android.content.Context;
+import android.os.StrictMode;
+
+import java.io.File;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.Cache;
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.brotli.BrotliInterceptor;
+
+/**
+ * The one OkHttpClient the whole app uses.
+ * <p>
+ * An OkHttpClient owns a connection pool, a dispatcher (with its threads) and a cache. Sharing
+ * one means every request can reuse a warm connection (and, over HTTP/2, the same connection as
+ * every other request in flight) instead of paying for a new TCP connect and TLS handshake.
+ * If you need a variation on it, use {@code provide(context).newBuilder()}, which shares all of
+ * that too.
+ */
+public class NoteHttpClient {
+    private static final int MAX_IDLE_CONNECTIONS = 5;
+    private static final long KEEP_ALIVE_MINUTES = 5;
+    private static final int MAX_REQUESTS = 64;
+    private static final int MAX_REQUESTS_PER_HOST = 32;
+    private static final long CACHE_BYTES = 10 * 1024 * 1024;
+    private static final long GZIP_MIN_BYTES = 1024;
+
+    private volatile static OkHttpClient instance = null;
+    private static final ConnectionMetrics metrics = new ConnectionMetrics();
+
+    public synchronized static OkHttpClient provide(Context context) {
+        if (instance == null) {
+            instance = make(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    public static ConnectionMetrics metrics() {
+        return metrics;
+    }
+
+    private static OkHttpClient make(Context context) {
+        // By default OkHttp only runs 5 requests per host at a time, which would split a batch
+        // pull into several waves. Let a whole batch go out at once.
+        var dispatcher = new Dispatcher();
+        dispatcher.setMaxRequests(MAX_REQUESTS);
+        dispatcher.setMaxRequestsPerHost(MAX_REQUESTS_PER_HOST);
+
+        // Looking up the cache directory may create it. It's tiny and only happens once, and the
+        // client is usually first needed on the main thread, so let it through StrictMode.
+        File cacheDir;
+        var policy = StrictMode.allowThreadDiskWrites();
+        try {
+            cacheDir = new File(context.getCacheDir(), "http");
+        } finally {
+            StrictMode.setThreadPolicy(policy);
+        }
+
+        return new OkHttpClient.Builder()
+                .dispatcher(dispatcher)
+                .connectionPool(new ConnectionPool(MAX_IDLE_CONNECTIONS, KEEP_ALIVE_MINUTES, TimeUnit.MINUTES))
+                .protocols(List.of(Protocol.HTTP_2, Protocol.HTTP_1_1))
+                .cache(new Cache(cacheDir, CACHE_BYTES))
+                .connectTimeout(Duration.ofSeconds(10))
+                .readTimeout(Duration.ofSeconds(15))
+                .writeTimeout(Duration.ofSeconds(15))
+                // Keeps the push channel's socket alive through NATs and notices when it dies.
+                .pingInterval(Duration.ofSeconds(30))
+                .eventListener(metrics)
+                // Compress big uploads...
+                .addInterceptor(new GzipRequestInterceptor(GZIP_MIN_BYTES))
+                // ...and ask for compressed downloads. OkHttp already asks for gzip on its own, this
+                // adds Brotli (which does better on text) and decodes whichever the server picks.
+                .addInterceptor(BrotliInterceptor.INSTANCE)
+                .build();
+    }
+}
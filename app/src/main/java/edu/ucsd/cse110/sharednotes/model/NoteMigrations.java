@@ -0,0 +1,212 @@
+package edu.ucsd.cse110.sharednotes.model;
+
+import android.content.ContentValues;
+import android.database.sqlite.SQLiteDatabase;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.room.migration.Migration;
+import androidx.sqlite.db.SupportSQLiteDatabase;
+
+import java.util.ArrayList;
+
+/**
+ * How to upgrade the database from each older version to the next, keeping everyone's notes
+ * (rather than wiping them, as we used to). Each migration must leave the tables exactly as Room
+ * would have created them at that version, or Room refuses to open the database.
+ * <p>
+ * When changing an entity, bump the version in {@link NoteDatabase} and add a migration here.
+ */
+public class NoteMigrations {
+    private NoteMigrations() {}
+
+    /** v3: the outbox. */
+    static final Migration MIGRATION_2_3 = new Migration(2, 3) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase db) {
+            db.execSQL("CREATE TABLE IF NOT EXISTS `outbox` (`title` TEXT NOT NULL, `content` TEXT NOT NULL, "
+                    + "`version` INTEGER NOT NULL, `attempts` INTEGER NOT NULL, "
+                    + "`next_attempt_at` INTEGER NOT NULL, PRIMARY KEY(`title`))");
+        }
+    };
+
+    /** v4: what the server is known to have, to send deltas against. */
+    static final Migration MIGRATION_3_4 = new Migration(3, 4) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase db) {
+            db.execSQL("CREATE TABLE IF NOT EXISTS `note_bases` (`title` TEXT NOT NULL, `content` TEXT NOT NULL, "
+                    + "`version` INTEGER NOT NULL, PRIMARY KEY(`title`))");
+        }
+    };
+
+    /** v5: the full-text index, and the triggers Room keeps it in sync with. */
+    static final Migration MIGRATION_4_5 = new Migration(4, 5) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase db) {
+            db.execSQL("CREATE VIRTUAL TABLE IF NOT EXISTS `notes_fts` USING FTS4(`title` TEXT NOT NULL, "
+                    + "`content` TEXT NOT NULL, tokenize=unicode61, content=`notes`)");
+            db.execSQL("CREATE TRIGGER IF NOT EXISTS room_fts_content_sync_notes_fts_BEFORE_UPDATE "
+                    + "BEFORE UPDATE ON `notes` BEGIN DELETE FROM `notes_fts` WHERE `docid`=OLD.`rowid`; END");
+            db.execSQL("CREATE TRIGGER IF NOT EXISTS room_fts_content_sync_notes_fts_BEFORE_DELETE "
+                    + "BEFORE DELETE ON `notes` BEGIN DELETE FROM `notes_fts` WHERE `docid`=OLD.`rowid`; END");
+            db.execSQL("CREATE TRIGGER IF NOT EXISTS room_fts_content_sync_notes_fts_AFTER_UPDATE "
+                    + "AFTER UPDATE ON `notes` BEGIN INSERT INTO `notes_fts`(`docid`, `title`, `content`) "
+                    + "VALUES (NEW.`rowid`, NEW.`title`, NEW.`content`); END");
+            db.execSQL("CREATE TRIGGER IF NOT EXISTS room_fts_content_sync_notes_fts_AFTER_INSERT "
+                    + "AFTER INSERT ON `notes` BEGIN INSERT INTO `notes_fts`(`docid`, `title`, `content`) "
+                    + "VALUES (NEW.`rowid`, NEW.`title`, NEW.`content`); END");
+            // The triggers only cover notes written from now on: index the ones we already have.
+            db.execSQL("INSERT INTO `notes_fts`(`notes_fts`) VALUES('rebuild')");
+        }
+    };
+
+    /** v6: version vectors, and conflicts kept aside for the user. */
+    static final Migration MIGRATION_5_6 = new Migration(5, 6) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase db) {
+            db.execSQL("ALTER TABLE `notes` ADD COLUMN `vector` TEXT NOT NULL DEFAULT ''");
+            db.execSQL("ALTER TABLE `outbox` ADD COLUMN `vector` TEXT NOT NULL DEFAULT ''");
+            db.execSQL("CREATE TABLE IF NOT EXISTS `note_conflicts` (`title` TEXT NOT NULL, `content` TEXT NOT NULL, "
+                    + "`version` INTEGER NOT NULL, `vector` TEXT NOT NULL DEFAULT '', PRIMARY KEY(`title`))");
+        }
+    };
+
+    /** v7: the vector of what the server has, to tell whether it's a common ancestor. */
+    static final Migration MIGRATION_6_7 = new Migration(6, 7) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase db) {
+            db.execSQL("ALTER TABLE `note_bases` ADD COLUMN `vector` TEXT NOT NULL DEFAULT ''");
+        }
+    };
+
+    /** v8: co-editing documents. */
+    static final Migration MIGRATION_7_8 = new Migration(7, 8) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase db) {
+            db.execSQL("CREATE TABLE IF NOT EXISTS `note_crdt` (`title` TEXT NOT NULL, `state` BLOB NOT NULL, "
+                    + "PRIMARY KEY(`title`))");
+        }
+    };
+
+    /** v9: changes feed cursors. */
+    static final Migration MIGRATION_8_9 = new Migration(8, 9) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase db) {
+            db.execSQL("CREATE TABLE IF NOT EXISTS `sync_cursors` (`feed` TEXT NOT NULL, `cursor` TEXT NOT NULL, "
+                    + "PRIMARY KEY(`feed`))");
+        }
+    };
+
+    /** v10: long notes stored in compressed chunks. Notes that are already long are moved over. */
+    static final Migration MIGRATION_9_10 = new Migration(9, 10) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase db) {
+            db.execSQL("ALTER TABLE `notes` ADD COLUMN `chunks` INTEGER NOT NULL DEFAULT 0");
+            db.execSQL("CREATE TABLE IF NOT EXISTS `note_chunks` (`title` TEXT NOT NULL, `idx` INTEGER NOT NULL, "
+                    + "`data` BLOB NOT NULL, PRIMARY KEY(`title`, `idx`))");
+            // Chunks didn't say whose they were yet: they were all the notes'.
+            moveToChunks(db, "notes", null);
+        }
+    };
+
+    /** v11: note history. It starts empty: older versions were never kept. */
+    static final Migration MIGRATION_10_11 = new Migration(10, 11) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase db) {
+            db.execSQL("CREATE TABLE IF NOT EXISTS `note_revisions` (`title` TEXT NOT NULL, `version` INTEGER NOT NULL, "
+                    + "`keyframe` INTEGER NOT NULL, `depth` INTEGER NOT NULL, `start` INTEGER NOT NULL, "
+                    + "`delete_count` INTEGER NOT NULL, `inserted` TEXT NOT NULL, `length` INTEGER NOT NULL, "
+                    + "`saved_at` INTEGER NOT NULL, PRIMARY KEY(`title`, `version`))");
+        }
+    };
+
+    /**
+     * v12: chunks for the outbox, the bases and the conflicts too. Chunks now say which table
+     * they're for, and long content already in those tables is moved over.
+     */
+    static final Migration MIGRATION_11_12 = new Migration(11, 12) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase db) {
+            // SQLite can't change a primary key in place: copy the chunks into a new table.
+            db.execSQL("CREATE TABLE IF NOT EXISTS `_new_note_chunks` (`store` TEXT NOT NULL, `title` TEXT NOT NULL, "
+                    + "`idx` INTEGER NOT NULL, `data` BLOB NOT NULL, PRIMARY KEY(`store`, `title`, `idx`))");
+            db.execSQL("INSERT INTO `_new_note_chunks` (`store`, `title`, `idx`, `data`) "
+                    + "SELECT '" + NoteChunk.NOTES + "', `title`, `idx`, `data` FROM `note_chunks`");
+            db.execSQL("DROP TABLE `note_chunks`");
+            db.execSQL("ALTER TABLE `_new_note_chunks` RENAME TO `note_chunks`");
+
+            for (var table : new String[]{NoteChunk.OUTBOX, NoteChunk.BASES, NoteChunk.CONFLICTS}) {
+                db.execSQL("ALTER TABLE `" + table + "` ADD COLUMN `chunks` INTEGER NOT NULL DEFAULT 0");
+                moveToChunks(db, table, table);
+            }
+        }
+    };
+
+    /**
+     * v13: what each co-editing document was seeded from. Documents stored before that can't be
+     * told apart from stale ones, so they're seeded again the next time their note is opened.
+     */
+    static final Migration MIGRATION_12_13 = new Migration(12, 13) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase db) {
+            db.execSQL("ALTER TABLE `note_crdt` ADD COLUMN `origin` TEXT NOT NULL DEFAULT ''");
+        }
+    };
+
+    /** Every migration, from the first version that shipped (2) to the current one. */
+    public static final Migration[] ALL = {
+            MIGRATION_2_3, MIGRATION_3_4, MIGRATION_4_5, MIGRATION_5_6, MIGRATION_6_7, MIGRATION_7_8,
+            MIGRATION_8_9, MIGRATION_9_10, MIGRATION_10_11, MIGRATION_11_12, MIGRATION_12_13
+    };
+
+    // Read long content a piece at a time: all of it may not fit SQLite's window, which is
+    // exactly why it's being moved.
+    private static final int READ_CHARS = 256 * 1024;
+
+    /**
+     * Move the long content in {@code table} (which has title, content and chunks columns) into
+     * chunks, leaving only its start in the table, as the DAOs keep it.
+     *
+     * @param store whose chunks they are, or null for the chunks table as it was at v10.
+     */
+    private static void moveToChunks(SupportSQLiteDatabase db, String table, @Nullable String store) {
+        var titles = new ArrayList<String>();
+        var lengths = new ArrayList<Integer>();
+        // SQLite's length() counts characters, not UTF-16 units like Java, but that only
+        // matters for content right at the limit, and that is fine either way.
+        try (var cursor = db.query("SELECT title, length(content) FROM `" + table + "` WHERE length(content) > ?",
+                new Object[]{NoteChunk.MAX_INLINE})) {
+            while (cursor.moveToNext()) {
+                titles.add(cursor.getString(0));
+                lengths.add(cursor.getInt(1));
+            }
+        }
+
+        for (int i = 0; i < titles.size(); i++) {
+            var title = titles.get(i);
+            var content = new StringBuilder();
+            // substr() counts from 1.
+            for (int start = 1; start <= lengths.get(i); start += READ_CHARS) {
+                try (var cursor = db.query("SELECT substr(content, ?, ?) FROM `" + table + "` WHERE title = ?",
+                        new Object[]{start, READ_CHARS, title})) {
+                    if (cursor.moveToFirst()) content.append(cursor.getString(0));
+                }
+            }
+
+            var whole = content.toString();
+            var chunks = NoteChunk.split(store == null ? NoteChunk.NOTES : store, title, whole);
+            for (var chunk : chunks) {
+                var values = new ContentValues();
+                if (store != null) values.put("store", chunk.store);
+                values.put("title", chunk.title);
+                values.put("idx", chunk.idx);
+                values.put("data", chunk.data);
+                db.insert("note_chunks", SQLiteDatabase.CONFLICT_REPLACE, values);
+            }
+            var values = new ContentValues();
+            values.put("content", NoteChunk.head(whole));
+            values.put("chunks", chunks.size());
+            db.update(table, SQLiteDatabase.CONFLICT_NONE, values, "title = ?", new Object[]{title});
+        }
+    }
+}
@@ -0,0 +1,195 @@
+package edu.ucsd.cse110.sharednotes.model;
+
+import android.content.Context;
+import android.util.Log;
+
+import androidx.annotation.AnyThread;
+import androidx.annotation.VisibleForTesting;
+import androidx.annotation.WorkerThread;
+
+import java.util.ArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Uploads locally saved notes to the server, in the background.
+ * <p>
+ * Saves are written to the outbox table first, so they survive the app being killed or the
+ * device being offline. The outbox is drained once saves stop coming for a moment, so that if
+ * someone mashes the save button, all those saves collapse into one entry and one upload. A burst
+ * that never stops is still drained every {@link #MAX_DRAIN_WAIT_MS}.
+ * Uploads that fail are retried with exponential backoff. Anything still queued when the
+ * process starts is picked up by the first drain.
+ * <p>
+ * We also keep track of the last version of each note the server is known to have (a
+ * {@link NoteBase}), so uploads can be sent as a small delta against it.
+ */
+public class NoteOutbox {
+    private static final long DRAIN_DELAY_MS = 500;
+    private static final long MAX_DRAIN_WAIT_MS = 5000;
+    private static final long MIN_BACKOFF_MS = 2000;
+    private static final long MAX_BACKOFF_MS = 5 * 60_000;
+    private static final int MAX_IN_FLIGHT = 2;
+    private static final int DRAIN_BATCH = 16;
+
+    private volatile static NoteOutbox instance = null;
+
+    private final OutboxDao dao;
+    private final NoteAPI api;
+    private final LongSupplier clock;
+
+    // Drains happen on this one thread, uploads on their own pool. Writes to the outbox go
+    // through NoteDatabase.writes() like every other write, and uploads only ever remove or
+    // reschedule the exact version they uploaded, so they can't clobber a newer save.
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+    private final ExecutorService uploads = Executors.newFixedThreadPool(MAX_IN_FLIGHT);
+
+    private ScheduledFuture<?> nextDrain; // guarded by this
+    private long nextDrainAt = Long.MAX_VALUE; // guarded by this
+    private long burstStartedAt = Long.MAX_VALUE; // guarded by this, first enqueue since the last drain
+
+    @VisibleForTesting
+    public NoteOutbox(OutboxDao dao, NoteAPI api, LongSupplier clock) {
+        this.dao = dao;
+        this.api = api;
+        this.clock = clock;
+    }
+
+    public synchronized static NoteOutbox provide(Context context) {
+        if (instance == null) {
+            var db = NoteDatabase.provide(context);
+            instance = new NoteOutbox(db.getOutboxDao(), NoteAPI.provide(context), System::currentTimeMillis);
+            // Pick up whatever was left over from last time.
+            instance.scheduleDrain(0);
+        }
+        return instance;
+    }
+
+    /** Queue a note to be uploaded. Replaces any older version of it still waiting. */
+    @AnyThread
+    public void enqueue(Note note) {
+        var entry = OutboxEntry.of(note);
+        // Only start the wait once it's written, so the drain is sure to see it. Saves call this
+        // from the write thread, so don't wait for it here.
+        NoteDatabase.writes().execute(() -> {
+            dao.enqueue(entry);
+            debounceDrain();
+        });
+    }
+
+    /**
+     * Drain {@link #DRAIN_DELAY_MS} after this enqueue, pushing back any drain waiting for an
+     * earlier one, but no later than {@link #MAX_DRAIN_WAIT_MS} after the first of them.
+     */
+    private synchronized void debounceDrain() {
+        var now = clock.getAsLong();
+        if (burstStartedAt == Long.MAX_VALUE) burstStartedAt = now;
+        var at = Math.min(now + DRAIN_DELAY_MS, burstStartedAt + MAX_DRAIN_WAIT_MS);
+        rescheduleDrain(at);
+    }
+
+    /** Make sure a drain happens within the given delay. Never pushes an earlier drain back. */
+    private synchronized void scheduleDrain(long delayMs) {
+        var at = clock.getAsLong() + delayMs;
+        if (nextDrain != null && !nextDrain.isDone() && nextDrainAt <= at) return;
+        rescheduleDrain(at);
+    }
+
+    private synchronized void rescheduleDrain(long at) {
+        if (nextDrain != null) nextDrain.cancel(false);
+        nextDrainAt = at;
+        var delayMs = Math.max(0, at - clock.getAsLong());
+        nextDrain = scheduler.schedule(this::drain, delayMs, TimeUnit.MILLISECONDS);
+    }
+
+    @WorkerThread
+    private void drain() {
+        synchronized (this) {
+            nextDrain = null;
+            nextDrainAt = Long.MAX_VALUE;
+            burstStartedAt = Long.MAX_VALUE;
+        }
+
+        var due = dao.getDue(clock.getAsLong(), DRAIN_BATCH);
+        var inFlight = new ArrayList<Future<?>>();
+        for (var entry : due) {
+            inFlight.add(uploads.submit(() -> upload(entry)));
+        }
+
+        for (var upload : inFlight) {
+            try {
+                upload.get();
+            } catch (ExecutionException e) {
+                Log.e("Outbox", "Upload crashed", e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+
+        // Come back when the next entry is due (right away, if there's more than one batch).
+        var next = dao.getNextAttemptAt();
+        if (next != null) {
+            scheduleDrain(Math.max(0, next - clock.getAsLong()));
+        }
+    }
+
+    @WorkerThread
+    private void upload(OutboxEntry entry) {
+        // A long entry only came with the start of its content.
+        if (entry.chunks > 0) {
+            var whole = dao.get(entry.title);
+            // Saved again since, the newer entry gets its own turn.
+            if (whole == null || whole.version != entry.version) return;
+            entry = whole;
+        }
+
+        var note = entry.toNote();
+        var status = api.pushToRemote(note, dao.getBase(entry.title));
+
+        var title = entry.title;
+        var version = entry.version;
+        if (status >= 200 && status < 300) {
+            awaitWrite(() -> {
+                dao.remove(title, version);
+                dao.acknowledge(NoteBase.of(note));
+            });
+        } else if (isPermanentFailure(status)) {
+            // The server will never take this one, retrying would just spin forever.
+            Log.e("Outbox", "Server rejected " + entry.title + " with " + status + ", dropping it");
+            awaitWrite(() -> dao.remove(title, version));
+        } else {
+            var attempts = entry.attempts + 1;
+            var backoff = Math.min(MAX_BACKOFF_MS, MIN_BACKOFF_MS << Math.min(attempts - 1, 16));
+            Log.w("Outbox", "Upload of " + entry.title + " failed (" + status + "), retrying in " + backoff + "ms");
+            var nextAttemptAt = clock.getAsLong() + backoff;
+            awaitWrite(() -> dao.retryLater(title, version, attempts, nextAttemptAt));
+        }
+    }
+
+    /**
+     * Run a write on the write thread and wait for it, so the drain that started the upload sees
+     * it when it looks for what's due next.
+     */
+    private static void awaitWrite(Runnable write) {
+        try {
+            NoteDatabase.writes().submit(write).get();
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static boolean isPermanentFailure(int status) {
+        // Client errors won't go away by retrying, except timeouts and rate limiting.
+        return status >= 400 && status < 500 && status != 408 && status != 429;
+    }
+}
@@ -0,0 +1,261 @@
+package edu.ucsd.cse110.sharednotes.model;
+
+import android.content.Context;
+import android.util.Log;
+
+import androidx.annotation.AnyThread;
+import androidx.annotation.MainThread;
+import androidx.annotation.VisibleForTesting;
+import androidx.annotation.WorkerThread;
+import androidx.lifecycle.LiveData;
+import androidx.lifecycle.MutableLiveData;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.LongSupplier;
+
+/**
+ * Polls the server for the notes that are currently being watched.
+ * <p>
+ * There is only one poller per process, backed by a small, bounded scheduler. Every title gets
+ * exactly one LiveData, shared by everyone who watches it, so two screens showing the same note
+ * share one poll loop, and it's dropped once nobody observes it at all. A title is only polled
+ * while its LiveData has at least one active observer: LiveData already keeps that count for
+ * us, and tells us through onActive() and onInactive() when it goes from zero to one and back.
+ * <p>
+ * Titles are not polled one by one. Every tick, all the watched titles that are due are gathered
+ * into one batch and fetched together, then the results are fanned back out to each title's
+ * LiveData, and handed as one batch to whoever applies them to the database (see
+ * {@link NoteSyncEngine}). When a title is due is up to its {@link PollSchedule}: notes that keep changing are
+ * polled often, idle notes less and less.
+ * <p>
+ * If a {@link NotePushChannel} is given, watched titles are also subscribed to over it, and
+ * polling is skipped for as long as the channel is connected. When it drops, polling simply
+ * picks up again on the next tick.
+ */
+public class NotePoller {
+    private static final int POOL_SIZE = 2;
+
+    private volatile static NotePoller instance = null;
+
+    private final NoteAPI api;
+    private final ScheduledExecutorService scheduler;
+    private final PollSchedule.Config config;
+    private final LongSupplier clock;
+    private final Random random = new Random();
+    private final Map<String, PolledNote> notes = new ConcurrentHashMap<>();
+    private final Map<String, PollSchedule> schedules = new ConcurrentHashMap<>();
+    private final NotePushChannel push;
+    private final Consumer<List<Note>> onPulled;
+
+    private ScheduledFuture<?> ticker; // guarded by this
+    private volatile int lastBatchSize = 0;
+
+    @VisibleForTesting
+    public NotePoller(
+            NoteAPI api,
+            ScheduledExecutorService scheduler,
+            PollSchedule.Config config,
+            LongSupplier clock,
+            boolean usePush,
+            Consumer<List<Note>> onPulled,
+            NotePushChannel.UpdateListener onUpdate
+    ) {
+        this.api = api;
+        this.scheduler = scheduler;
+        this.config = config;
+        this.clock = clock;
+        this.push = usePush ? new NotePushChannel(api, scheduler, this::onPushed, onUpdate) : null;
+        this.onPulled = onPulled;
+    }
+
+    public synchronized static NotePoller provide(Context context) {
+        if (instance == null) {
+            instance = new NotePoller(
+                    NoteAPI.provide(context),
+                    Executors.newScheduledThreadPool(POOL_SIZE),
+                    PollSchedule.Config.defaults(),
+                    System::currentTimeMillis,
+                    NotePushChannel.isEnabled(),
+                    NoteSyncEngine.provide(context)::applyRemoteAsync,
+                    // Not provided up front: the co-editor needs the poller to be made first.
+                    (title, stable, ops) -> NoteCoEditor.provide(context).onRemoteUpdate(title, stable, ops)
+            );
+        }
+        return instance;
+    }
+
+    /**
+     * Get the (shared) LiveData for a title. Polling starts when the first observer becomes
+     * active and stops when the last one goes away.
+     *
+     * @param title the title of the note
+     * @return a LiveData that receives the server's copy of the note every poll.
+     */
+    @AnyThread
+    public LiveData<Note> watch(String title) {
+        return notes.computeIfAbsent(title, PolledNote::new);
+    }
+
+    /** How many titles are being polled right now. */
+    @AnyThread
+    public int activeCount() {
+        return schedules.size();
+    }
+
+    /**
+     * Go back to polling a title at full speed, e.g. because it was just edited locally and
+     * someone is probably about to edit it again.
+     */
+    @AnyThread
+    public void reset(String title) {
+        var schedule = schedules.get(title);
+        if (schedule == null) return;
+        synchronized (schedule) {
+            schedule.reset(clock.getAsLong());
+        }
+    }
+
+    /**
+     * Forget what the last pull of a title brought, e.g. because the note was deleted here, so
+     * the next pull fetches it in full rather than being told it hasn't changed.
+     */
+    @AnyThread
+    public void forget(String title) {
+        api.forget(title);
+    }
+
+    /**
+     * Send a co-editing update for a watched note over the push channel.
+     *
+     * @return whether it was sent. It can't be if push is disabled or not connected right now.
+     */
+    @AnyThread
+    public boolean sendUpdate(String title, byte[] ops) {
+        return push != null && push.sendUpdate(title, ops);
+    }
+
+    /** How many notes were requested in the most recent tick. */
+    @AnyThread
+    public int lastBatchSize() {
+        return lastBatchSize;
+    }
+
+    private synchronized void startWatching(String title) {
+        // A new schedule is due right away, so the next tick picks it up.
+        schedules.put(title, new PollSchedule(config, random, clock.getAsLong()));
+        if (push != null) push.subscribe(title);
+
+        // Tick as often as the fastest any note can be polled.
+        if (ticker == null) {
+            ticker = scheduler.scheduleWithFixedDelay(this::tick, 0, config.floorMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private synchronized void stopWatching(String title) {
+        schedules.remove(title);
+        if (push != null) push.unsubscribe(title);
+
+        if (schedules.isEmpty() && ticker != null) {
+            ticker.cancel(false);
+            ticker = null;
+        }
+    }
+
+    @WorkerThread
+    private void tick() {
+        // An exception would cancel the ticker for good, without a word.
+        try {
+            pollDue();
+        } catch (RuntimeException e) {
+            Log.w("Poll", "Poll failed, trying again next tick", e);
+        }
+    }
+
+    @WorkerThread
+    private void pollDue() {
+        // The server is already telling us about every change, no need to ask.
+        if (push != null && push.isConnected()) {
+            lastBatchSize = 0;
+            return;
+        }
+
+        var now = clock.getAsLong();
+        var due = new ArrayList<String>();
+        for (var entry : schedules.entrySet()) {
+            var schedule = entry.getValue();
+            synchronized (schedule) {
+                if (schedule.isDue(now)) due.add(entry.getKey());
+            }
+        }
+
+        lastBatchSize = due.size();
+        if (due.isEmpty()) return;
+
+        var results = api.pullFromRemote(due);
+
+        onPulled.accept(List.copyOf(results.values()));
+
+        now = clock.getAsLong();
+        for (var title : due) {
+            var note = results.get(title);
+            if (note != null) {
+                var liveData = notes.get(title);
+                if (liveData != null) liveData.postValue(note);
+            }
+
+            var schedule = schedules.get(title);
+            if (schedule == null) continue; // Stopped watching while we were pulling.
+            synchronized (schedule) {
+                if (note != null) schedule.onChanged(now);
+                else schedule.onUnchanged(now);
+            }
+        }
+    }
+
+    private void onPushed(Note note) {
+        onPulled.accept(List.of(note));
+
+        var liveData = notes.get(note.title);
+        if (liveData != null) liveData.postValue(note);
+
+        // Keep the schedule warm, so that if the channel drops we poll this note quickly.
+        var schedule = schedules.get(note.title);
+        if (schedule == null) return;
+        synchronized (schedule) {
+            schedule.onChanged(clock.getAsLong());
+        }
+    }
+
+    private class PolledNote extends MutableLiveData<Note> {
+        private final String title;
+
+        PolledNote(String title) {
+            this.title = title;
+        }
+
+        @Override
+        @MainThread
+        protected void onActive() {
+            // Forgotten when its observers went away, but someone held on to it.
+            notes.putIfAbsent(title, this);
+            startWatching(title);
+        }
+
+        @Override
+        @MainThread
+        protected void onInactive() {
+            stopWatching(title);
+            // Observers that are only paused will be back, the LiveData has to stay shared.
+            if (!hasObservers()) notes.remove(title, this);
+        }
+    }
+}
@@ -0,0 +1,235 @@
+package edu.ucsd.cse110.sharednotes.model;
+
+import android.util.Log;
+
+import androidx.annotation.AnyThread;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+
+import com.google.gson.JsonObject;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import okhttp3.Response;
+import okhttp3.WebSocket;
+import okhttp3.WebSocketListener;
+import okio.ByteString;
+
+import edu.ucsd.cse110.sharednotes.BuildConfig;
+
+/**
+ * A single persistent WebSocket that the server pushes note updates down, as they happen.
+ * <p>
+ * We tell the server which titles we care about with {"subscribe": title} and
+ * {"unsubscribe": title} messages, and it sends us the full note JSON whenever one of them
+ * changes. All subscriptions share the one socket.
+ * <p>
+ * The same socket also carries co-editing updates (see {@link NoteCoEditor}) as binary messages:
+ * the title (as by {@link DataOutputStream#writeUTF(String)}), a long, then the encoded
+ * {@link RgaText} ops. Coming from the server, the long is the counter up to which every
+ * subscriber has seen every op, so tombstones up to there can be compacted. We send 0.
+ * <p>
+ * The socket can drop at any time. While it's down, {@link #isConnected()} is false and the
+ * {@link NotePoller} goes back to polling. We keep trying to reconnect with exponential backoff,
+ * and resubscribe to everything when we get back.
+ */
+public class NotePushChannel {
+    // Push is opt-in until the server side is deployed everywhere: build with
+    // -PpushEnabled=true to turn it on.
+    private static volatile boolean enabled = BuildConfig.PUSH_ENABLED;
+
+    private static final long MIN_RECONNECT_MS = 1000;
+    private static final long MAX_RECONNECT_MS = 60_000;
+
+    private final NoteAPI api;
+    private final ScheduledExecutorService scheduler;
+    private final Consumer<Note> onNote;
+    @Nullable
+    private final UpdateListener onUpdate;
+    private final Set<String> subscriptions = ConcurrentHashMap.newKeySet();
+
+    private WebSocket socket; // guarded by this
+    private long reconnectDelayMs = MIN_RECONNECT_MS; // guarded by this
+    private volatile boolean connected = false;
+
+    /** Receives co-editing updates. Called on the socket's thread. */
+    public interface UpdateListener {
+        void onUpdate(String title, long stable, byte[] ops);
+    }
+
+    public NotePushChannel(
+            NoteAPI api,
+            ScheduledExecutorService scheduler,
+            Consumer<Note> onNote,
+            @Nullable UpdateListener onUpdate
+    ) {
+        this.api = api;
+        this.scheduler = scheduler;
+        this.onNote = onNote;
+        this.onUpdate = onUpdate;
+    }
+
+    /** Whether to use push at all. If not, notes are only ever polled, and there's no co-editing. */
+    @AnyThread
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Turn push on or off, e.g. to try it against a test server. The poller only looks once, when
+     * it's made, so this has to happen before that.
+     */
+    @VisibleForTesting
+    public static void setEnabled(boolean enabled) {
+        NotePushChannel.enabled = enabled;
+    }
+
+    /** Whether updates are flowing right now. If not, the caller should poll instead. */
+    @AnyThread
+    public boolean isConnected() {
+        return connected;
+    }
+
+    @AnyThread
+    public synchronized void subscribe(String title) {
+        subscriptions.add(title);
+        if (connected) {
+            socket.send(message("subscribe", title));
+        } else {
+            // Either we're not connected, or we will be soon and subscribe to everything then.
+            connect();
+        }
+    }
+
+    @AnyThread
+    public synchronized void unsubscribe(String title) {
+        subscriptions.remove(title);
+        if (socket == null) return;
+
+        if (subscriptions.isEmpty()) {
+            // Nobody is listening, don't hold a socket open for nothing.
+            socket.close(1000, "No subscriptions");
+            socket = null;
+            connected = false;
+        } else if (connected) {
+            socket.send(message("unsubscribe", title));
+        }
+    }
+
+    /**
+     * Send a co-editing update for a note we're subscribed to.
+     *
+     * @return whether it was sent. If we're not connected, it's up to the caller to try again.
+     */
+    @AnyThread
+    public synchronized boolean sendUpdate(String title, byte[] ops) {
+        if (!connected) return false;
+        return socket.send(encodeUpdate(title, 0, ops));
+    }
+
+    /** A co-editing update as it goes over the socket, in the format described up top. */
+    @VisibleForTesting
+    static ByteString encodeUpdate(String title, long stable, byte[] ops) {
+        var frame = new ByteArrayOutputStream(ops.length + title.length() + 16);
+        try (var out = new DataOutputStream(frame)) {
+            out.writeUTF(title);
+            out.writeLong(stable);
+            out.write(ops);
+        } catch (IOException e) {
+            throw new AssertionError(e); // Can't happen writing to memory.
+        }
+        return ByteString.of(frame.toByteArray());
+    }
+
+    private synchronized void connect() {
+        if (socket != null || subscriptions.isEmpty()) return;
+        socket = api.openPushChannel(new Listener());
+    }
+
+    private synchronized void scheduleReconnect() {
+        if (subscriptions.isEmpty()) return;
+
+        var delay = reconnectDelayMs;
+        reconnectDelayMs = Math.min(MAX_RECONNECT_MS, reconnectDelayMs * 2);
+        scheduler.schedule(this::connect, delay, TimeUnit.MILLISECONDS);
+    }
+
+    private static String message(String type, String title) {
+        var json = new JsonObject();
+        json.addProperty(type, title);
+        return json.toString();
+    }
+
+    private class Listener extends WebSocketListener {
+        @Override
+        public void onOpen(@NonNull WebSocket webSocket, @NonNull Response response) {
+            synchronized (NotePushChannel.this) {
+                if (webSocket != socket) return; // We gave up on this one already.
+                reconnectDelayMs = MIN_RECONNECT_MS;
+                for (var title : subscriptions) {
+                    webSocket.send(message("subscribe", title));
+                }
+                connected = true;
+            }
+        }
+
+        @Override
+        public void onMessage(@NonNull WebSocket webSocket, @NonNull String text) {
+            try {
+                var note = Note.fromJSON(text);
+                if (note != null && subscriptions.contains(note.title)) onNote.accept(note);
+            } catch (Exception e) {
+                Log.w("Push", "Ignoring malformed message", e);
+            }
+        }
+
+        @Override
+        public void onMessage(@NonNull WebSocket webSocket, @NonNull ByteString bytes) {
+            if (onUpdate == null) return;
+            var frame = bytes.toByteArray();
+            try (var in = new DataInputStream(new ByteArrayInputStream(frame))) {
+                var title = in.readUTF();
+                var stable = in.readLong();
+                if (!subscriptions.contains(title)) return;
+
+                // Whatever is left is the ops.
+                var ops = Arrays.copyOfRange(frame, frame.length - in.available(), frame.length);
+                onUpdate.onUpdate(title, stable, ops);
+            } catch (Exception e) {
+                Log.w("Push", "Ignoring malformed update", e);
+            }
+        }
+
+        @Override
+        public void onClosed(@NonNull WebSocket webSocket, int code, @NonNull String reason) {
+            dropped(webSocket, null);
+        }
+
+        @Override
+        public void onFailure(@NonNull WebSocket webSocket, @NonNull Throwable t, @Nullable Response response) {
+            dropped(webSocket, t);
+        }
+
+        private void dropped(WebSocket webSocket, Throwable t) {
+            synchronized (NotePushChannel.this) {
+                if (webSocket != socket) return; // We closed this one ourselves.
+                socket = null;
+                connected = false;
+
+                Log.w("Push", "Channel dropped, falling back to polling", t);
+                scheduleReconnect();
+            }
+        }
+    }
+}
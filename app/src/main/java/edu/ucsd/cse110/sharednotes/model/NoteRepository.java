@@ -1,40 +1,116 @@
 package edu.ucsd.cse110.sharednotes.model;
 
-import android.util.Log;
-
+import android.app.ActivityManager;
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+
+import androidx.annotation.AnyThread;
+import androidx.annotation.NonNull;
+import androidx.annotation.VisibleForTesting;
+import androidx.annotation.WorkerThread;
 import androidx.lifecycle.LiveData;
 import androidx.lifecycle.MediatorLiveData;
 import androidx.lifecycle.MutableLiveData;
-import androidx.lifecycle.Observer;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
-import java.util.concurrent.ScheduledFuture;
-import java.util.concurrent.TimeUnit;
-import java.time.Instant;
-import java.util.List;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.ScheduledFuture;
+import androidx.paging.PagingSource;
+import androidx.room.InvalidationTracker;
 
-import com.google.gson.Gson;
-
-import org.json.JSONObject;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
+
+/**
+ * Where the app gets its notes from. There's one repository per process, shared by every screen.
+ * <p>
+ * The repository keeps each note's LiveData in a {@link NoteCache}, bounded by the size of the
+ * notes in it, so everyone asking for the same note shares one database query, and a note that
+ * was open a moment ago shows up again without waiting for one. A cached note that nobody is
+ * observing doesn't follow the database, so it's dropped as soon as the note changes underneath
+ * it: notes updated from the server by title, and anything else (the outbox, migrations, other
+ * writers) once Room's invalidation tracker says the notes changed and the note's version turns
+ * out to have moved on. Notes that haven't changed stay cached.
+ */
+public class NoteRepository {
+    /** The cache gets this fraction of the app's heap, or half that on low-RAM devices. */
+    private static final int CACHE_HEAP_FRACTION = 32;
+    private static final int LOW_RAM_CACHE_HEAP_FRACTION = 64;
+    /** Roughly what a cached note costs besides its text: the LiveData, its query, and so on. */
+    private static final long ENTRY_BYTES = 512;
 
-import okhttp3.MediaType;
-import okhttp3.OkHttpClient;
-import okhttp3.Request;
-import okhttp3.RequestBody;
-import okhttp3.Response;
+    private volatile static NoteRepository instance = null;
 
-public class NoteRepository {
     private final NoteDao dao;
-    private ScheduledFuture<?> poller; // what could this be for... hmm?
+    private final NotePoller poller;
+    private final NoteOutbox outbox;
+    private final Supplier<String> device;
+    private final NoteSyncEngine sync;
+    private final NoteCache<CachedNote> cache;
+    private final Handler main = new Handler(Looper.getMainLooper());
 
-    public NoteRepository(NoteDao dao) {
+    /**
+     * @param device this device's id, see {@link DeviceId}. Only asked for on the write thread.
+     * @param cacheBytes roughly how much memory cached notes may take up.
+     */
+    @VisibleForTesting
+    public NoteRepository(
+            NoteDao dao,
+            NotePoller poller,
+            NoteOutbox outbox,
+            Supplier<String> device,
+            NoteSyncEngine sync,
+            long cacheBytes
+    ) {
         this.dao = dao;
+        this.poller = poller;
+        this.outbox = outbox;
+        this.device = device;
+        this.sync = sync;
+        this.cache = new NoteCache<>(cacheBytes, NoteRepository::weigh);
     }
 
-    // Synced Methodsgi
+    public synchronized static NoteRepository provide(Context context) {
+        if (instance == null) {
+            var app = context.getApplicationContext();
+            var db = NoteDatabase.provide(app);
+            var sync = NoteSyncEngine.provide(app);
+            var repo = new NoteRepository(
+                    db.getDao(),
+                    NotePoller.provide(app),
+                    NoteOutbox.provide(app),
+                    () -> DeviceId.provide(app),
+                    sync,
+                    cacheBytes(app)
+            );
+
+            // Remote notes we hear about right away, by title.
+            sync.addListener(notes -> {
+                for (var note : notes) repo.invalidateCached(note.title);
+            });
+            // Anything else only tells us that some note changed. Adding the observer sets up
+            // triggers in the database, so not on this thread.
+            NoteDatabase.writes().execute(() ->
+                    db.getInvalidationTracker().addObserver(new InvalidationTracker.Observer("notes") {
+                        @Override
+                        public void onInvalidated(@NonNull Set<String> tables) {
+                            repo.invalidateChanged();
+                        }
+                    }));
+            instance = repo;
+        }
+        return instance;
+    }
+
+    private static long cacheBytes(Context context) {
+        var activities = context.getSystemService(ActivityManager.class);
+        // The memory class is how big the app's heap may get, in MB.
+        var heap = activities.getMemoryClass() * 1024L * 1024L;
+        var fraction = activities.isLowRamDevice() ? LOW_RAM_CACHE_HEAP_FRACTION : CACHE_HEAP_FRACTION;
+        return heap / fraction;
+    }
+
+    // Synced Methods
     // ==============
 
     /**
@@ -51,43 +127,147 @@ public class NoteRepository {
     public LiveData<Note> getSynced(String title) {
         var note = new MediatorLiveData<Note>();
 
-        Observer<Note> updateFromRemote = theirNote -> {
-            var ourNote = note.getValue();
-            if (theirNote == null) return; // do nothing
-            if (ourNote == null || ourNote.version < theirNote.version) {
-                upsertLocal(theirNote, false);
-            }
-        };
-
         // If we get a local update, pass it on.
         note.addSource(getLocal(title), note::postValue);
-        // If we get a remote update, update the local version (triggering the above observer)
-        note.addSource(getRemote(title), updateFromRemote);
+        // Remote updates are written straight into the database as they're pulled, if they're
+        // newer (see NoteSyncEngine), which then triggers the above. So all we need to do here is
+        // keep the poller watching this note for as long as we're being watched.
+        note.addSource(getRemote(title), theirNote -> {});
 
         return note;
     }
 
     public void upsertSynced(Note note) {
-        upsertLocal(note);
-        upsertRemote(note);
+        // The caller may keep changing their note, so write a copy of it as it is now.
+        var copy = note.copy();
+        NoteDatabase.writes().execute(() -> {
+            dao.save(copy, device.get());
+            // Only now do we know which version the save ended up as.
+            upsertRemote(copy);
+        });
+        // Whoever just saved this note is likely to keep editing it, and so are their peers.
+        poller.reset(note.title);
+    }
+
+    /**
+     * Get the version of a note that was edited on another device at the same time as ours, if
+     * there is one. Until the user picks what to keep, this holds a {@link NoteConflict}.
+     *
+     * @param title the title of the note
+     * @return a LiveData object holding the conflicting version, or null if there's no conflict.
+     */
+    public LiveData<NoteConflict> getConflict(String title) {
+        var conflict = new MediatorLiveData<NoteConflict>();
+        var emitted = new int[]{0};
+        conflict.addSource(dao.getConflict(title), row -> {
+            var emission = ++emitted[0];
+            if (row == null || row.chunks == 0) {
+                conflict.setValue(row);
+                return;
+            }
+            // A long conflict only comes with the start of its content, see CachedNote.
+            NoteDatabase.reads().execute(() -> {
+                var whole = dao.findConflict(title);
+                main.post(() -> {
+                    if (emission == emitted[0]) conflict.setValue(whole);
+                });
+            });
+        });
+        return conflict;
+    }
+
+    /**
+     * Settle a conflict by saving {@code content} (which may be ours, theirs, or some mix of the
+     * two) as a new edit that supersedes both, and uploading it.
+     */
+    public void resolveConflict(String title, String content) {
+        NoteDatabase.writes().execute(() -> {
+            var resolved = dao.resolveConflict(title, content, device.get());
+            if (resolved != null) upsertRemote(resolved);
+        });
+        poller.reset(title);
+    }
+
+    /**
+     * Bring every local note up to date with the server, not just the ones being watched, in the
+     * background. Cheap when nothing changed, so it's fine to call whenever the app comes back.
+     */
+    public void syncAll() {
+        sync.syncChangesAsync();
     }
 
     // Local Methods
     // =============
 
+    /**
+     * @param title the title of the note
+     * @return a LiveData object that will be updated when this note changes. Everyone asking for
+     *         the same note while it's cached gets the same one.
+     */
     public LiveData<Note> getLocal(String title) {
-        return dao.get(title);
+        return cache.get(title, CachedNote::new);
     }
 
     public LiveData<List<Note>> getAllLocal() {
-        return dao.getAll();
+        var notes = new MediatorLiveData<List<Note>>();
+        var emitted = new int[]{0};
+        notes.addSource(dao.getAll(), rows -> {
+            var emission = ++emitted[0];
+            if (rows.stream().noneMatch(row -> row.chunks > 0)) {
+                notes.setValue(rows);
+                return;
+            }
+            // Long notes only come with the start of their content, see CachedNote.
+            NoteDatabase.reads().execute(() -> {
+                var whole = new ArrayList<Note>(rows.size());
+                for (var row : rows) {
+                    var note = row.chunks == 0 ? row : dao.find(row.title);
+                    if (note != null) whole.add(note);
+                }
+                main.post(() -> {
+                    if (emission == emitted[0]) notes.setValue(whole);
+                });
+            });
+        });
+        return notes;
     }
 
+    public PagingSource<Integer, NoteSummary> getSummariesLocal() {
+        return dao.getSummaries();
+    }
+
+    /**
+     * Search the local notes for everything the user typed. Each word matches as a prefix, so
+     * results show up while a word is still being typed. Notes must match every word.
+     */
+    public PagingSource<Integer, NoteSummary> searchLocal(String text) {
+        // Quote every word, so nothing the user types is taken as FTS syntax (which could
+        // make the query malformed).
+        var query = new StringBuilder();
+        for (var word : text.replace("\"", " ").trim().split("\\s+")) {
+            if (word.isEmpty()) continue;
+            if (query.length() > 0) query.append(' ');
+            query.append('"').append(word).append("*\"");
+        }
+        return dao.search(query.toString());
+    }
+
+    /**
+     * Write a note to the database.
+     *
+     * @param note the note
+     * @param incrementVersion whether this is a local edit (which always wins and gets a new
+     *                         version), rather than a copy of the note from somewhere else (which
+     *                         is only written if it's newer than ours).
+     */
     public void upsertLocal(Note note, boolean incrementVersion) {
-        // We don't want to increment when we sync from the server, just when we save.
-        if (incrementVersion) note.version = note.version + 1;
-        note.version = note.version + 1;
-        dao.upsert(note);
+        // The caller may keep changing their note, so write a copy of it as it is now.
+        var copy = note.copy();
+        NoteDatabase.writes().execute(() -> {
+            // We don't want to increment when we sync from the server, just when we save.
+            if (incrementVersion) dao.save(copy, device.get());
+            else dao.applyRemote(copy);
+        });
     }
 
     public void upsertLocal(Note note) {
@@ -95,97 +275,140 @@ public class NoteRepository {
     }
 
     public void deleteLocal(Note note) {
-        dao.delete(note);
+        deleteLocal(note.title);
     }
 
-    public boolean existsLocal(String title) {
-        return dao.exists(title);
+    public void deleteLocal(String title) {
+        NoteDatabase.writes().execute(() -> dao.delete(title));
+        // A note made again under this title should get the server's copy, not a 304.
+        poller.forget(title);
     }
 
-    // Remote Methods
-    // ==============
+    public Future<Boolean> existsLocal(String title) {
+        return NoteDatabase.reads().submit(() -> dao.exists(title));
+    }
 
-    public LiveData<Note> getRemote(String title) {
-        // TODO: Implement getRemote!
-        // TODO: Set up polling background thread (MutableLiveData?)
-        // TODO: Refer to TimerService from https://github.com/DylanLukes/CSE-110-WI23-Demo5-V2.
+    /**
+     * Get a note, creating an empty one first if there's no note with that title.
+     *
+     * @param title the title of the note
+     * @return a LiveData object that will be updated when this note changes. Until the note is
+     *         created, it may hold null.
+     */
+    public LiveData<Note> getOrCreateLocal(String title) {
+        NoteDatabase.writes().execute(() -> dao.insertIfAbsent(new Note(title, "")));
+        return getLocal(title);
+    }
 
-        // Cancel any previous poller if it exists.
-        if (this.poller != null && !this.poller.isCancelled()) {
-            poller.cancel(true);
-        }
+    // History
+    // =======
 
-        // Set up a background thread that will poll the server every 3 seconds.
+    /**
+     * @param title the title of the note
+     * @return a LiveData object holding the note's history, newest first. See {@link NoteRevision}.
+     */
+    public LiveData<List<NoteRevision.Summary>> getHistoryLocal(String title) {
+        return dao.getHistory(title);
+    }
 
-        // You may (but don't have to) want to cache the LiveData's for each title, so that
-        // you don't create a new polling thread every time you call getRemote with the same title.
-        // You don't need to worry about killing background threads.
+    /**
+     * Get the note's content as it was at one of the versions in its history.
+     *
+     * @return a LiveData object that's set once the revision is loaded, to null if there's no
+     *         such revision.
+     */
+    public LiveData<String> getRevisionLocal(String title, long version) {
+        var content = new MutableLiveData<String>();
+        NoteDatabase.reads().execute(() -> content.postValue(dao.getRevisionContent(title, version)));
+        return content;
+    }
 
-        // TO TEST: make sure it updates a note from the server every 3 seconds
-        //do this first here, get remote data from server into some variable, then refresh every 3 sec, maybe make this a method in noteAPI
-        NoteAPI noteAPI = new NoteAPI();
-        var executor = Executors.newSingleThreadScheduledExecutor();
+    // Cache
+    // =====
 
-        MutableLiveData<Note> fromRemote = new MutableLiveData<>();
-        //var future =
-        executor.submit(() -> fromRemote.setValue(noteAPI.pullFromRemote(title).getValue()));
-            //copied this from lab 4 threading i guess
-            //here it says you need to not be on main thread
+    /** How well the note cache is doing (hit rate, evictions, memory used), for tuning its size. */
+    @AnyThread
+    public NoteCache.Stats getCacheStats() {
+        return cache.stats();
+    }
 
-        //unsure how to do the scheduledexecutorservice thread that polls every 3 seconds
-        final MediatorLiveData<Note> ans = new MediatorLiveData<>();
-        ans.addSource(fromRemote, ans::postValue);//not sure what to do here to add data source
+    /** A note's LiveData, as cached. Stays up to date for as long as anyone observes it. */
+    private class CachedNote extends MediatorLiveData<Note> {
+        private final String title;
+        // Counts what Room sent us, so a slow load that has since been overtaken is dropped.
+        private int emitted = 0;
+
+        CachedNote(String title) {
+            this.title = title;
+            addSource(dao.get(title), note -> {
+                var emission = ++emitted;
+                if (note == null || note.chunks == 0) {
+                    show(note);
+                    return;
+                }
+
+                // A long note only comes with the start of its content (see NoteChunk). Putting
+                // the rest back together takes another read, and decompressing, so not here.
+                NoteDatabase.reads().execute(() -> {
+                    var whole = dao.find(title);
+                    main.post(() -> {
+                        if (emission == emitted) show(whole);
+                    });
+                });
+            });
+        }
 
-        ScheduledFuture<?> clockFuture = executor.scheduleAtFixedRate(() -> {//sus
-            fromRemote.postValue(noteAPI.pullFromRemote(title).getValue());//this should set the liveData for the answer ans??, maybe need to swap variables
-//says cannot invoke setValue on a background thread
-        }, 0, 3000, TimeUnit.MILLISECONDS);
+        private void show(Note note) {
+            setValue(note);
+            cache.reweigh(title);
+        }
+    }
 
-        return ans;
-        //throw new NotImplementedError();
+    private static long weigh(CachedNote cached) {
+        var note = cached.getValue();
+        if (note == null) return ENTRY_BYTES;
+        // Two bytes a char, at worst.
+        return ENTRY_BYTES + 2L * (note.title.length() + note.content.length());
     }
 
-    public void upsertRemote(Note note) {
+    // Notes being observed are kept up to date by Room, and kept.
+    private void invalidateCached(String title) {
+        cache.invalidate(title, cached -> !cached.hasActiveObservers());
+    }
 
-        // TODO: Implement upsertRemote!
+    /** Drop the cached notes that nobody observes and that aren't the version stored any more. */
+    @WorkerThread
+    private void invalidateChanged() {
+        var titles = cache.titles();
+        if (titles.isEmpty()) return;
+        var versions = dao.getVersions(titles);
+        cache.invalidateIf(cached -> {
+            if (cached.hasActiveObservers()) return false;
+            var note = cached.getValue();
+            var version = versions.get(cached.title);
+            return note == null ? version != null : version == null || version != note.version;
+        });
+    }
 
-        final MediaType JSON = MediaType.parse("application/json; charset=utf-8");
-        OkHttpClient client = new OkHttpClient();
+    // Remote Methods
+    // ==============
 
-        //mess with this until I can create API object
+    /**
+     * Watch the server's copy of a note. The returned LiveData is shared with every other caller
+     * watching the same title, and the server is only polled while someone is observing it.
+     *
+     * @param title the title of the note
+     * @return a LiveData object that will be updated with the remote note every poll.
+     */
+    public LiveData<Note> getRemote(String title) {
+        return poller.watch(title);
+    }
 
-        //TO CREATE JSON OBJECT: do the following
-        String url = "https://sharednotes.goto.ucsd.edu/notes/"; //then also add title to the end?
-        url = url + note.title;
-        JSONObject jsonObject = new JSONObject();
-        //Inserting key-value pairs into the json object
-        try {
-            jsonObject.put("title", note.title);
-            jsonObject.put("content", note.content);
-            jsonObject.put("version", Long.toString(note.version)); //unsure if u need to change this;
-        } catch(Exception e){
-            throw new RuntimeException(e);
-        }
-        String json = jsonObject.toString(); //no idea how to read this as string, or if we need to do this as string
-
-        RequestBody body = RequestBody.create(json, JSON);
-        Request request = new Request.Builder()
-                .url(url)
-                .put(body)
-                .build();
-
-
-        ExecutorService executor = Executors.newSingleThreadExecutor();//run this thing on different thread
-        //Future future;
-        //future =
-        executor.submit(() -> {
-            try{ //this makes the httpclient execute the request?
-                Response r = client.newCall(request).execute();
-                Log.i("UPSERT", request.toString());
-                Log.i("UPSERT_BODY", body.toString());
-            } catch(Exception e){
-                throw new RuntimeException(e);
-            }
-        });
+    /**
+     * Upload a note to the server. This doesn't happen right away: the note is queued in the
+     * outbox, which uploads it in the background and keeps retrying until it gets through.
+     */
+    public void upsertRemote(Note note) {
+        outbox.enqueue(note);
     }
 }
@@ -0,0 +1,124 @@
+package edu.ucsd.cse110.sharednotes.model;
+
+import androidx.annotation.NonNull;
+import androidx.room.ColumnInfo;
+import androidx.room.Entity;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One version of a note, as it was saved, for the note's history.
+ * <p>
+ * Storing every version in full would take up far too much room, since most saves only change a
+ * little. So most revisions are just a {@link NoteDelta} from the revision before, and only every
+ * so often is one a keyframe, with the whole content. Getting any revision back means starting
+ * from the keyframe before it and applying the deltas in between, and as there are never more
+ * than {@link #KEYFRAME_EVERY} of those, that takes about as long for a note's thousandth
+ * revision as for its second.
+ * <p>
+ * {@link NoteDao} records a revision whenever a note gets a new version, and keeps the history
+ * from growing forever (see {@link #MAX_REVISIONS} and {@link #MAX_AGE_MS}).
+ */
+@Entity(tableName = "note_revisions", primaryKeys = {"title", "version"})
+public class NoteRevision {
+    /** The most revisions between one keyframe and the next. */
+    public static final int KEYFRAME_EVERY = 32;
+
+    /** Notes longer than this don't keep a history: every keyframe would be a huge row. */
+    public static final int MAX_CONTENT = 512 * 1024;
+
+    /** How many revisions of a note are kept. */
+    public static final int MAX_REVISIONS = 2000;
+
+    /** How long revisions are kept for. The latest revision is always kept. */
+    public static final long MAX_AGE_MS = TimeUnit.DAYS.toMillis(90);
+
+    @NonNull
+    public String title;
+
+    public long version;
+
+    /** Whether {@link #insert} is the whole content, rather than a delta's insert. */
+    public boolean keyframe;
+
+    /** How many revisions since the last keyframe (0 for a keyframe). */
+    public int depth;
+
+    // The delta from the revision before, see NoteDelta. A keyframe inserts everything at 0.
+    public int start;
+
+    @ColumnInfo(name = "delete_count")
+    public int deleteCount;
+
+    @ColumnInfo(name = "inserted")
+    @NonNull
+    public String insert;
+
+    /** How long the content is, at this revision. */
+    public int length;
+
+    /** When this revision was saved, in ms since the epoch. */
+    @ColumnInfo(name = "saved_at")
+    public long savedAt;
+
+    public NoteRevision(@NonNull String title, long version, boolean keyframe, int depth, int start,
+                        int deleteCount, @NonNull String insert, int length, long savedAt) {
+        this.title = title;
+        this.version = version;
+        this.keyframe = keyframe;
+        this.depth = depth;
+        this.start = start;
+        this.deleteCount = deleteCount;
+        this.insert = insert;
+        this.length = length;
+        this.savedAt = savedAt;
+    }
+
+    public static NoteRevision keyframe(String title, long version, String content, long savedAt) {
+        return new NoteRevision(title, version, true, 0, 0, 0, content, content.length(), savedAt);
+    }
+
+    public static NoteRevision delta(String title, long version, int depth, NoteDelta delta, int length, long savedAt) {
+        return new NoteRevision(title, version, false, depth, delta.start, delta.deleteCount, delta.insert, length, savedAt);
+    }
+
+    /**
+     * Put a revision's content back together.
+     *
+     * @param chain a keyframe, then every revision after it in order, up to the one wanted.
+     */
+    public static String rebuild(List<NoteRevision> chain) {
+        if (chain.isEmpty() || !chain.get(0).keyframe) {
+            throw new IllegalArgumentException("A revision chain starts with a keyframe");
+        }
+
+        var content = new StringBuilder(chain.get(0).insert);
+        for (int i = 1; i < chain.size(); i++) {
+            var revision = chain.get(i);
+            if (revision.keyframe) {
+                content.setLength(0);
+                content.append(revision.insert);
+                continue;
+            }
+            content.replace(revision.start, revision.start + revision.deleteCount, revision.insert);
+        }
+        return content.toString();
+    }
+
+    /** Just enough of a revision to list it in the note's history. */
+    public static class Summary {
+        public final long version;
+
+        public final int length;
+
+        @ColumnInfo(name = "saved_at")
+        public final long savedAt;
+
+        public Summary(long version, int length, long savedAt) {
+            this.version = version;
+            this.length = length;
+            this.savedAt = savedAt;
+        }
+    }
+}
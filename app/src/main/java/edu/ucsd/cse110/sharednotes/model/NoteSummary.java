@@ -0,0 +1,39 @@
+package edu.ucsd.cse110.sharednotes.model;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Just enough of a {@link Note} to show it in the list: its title, its version, and the start of
+ * its content. The preview is cut down in SQL, so the full content of a long note never leaves
+ * the database just to be ellipsized to one line.
+ * <p>
+ * For search results, the preview is instead a snippet of the content around the match, with
+ * the matched terms wrapped in {@link #MATCH_START} and {@link #MATCH_END}.
+ */
+public class NoteSummary {
+    /** How many characters of content the preview keeps. Plenty for one line on any screen. */
+    public static final int PREVIEW_LENGTH = 120;
+
+    /** How many words of context a search snippet keeps. */
+    public static final int SNIPPET_WORDS = 16;
+
+    /** Marks where a matched term starts in a search snippet. Can't appear in typed text. */
+    public static final String MATCH_START = "\u0002";
+
+    /** Marks where a matched term ends in a search snippet. Can't appear in typed text. */
+    public static final String MATCH_END = "\u0003";
+
+    @NonNull
+    public final String title;
+
+    public final long version;
+
+    @NonNull
+    public final String preview;
+
+    public NoteSummary(@NonNull String title, long version, @NonNull String preview) {
+        this.title = title;
+        this.version = version;
+        this.preview = preview;
+    }
+}
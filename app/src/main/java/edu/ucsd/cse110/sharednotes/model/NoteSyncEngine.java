@@ -0,0 +1,232 @@
+package edu.ucsd.cse110.sharednotes.model;
+
+import android.content.Context;
+import android.util.Log;
+
+import androidx.annotation.AnyThread;
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+import androidx.annotation.WorkerThread;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Writes notes that came from the server into the local database.
+ * <p>
+ * Remote notes arrive in batches (one per poll tick, or one per push). Each batch is written in a
+ * single transaction: one commit, and one invalidation for everything observing the notes table,
+ * rather than one of each per note. Only notes newer than what we have locally are written, and
+ * that check is made inside the write's transaction (see {@link NoteDao#applyRemote(Note)}), so a
+ * stale note can never overwrite a newer one, whichever order they arrive in. Notes edited here
+ * and elsewhere at the same time are merged line by line (see {@link TextMerge}), against the last
+ * version the server and we both had, and the merged note is uploaded. Only if both sides changed
+ * the same lines is the other version kept aside as a conflict for the user to settle.
+ * <p>
+ * Besides the notes the poller pulls (only the ones being watched), the engine can catch up on
+ * every note at once from the server's changes feed (see {@link #syncChanges()}). That keeps notes
+ * nobody has opened up to date too, without polling each of them.
+ */
+public class NoteSyncEngine {
+    /** Keep each transaction short, so local saves never wait long behind a big batch. */
+    private static final int MAX_BATCH = 500;
+    /** Which feed our cursor is for, see {@link SyncCursor}. */
+    private static final String FEED = "notes";
+    /** Stop asking for more pages after this many, the rest can wait for the next sync. */
+    private static final int MAX_PAGES = 100;
+
+    private volatile static NoteSyncEngine instance = null;
+
+    private final NoteDatabase db;
+    private final NoteOutbox outbox;
+    private final Supplier<String> device;
+    private final NoteAPI api;
+
+    // Syncs do blocking network requests, so they get a thread of their own. Only one runs at a
+    // time, and asking for another while one is running does nothing.
+    private final ExecutorService syncs = Executors.newSingleThreadExecutor();
+    private final AtomicBoolean syncing = new AtomicBoolean(false);
+
+    private final List<Consumer<List<Note>>> listeners = new CopyOnWriteArrayList<>();
+
+    @VisibleForTesting
+    public NoteSyncEngine(NoteDatabase db, NoteOutbox outbox, Supplier<String> device, NoteAPI api) {
+        this.db = db;
+        this.outbox = outbox;
+        this.device = device;
+        this.api = api;
+    }
+
+    public synchronized static NoteSyncEngine provide(Context context) {
+        if (instance == null) {
+            instance = new NoteSyncEngine(
+                    NoteDatabase.provide(context),
+                    NoteOutbox.provide(context),
+                    () -> DeviceId.provide(context),
+                    NoteAPI.provide(context)
+            );
+        }
+        return instance;
+    }
+
+    /**
+     * Be told about every batch of remote notes as soon as it's written, on the write thread.
+     * Observers of the database hear about it too, but only a little later.
+     */
+    @AnyThread
+    public void addListener(Consumer<List<Note>> listener) {
+        listeners.add(listener);
+    }
+
+    /** Apply a batch of notes pulled from the server, in the background. */
+    @AnyThread
+    public void applyRemoteAsync(List<Note> notes) {
+        if (notes.isEmpty()) return;
+        var batch = List.copyOf(notes);
+        NoteDatabase.writes().execute(() -> applyRemote(batch));
+    }
+
+    /**
+     * Apply a batch of notes pulled from the server.
+     *
+     * @return the notes that were actually written: newer ones as they are, and concurrent ones
+     *         merged with ours.
+     */
+    @WorkerThread
+    public List<Note> applyRemote(List<Note> notes) {
+        var dao = db.getDao();
+        var outboxDao = db.getOutboxDao();
+        var written = new ArrayList<Note>();
+        var merged = new ArrayList<Note>();
+
+        for (int start = 0; start < notes.size(); start += MAX_BATCH) {
+            var chunk = notes.subList(start, Math.min(notes.size(), start + MAX_BATCH));
+            db.runInTransaction(() -> {
+                for (var note : chunk) {
+                    switch (dao.applyRemote(note)) {
+                        case WRITTEN:
+                            written.add(note);
+                            break;
+                        case CONFLICT:
+                            var resolved = merge(note);
+                            if (resolved != null) merged.add(resolved);
+                            break;
+                    }
+                }
+
+                // Whatever the server sent us is what it has, newer than ours or not.
+                var bases = new ArrayList<NoteBase>(chunk.size());
+                for (var note : chunk) bases.add(NoteBase.of(note));
+                outboxDao.acknowledgeAll(bases);
+            });
+        }
+
+        // The server doesn't have the merged notes yet (nobody does).
+        for (var note : merged) outbox.enqueue(note);
+        written.addAll(merged);
+        if (!written.isEmpty()) {
+            for (var listener : listeners) listener.accept(written);
+        }
+        return written;
+    }
+
+    /**
+     * Try to settle a conflict with the server's note by merging it with ours. Must be called
+     * before the note is acknowledged, while the base is still the last version we had in common.
+     *
+     * @return the merged note, now saved, or null if it couldn't be merged.
+     */
+    @WorkerThread
+    @Nullable
+    private Note merge(Note theirs) {
+        var ours = db.getDao().find(theirs.title);
+        var base = db.getOutboxDao().getBase(theirs.title);
+        if (ours == null || base == null) return null;
+
+        // The base is only an ancestor of both if both have seen everything it has. If the
+        // server dropped our last upload for theirs, for example, it isn't.
+        if (!isAncestor(base.vector, ours.vector) || !isAncestor(base.vector, theirs.vector)) return null;
+
+        var content = TextMerge.merge(base.content, ours.content, theirs.content);
+        if (content == null) return null;
+        return db.getDao().resolveConflict(theirs.title, content, device.get());
+    }
+
+    /** Catch up on everything that changed on the server, in the background. */
+    @AnyThread
+    public void syncChangesAsync() {
+        if (!syncing.compareAndSet(false, true)) return;
+        syncs.execute(() -> {
+            try {
+                syncChanges();
+            } finally {
+                syncing.set(false);
+            }
+        });
+    }
+
+    /**
+     * Catch up on everything that changed on the server since the last time, from its changes
+     * feed. The notes are applied as they stream in, a batch at a time (like any other pulled
+     * notes, see {@link #applyRemote(List)}), and only once a whole page is applied do we move our
+     * cursor past it. So if we're cut off halfway, the next sync just asks for that page again.
+     *
+     * @return how many notes were written, or -1 if the server couldn't be asked.
+     */
+    @WorkerThread
+    public int syncChanges() {
+        var outboxDao = db.getOutboxDao();
+        var cursor = outboxDao.getCursor(FEED);
+        var count = 0;
+
+        for (int pages = 0; pages < MAX_PAGES; pages++) {
+            var written = new int[]{0};
+            var page = api.pullChanges(cursor, batch -> written[0] += applyOnWriteThread(batch));
+            count += written[0];
+            if (page == null) return pages == 0 ? -1 : count;
+
+            if (page.cursor != null && !page.cursor.equals(cursor)) {
+                cursor = page.cursor;
+                var next = new SyncCursor(FEED, cursor);
+                awaitWrite(() -> outboxDao.upsertCursor(next));
+            }
+            if (!page.more) break;
+        }
+
+        Log.i("Changes", "Synced, " + count + " notes written");
+        return count;
+    }
+
+    private int applyOnWriteThread(List<Note> batch) {
+        var written = new int[]{0};
+        awaitWrite(() -> written[0] = applyRemote(batch).size());
+        return written[0];
+    }
+
+    /**
+     * Run a write on the write thread, like every other write, and wait for it. Waiting holds the
+     * feed back while a batch is written, so we never read further ahead than one batch.
+     */
+    private static void awaitWrite(Runnable write) {
+        try {
+            NoteDatabase.writes().submit(write).get();
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static boolean isAncestor(VersionVector base, VersionVector of) {
+        var order = base.compare(of);
+        return order == VersionVector.Order.BEFORE || order == VersionVector.Order.EQUAL;
+    }
+}
@@ -0,0 +1,144 @@
+package edu.ucsd.cse110.sharednotes.model;
+
+import androidx.room.Dao;
+import androidx.room.Insert;
+import androidx.room.Query;
+import androidx.room.Transaction;
+import androidx.room.Upsert;
+
+import java.util.List;
+
+/**
+ * Data access object for keeping track of what the server has: the {@link OutboxEntry},
+ * {@link NoteBase} and {@link SyncCursor} classes.
+ * <p>
+ * Entries and bases of long notes are stored in {@link NoteChunk}s, just like the notes
+ * themselves (see {@link NoteDao}), so that none of their rows is too big to read back.
+ */
+@Dao
+public abstract class OutboxDao {
+    /** The entry queued for a note, with its whole content. */
+    @Transaction
+    public OutboxEntry get(String title) {
+        var entry = getRow(title);
+        if (entry != null && entry.chunks > 0) {
+            entry.content = NoteChunk.join(getChunks(NoteChunk.OUTBOX, title));
+            entry.chunks = 0;
+        }
+        return entry;
+    }
+
+    /**
+     * Queue a note for upload, replacing whatever was queued for the same title unless that
+     * was somehow newer.
+     */
+    @Transaction
+    public void enqueue(OutboxEntry entry) {
+        var queued = getRow(entry.title);
+        if (queued != null && queued.version > entry.version) return;
+
+        var chunks = NoteChunk.split(NoteChunk.OUTBOX, entry.title, entry.content);
+        replaceChunks(NoteChunk.OUTBOX, entry.title, chunks);
+        var row = new OutboxEntry(entry.title, NoteChunk.head(entry.content), entry.version);
+        row.vector = entry.vector;
+        row.attempts = entry.attempts;
+        row.nextAttemptAt = entry.nextAttemptAt;
+        row.chunks = chunks.size();
+        upsertRow(row);
+    }
+
+    /**
+     * The entries that are due for upload. Long ones only come with the start of their content:
+     * get the rest with {@link #get(String)} when it's their turn, rather than holding every
+     * one of them in memory at once.
+     */
+    @Query("SELECT * FROM outbox WHERE next_attempt_at <= :now ORDER BY next_attempt_at LIMIT :limit")
+    public abstract List<OutboxEntry> getDue(long now, int limit);
+
+    /** When the next entry becomes due, or null if the outbox is empty. */
+    @Query("SELECT MIN(next_attempt_at) FROM outbox")
+    public abstract Long getNextAttemptAt();
+
+    /**
+     * Remove an entry once it's uploaded. If the note was saved again in the meantime, the
+     * version won't match and the newer entry stays queued.
+     */
+    @Transaction
+    public int remove(String title, long version) {
+        var removed = removeRow(title, version);
+        if (removed > 0) deleteChunks(NoteChunk.OUTBOX, title);
+        return removed;
+    }
+
+    @Query("UPDATE outbox SET attempts = :attempts, next_attempt_at = :nextAttemptAt WHERE title = :title AND version = :version")
+    public abstract int retryLater(String title, long version, int attempts, long nextAttemptAt);
+
+    /** The last version of a note the server is known to have, with its whole content. */
+    @Transaction
+    public NoteBase getBase(String title) {
+        var base = getBaseRow(title);
+        if (base != null && base.chunks > 0) {
+            base.content = NoteChunk.join(getChunks(NoteChunk.BASES, title));
+            base.chunks = 0;
+        }
+        return base;
+    }
+
+    /** Remember that the server has this version of a note, unless we know of a newer one. */
+    @Transaction
+    public void acknowledge(NoteBase base) {
+        var known = getBaseRow(base.title);
+        if (known != null && known.version > base.version) return;
+
+        var chunks = NoteChunk.split(NoteChunk.BASES, base.title, base.content);
+        replaceChunks(NoteChunk.BASES, base.title, chunks);
+        var row = new NoteBase(base.title, NoteChunk.head(base.content), base.version);
+        row.vector = base.vector;
+        row.chunks = chunks.size();
+        upsertBaseRow(row);
+    }
+
+    @Transaction
+    public void acknowledgeAll(List<NoteBase> bases) {
+        for (var base : bases) acknowledge(base);
+    }
+
+    @Query("SELECT cursor FROM sync_cursors WHERE feed = :feed")
+    public abstract String getCursor(String feed);
+
+    @Upsert
+    public abstract void upsertCursor(SyncCursor cursor);
+
+    // Rows
+    // ====
+    // As stored: long content is only the start, the rest is in chunks. See NoteDao.
+
+    private void replaceChunks(String store, String title, List<NoteChunk> chunks) {
+        deleteChunks(store, title);
+        if (!chunks.isEmpty()) insertChunks(chunks);
+    }
+
+    @Query("SELECT * FROM outbox WHERE title = :title")
+    protected abstract OutboxEntry getRow(String title);
+
+    @Upsert
+    protected abstract void upsertRow(OutboxEntry entry);
+
+    @Query("DELETE FROM outbox WHERE title = :title AND version = :version")
+    protected abstract int removeRow(String title, long version);
+
+    @Query("SELECT * FROM note_bases WHERE title = :title")
+    protected abstract NoteBase getBaseRow(String title);
+
+    @Upsert
+    protected abstract void upsertBaseRow(NoteBase base);
+
+    @Query("SELECT * FROM note_chunks WHERE store = :store AND title = :title ORDER BY idx")
+    protected abstract List<NoteChunk> getChunks(String store, String title);
+
+    @Insert
+    protected abstract void insertChunks(List<NoteChunk> chunks);
+
+    @Query("DELETE FROM note_chunks WHERE store = :store AND title = :title")
+    protected abstract void deleteChunks(String store, String title);
+}
@@ -0,0 +1,59 @@
+package edu.ucsd.cse110.sharednotes.model;
+
+import androidx.annotation.NonNull;
+import androidx.room.ColumnInfo;
+import androidx.room.Entity;
+import androidx.room.PrimaryKey;
+
+/**
+ * A note that was saved locally but hasn't made it to the server yet.
+ * <p>
+ * There is at most one entry per title: saving the same note again before it's uploaded just
+ * replaces the entry with the newer version, so only the latest one ever goes over the wire.
+ */
+@Entity(tableName = "outbox")
+public class OutboxEntry {
+    @PrimaryKey
+    @NonNull
+    public String title;
+
+    @NonNull
+    public String content;
+
+    public long version;
+
+    @ColumnInfo(defaultValue = "")
+    @NonNull
+    public VersionVector vector = VersionVector.EMPTY;
+
+    /**
+     * How many {@link NoteChunk}s the content is stored in, or 0 if it's stored whole. Entries
+     * read through {@link OutboxDao#get(String)} come with their whole content, the ones from
+     * {@link OutboxDao#getDue(long, int)} only with the start of it.
+     */
+    @ColumnInfo(defaultValue = "0")
+    public int chunks = 0;
+
+    /** How many times we've tried (and failed) to upload this entry. */
+    public int attempts = 0;
+
+    /** When we may try again, in milliseconds since the epoch. */
+    @ColumnInfo(name = "next_attempt_at")
+    public long nextAttemptAt = 0;
+
+    public OutboxEntry(@NonNull String title, @NonNull String content, long version) {
+        this.title = title;
+        this.content = content;
+        this.version = version;
+    }
+
+    public static OutboxEntry of(Note note) {
+        var entry = new OutboxEntry(note.title, note.content, note.version);
+        entry.vector = note.vector;
+        return entry;
+    }
+
+    public Note toNote() {
+        return new Note(title, content, version, vector);
+    }
+}
@@ -0,0 +1,94 @@
+package edu.ucsd.cse110.sharednotes.model;
+
+import java.util.Random;
+
+/**
+ * Decides when a single note should next be polled.
+ * <p>
+ * A note that keeps changing between polls is probably being edited right now, so we poll it
+ * more and more often, down to a floor. A note that doesn't change is probably idle, so we back
+ * off exponentially, up to a ceiling. The backoff is jittered so that a lot of idle notes don't
+ * all end up polled on the same tick.
+ * <p>
+ * This class never reads the clock itself: every method takes the current time, so it can be
+ * driven by a fake clock in tests.
+ */
+public class PollSchedule {
+    /** Tuning knobs shared by every note's schedule. */
+    public static class Config {
+        public final long floorMs;
+        public final long initialMs;
+        public final long ceilingMs;
+        public final double growth;
+        public final double jitter;
+
+        /**
+         * @param floorMs   the shortest interval, used for notes that are changing.
+         * @param initialMs the interval a newly watched note starts at.
+         * @param ceilingMs the longest interval, used for notes that have been idle for a while.
+         * @param growth    how much the interval is multiplied (or divided) by after each poll.
+         * @param jitter    how much backoff intervals are randomly shortened by, from 0 to 1.
+         */
+        public Config(long floorMs, long initialMs, long ceilingMs, double growth, double jitter) {
+            if (floorMs <= 0 || initialMs < floorMs || ceilingMs < initialMs) {
+                throw new IllegalArgumentException("Expected 0 < floor <= initial <= ceiling");
+            }
+            if (growth < 1) throw new IllegalArgumentException("Growth must be at least 1");
+            if (jitter < 0 || jitter >= 1) throw new IllegalArgumentException("Jitter must be in [0, 1)");
+
+            this.floorMs = floorMs;
+            this.initialMs = initialMs;
+            this.ceilingMs = ceilingMs;
+            this.growth = growth;
+            this.jitter = jitter;
+        }
+
+        public static Config defaults() {
+            return new Config(1000, 3000, 60_000, 2.0, 0.2);
+        }
+    }
+
+    private final Config config;
+    private final Random random;
+
+    private long intervalMs;
+    private long nextDueMs;
+
+    public PollSchedule(Config config, Random random, long nowMs) {
+        this.config = config;
+        this.random = random;
+        this.intervalMs = config.initialMs;
+        this.nextDueMs = nowMs;
+    }
+
+    public boolean isDue(long nowMs) {
+        return nowMs >= nextDueMs;
+    }
+
+    public long intervalMs() {
+        return intervalMs;
+    }
+
+    public long nextDueMs() {
+        return nextDueMs;
+    }
+
+    /** The poll found a new version: speed up. */
+    public void onChanged(long nowMs) {
+        intervalMs = Math.max(config.floorMs, (long) (intervalMs / config.growth));
+        nextDueMs = nowMs + intervalMs;
+    }
+
+    /** The poll found nothing new (or failed): back off. */
+    public void onUnchanged(long nowMs) {
+        intervalMs = Math.min(config.ceilingMs, (long) (intervalMs * config.growth));
+        var jittered = intervalMs - (long) (intervalMs * config.jitter * random.nextDouble());
+        nextDueMs = nowMs + Math.max(config.floorMs, jittered);
+    }
+
+    /** The note was just edited locally, so someone is clearly working on it: poll it fast. */
+    public void reset(long nowMs) {
+        intervalMs = config.floorMs;
+        nextDueMs = nowMs + intervalMs;
+    }
+}
@@ -0,0 +1,617 @@
+package edu.ucsd.cse110.sharednotes.model;
+
+import androidx.annotation.NonNull;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * A note's content as a replicated growable array (RGA), a sequence CRDT: every device can edit
+ * its own copy, send the edits to the others as {@link Op}s, and all copies end up with the same
+ * text once they've seen the same ops, in whatever order they arrive. No server-side merging.
+ * <p>
+ * Every character ever typed is an element with a unique {@link Id}, inserted after another
+ * element. Deleting only marks an element as a tombstone, since other devices may still insert
+ * after it. Concurrent inserts after the same element are ordered by id, newest first.
+ * <p>
+ * Elements are kept in document order in one list. Finding a position is a scan, but it starts
+ * from wherever the last one ended, and edits (both ours and theirs) tend to cluster, so it's
+ * usually short.
+ * <p>
+ * Not thread-safe: each document must only be used from one thread.
+ */
+public class RgaText {
+    private static final int FORMAT = 1;
+
+    /** Who made an element (or a deletion), and when by their Lamport clock. */
+    public static final class Id implements Comparable<Id> {
+        /** The position before the first character. */
+        public static final Id ROOT = new Id("", 0);
+
+        @NonNull
+        public final String replica;
+        public final long counter;
+
+        public Id(@NonNull String replica, long counter) {
+            this.replica = replica;
+            this.counter = counter;
+        }
+
+        @Override
+        public int compareTo(Id other) {
+            if (counter != other.counter) return Long.compare(counter, other.counter);
+            return replica.compareTo(other.replica);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Id)) return false;
+            var id = (Id) o;
+            return counter == id.counter && replica.equals(id.replica);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(replica, counter);
+        }
+
+        @NonNull
+        @Override
+        public String toString() {
+            return replica + "@" + counter;
+        }
+    }
+
+    /** One edit: insert {@link #value} after {@link #target}, or delete {@link #target}. */
+    public static final class Op {
+        /** The new element's id, or the deletion's own id. */
+        public final Id id;
+        public final Id target;
+        public final boolean delete;
+        public final char value;
+
+        private Op(Id id, Id target, boolean delete, char value) {
+            this.id = id;
+            this.target = target;
+            this.delete = delete;
+            this.value = value;
+        }
+
+        public static Op insert(Id id, Id after, char value) {
+            return new Op(id, after, false, value);
+        }
+
+        public static Op delete(Id id, Id target) {
+            return new Op(id, target, true, '\0');
+        }
+    }
+
+    private static final class Element {
+        final Id id;
+        final char value;
+        /** The counter of the op that deleted this, or 0 if it's still there. */
+        long deletedAt;
+
+        Element(Id id, char value, long deletedAt) {
+            this.id = id;
+            this.value = value;
+            this.deletedAt = deletedAt;
+        }
+
+        boolean visible() {
+            return deletedAt == 0;
+        }
+    }
+
+    private final String replica;
+    private final ArrayList<Element> elements = new ArrayList<>();
+    private final Map<Id, Element> byId = new HashMap<>();
+    /** Ops that arrived before the element they refer to, by that element's id. */
+    private final Map<Id, List<Op>> waiting = new HashMap<>();
+    private long clock = 0;
+    private int visibleCount = 0;
+
+    // Where the last lookup ended: cursorVisible is how many visible elements come before
+    // cursorIndex. Every change keeps this true.
+    private int cursorIndex = 0;
+    private int cursorVisible = 0;
+
+    /** An empty document, edited locally as {@code replica}. */
+    public RgaText(@NonNull String replica) {
+        this.replica = replica;
+    }
+
+    /**
+     * A document holding {@code content}, with ids that only depend on {@code origin} and the
+     * content. Every device that seeds from the same origin and content gets the same document,
+     * so their edits line up afterwards.
+     */
+    public static RgaText seed(String content, String origin, String replica) {
+        var doc = new RgaText(replica);
+        for (int i = 0; i < content.length(); i++) {
+            doc.add(new Element(new Id(origin, i + 1), content.charAt(i), 0));
+        }
+        doc.clock = content.length();
+        return doc;
+    }
+
+    /** The visible text. */
+    public String text() {
+        var builder = new StringBuilder(elements.size());
+        for (var element : elements) {
+            if (element.visible()) builder.append(element.value);
+        }
+        return builder.toString();
+    }
+
+    /** How many elements we hold, tombstones included. */
+    public int size() {
+        return elements.size();
+    }
+
+    /** The highest counter we've seen from anyone. */
+    public long clock() {
+        return clock;
+    }
+
+    // Local edits
+    // ===========
+
+    /**
+     * Make a local edit, and get the ops that tell everyone else about it.
+     *
+     * @throws IllegalArgumentException if the edit doesn't fit the current text.
+     */
+    public List<Op> edit(NoteDelta delta) {
+        var length = visibleCount;
+        if (delta.start < 0 || delta.deleteCount < 0 || delta.start + delta.deleteCount > length) {
+            throw new IllegalArgumentException("Delta doesn't fit a text of length " + length);
+        }
+
+        var ops = new ArrayList<Op>(delta.deleteCount + delta.insert.length());
+        for (int i = 0; i < delta.deleteCount; i++) {
+            // Each delete makes the next character the one at start.
+            var element = elements.get(indexOfVisible(delta.start));
+            var op = Op.delete(nextId(), element.id);
+            applyDelete(op);
+            ops.add(op);
+        }
+
+        var after = delta.start == 0 ? Id.ROOT : elements.get(indexOfVisible(delta.start - 1)).id;
+        for (int i = 0; i < delta.insert.length(); i++) {
+            var op = Op.insert(nextId(), after, delta.insert.charAt(i));
+            applyInsert(op);
+            ops.add(op);
+            after = op.id;
+        }
+        return ops;
+    }
+
+    private Id nextId() {
+        return new Id(replica, ++clock);
+    }
+
+    // Remote edits
+    // ============
+
+    /**
+     * Apply ops from another device. Ops we've already seen are ignored, and ops that refer to
+     * elements we haven't seen yet are held back until we have.
+     *
+     * @return the changes this made to the visible text, in the order they have to be applied.
+     */
+    public List<NoteDelta> apply(List<Op> ops) {
+        var changes = new ArrayList<NoteDelta>();
+        for (var op : ops) apply(op, changes);
+        return coalesce(changes);
+    }
+
+    private void apply(Op first, List<NoteDelta> changes) {
+        // Not recursive: a long run of typing can arrive back to front, and then each op
+        // releases the next.
+        var queue = new ArrayDeque<Op>();
+        queue.add(first);
+        while (!queue.isEmpty()) {
+            var op = queue.poll();
+            clock = Math.max(clock, op.id.counter);
+
+            if (!op.target.equals(Id.ROOT) && !byId.containsKey(op.target)) {
+                waiting.computeIfAbsent(op.target, id -> new ArrayList<>()).add(op);
+                continue;
+            }
+
+            NoteDelta change = op.delete ? applyDelete(op) : applyInsert(op);
+            if (change != null) changes.add(change);
+
+            // Now that this element is here, so can whatever was waiting for it be.
+            if (!op.delete) {
+                var ready = waiting.remove(op.id);
+                if (ready != null) queue.addAll(ready);
+            }
+        }
+    }
+
+    private NoteDelta applyInsert(Op op) {
+        if (byId.containsKey(op.id)) return null; // Seen it already.
+
+        int index = op.target.equals(Id.ROOT) ? 0 : indexOf(byId.get(op.target)) + 1;
+        // Skip whatever was inserted after the same element by newer ops (and everything
+        // inserted after those). This is what puts concurrent inserts in the same order
+        // everywhere.
+        while (index < elements.size() && elements.get(index).id.compareTo(op.id) > 0) index++;
+
+        var position = visibleBefore(index);
+        var element = new Element(op.id, op.value, 0);
+        elements.add(index, element);
+        byId.put(op.id, element);
+        visibleCount++;
+        // The cursor is at index, so the new element is right after it, and it stays valid.
+
+        return new NoteDelta(position, 0, String.valueOf(op.value));
+    }
+
+    private NoteDelta applyDelete(Op op) {
+        var element = byId.get(op.target);
+        if (!element.visible()) return null; // Someone else deleted it too.
+
+        var index = indexOf(element);
+        var position = visibleBefore(index);
+        element.deletedAt = op.id.counter;
+        visibleCount--;
+        // The cursor is at index, so the change is after it, and it stays valid.
+
+        return new NoteDelta(position, 1, "");
+    }
+
+    /** Merge runs of single-character changes (typing, or holding backspace) into one each. */
+    private static List<NoteDelta> coalesce(List<NoteDelta> changes) {
+        var result = new ArrayList<NoteDelta>(changes.size());
+        for (var change : changes) {
+            var last = result.isEmpty() ? null : result.get(result.size() - 1);
+            if (last != null && last.deleteCount == 0 && change.deleteCount == 0
+                    && change.start == last.start + last.insert.length()) {
+                result.set(result.size() - 1, new NoteDelta(last.start, 0, last.insert + change.insert));
+            } else if (last != null && last.insert.isEmpty() && change.insert.isEmpty()
+                    && change.start == last.start) {
+                result.set(result.size() - 1, new NoteDelta(last.start, last.deleteCount + change.deleteCount, ""));
+            } else {
+                result.add(change);
+            }
+        }
+        return result;
+    }
+
+    // Finding things
+    // ==============
+
+    /** Move the cursor to {@code index}, and return how many visible elements come before it. */
+    private int visibleBefore(int index) {
+        while (cursorIndex < index) {
+            if (elements.get(cursorIndex).visible()) cursorVisible++;
+            cursorIndex++;
+        }
+        while (cursorIndex > index) {
+            cursorIndex--;
+            if (elements.get(cursorIndex).visible()) cursorVisible--;
+        }
+        return cursorVisible;
+    }
+
+    /** The index of the visible element at {@code position}, or the size if it's past the end. */
+    private int indexOfVisible(int position) {
+        while (cursorVisible > position) {
+            cursorIndex--;
+            if (elements.get(cursorIndex).visible()) cursorVisible--;
+        }
+        while (cursorIndex < elements.size() && (cursorVisible < position || !elements.get(cursorIndex).visible())) {
+            if (elements.get(cursorIndex).visible()) cursorVisible++;
+            cursorIndex++;
+        }
+        return cursorIndex;
+    }
+
+    /** The index of an element, looking outwards from the cursor. */
+    private int indexOf(Element element) {
+        var size = elements.size();
+        for (int distance = 0; distance < size; distance++) {
+            var after = cursorIndex + distance;
+            if (after < size && elements.get(after) == element) return after;
+            var before = cursorIndex - distance - 1;
+            if (before >= 0 && elements.get(before) == element) return before;
+            if (after >= size && before < 0) break;
+        }
+        throw new IllegalStateException("Element " + element.id + " is not in the document");
+    }
+
+    // Compaction
+    // ==========
+
+    /**
+     * Drop the tombstones of deletions that every device is known to have seen. Nobody can
+     * insert after a character they know is deleted, so nothing will ever refer to those again.
+     *
+     * @param stable every device has seen every op with a counter up to this one.
+     * @return how many tombstones were dropped.
+     */
+    public int compact(long stable) {
+        var kept = new ArrayList<Element>(elements.size());
+        for (var element : elements) {
+            if (!element.visible() && element.deletedAt <= stable) {
+                byId.remove(element.id);
+            } else {
+                kept.add(element);
+            }
+        }
+        var dropped = elements.size() - kept.size();
+        if (dropped > 0) {
+            elements.clear();
+            elements.addAll(kept);
+            cursorIndex = 0;
+            cursorVisible = 0;
+        }
+        return dropped;
+    }
+
+    // Encoding
+    // ========
+
+    /**
+     * The whole document, for storing. Elements are written in runs (consecutive ids from the
+     * same device, all deleted or all not), so typed text costs little more than the text itself.
+     * Deleted characters are only kept as ids, without their content. Each run's first counter is
+     * written relative to where the run before it ended, since they're usually close.
+     */
+    public byte[] encode() {
+        var bytes = new ByteArrayOutputStream();
+        try (var out = new DataOutputStream(bytes)) {
+            out.writeByte(FORMAT);
+            writeVarLong(out, clock);
+
+            var replicas = new Replicas();
+            var runs = new ArrayList<int[]>(); // start, end
+            int start = 0;
+            for (int i = 1; i <= elements.size(); i++) {
+                if (i == elements.size() || !continuesRun(elements.get(i - 1), elements.get(i))) {
+                    runs.add(new int[]{start, i});
+                    replicas.indexOf(elements.get(start).id.replica);
+                    start = i;
+                }
+            }
+
+            replicas.write(out);
+            writeVarLong(out, runs.size());
+            long expected = 0;
+            for (var run : runs) {
+                var first = elements.get(run[0]);
+                var length = run[1] - run[0];
+                writeVarLong(out, replicas.indexOf(first.id.replica));
+                writeVarLong(out, zigzag(first.id.counter - expected));
+                writeVarLong(out, ((long) length << 1) | (first.visible() ? 0 : 1));
+                expected = first.id.counter + length;
+
+                if (first.visible()) {
+                    for (int i = run[0]; i < run[1]; i++) writeVarLong(out, elements.get(i).value);
+                } else {
+                    // Only used to decide when it can be compacted, so the latest is enough.
+                    long deletedAt = 0;
+                    for (int i = run[0]; i < run[1]; i++) deletedAt = Math.max(deletedAt, elements.get(i).deletedAt);
+                    writeVarLong(out, deletedAt);
+                }
+            }
+
+            // Ops still waiting for what they refer to have to survive being stored, too.
+            var pending = new ArrayList<Op>();
+            for (var ops : waiting.values()) pending.addAll(ops);
+            writeOps(out, pending);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static boolean continuesRun(Element previous, Element next) {
+        return next.id.replica.equals(previous.id.replica)
+                && next.id.counter == previous.id.counter + 1
+                && next.visible() == previous.visible();
+    }
+
+    /** The reverse of {@link #encode()}. */
+    public static RgaText decode(byte[] encoded, String replica) {
+        var doc = new RgaText(replica);
+        try (var in = new DataInputStream(new ByteArrayInputStream(encoded))) {
+            checkFormat(in);
+            doc.clock = readVarLong(in);
+
+            var replicas = Replicas.read(in);
+            var runs = readVarLong(in);
+            long expected = 0;
+            for (long r = 0; r < runs; r++) {
+                var owner = replicas.get((int) readVarLong(in));
+                var counter = expected + unzigzag(readVarLong(in));
+                var header = readVarLong(in);
+                var length = (int) (header >>> 1);
+                var deleted = (header & 1) != 0;
+                expected = counter + length;
+
+                if (deleted) {
+                    var deletedAt = readVarLong(in);
+                    for (int i = 0; i < length; i++) doc.add(new Element(new Id(owner, counter + i), '\0', deletedAt));
+                } else {
+                    for (int i = 0; i < length; i++) doc.add(new Element(new Id(owner, counter + i), (char) readVarLong(in), 0));
+                }
+            }
+
+            for (var op : readOps(in)) {
+                doc.waiting.computeIfAbsent(op.target, id -> new ArrayList<>()).add(op);
+            }
+        } catch (IOException | IndexOutOfBoundsException e) {
+            throw new IllegalArgumentException("Malformed document", e);
+        }
+        return doc;
+    }
+
+    /** Add an element at the end, while building a document. */
+    private void add(Element element) {
+        elements.add(element);
+        byId.put(element.id, element);
+        if (element.visible()) visibleCount++;
+    }
+
+    /**
+     * Encode ops to send to other devices. An insert that directly follows the previous op's
+     * insert (i.e. typing) only takes its character.
+     */
+    public static byte[] encodeOps(List<Op> ops) {
+        var bytes = new ByteArrayOutputStream();
+        try (var out = new DataOutputStream(bytes)) {
+            out.writeByte(FORMAT);
+            writeOps(out, ops);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /** The reverse of {@link #encodeOps(List)}. */
+    public static List<Op> decodeOps(byte[] encoded) {
+        try (var in = new DataInputStream(new ByteArrayInputStream(encoded))) {
+            checkFormat(in);
+            return readOps(in);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Malformed ops", e);
+        }
+    }
+
+    private static final int OP_INSERT = 0;
+    private static final int OP_DELETE = 1;
+    private static final int OP_TYPED = 2;
+
+    private static void writeOps(DataOutputStream out, List<Op> ops) throws IOException {
+        var replicas = new Replicas();
+        for (var op : ops) {
+            replicas.indexOf(op.id.replica);
+            replicas.indexOf(op.target.replica);
+        }
+        replicas.write(out);
+
+        writeVarLong(out, ops.size());
+        Op previous = null;
+        for (var op : ops) {
+            if (!op.delete && previous != null && !previous.delete && op.target.equals(previous.id)
+                    && op.id.replica.equals(previous.id.replica) && op.id.counter == previous.id.counter + 1) {
+                out.writeByte(OP_TYPED);
+            } else {
+                out.writeByte(op.delete ? OP_DELETE : OP_INSERT);
+                writeVarLong(out, replicas.indexOf(op.id.replica));
+                writeVarLong(out, op.id.counter);
+                writeVarLong(out, replicas.indexOf(op.target.replica));
+                writeVarLong(out, op.target.counter);
+            }
+            if (!op.delete) writeVarLong(out, op.value);
+            previous = op;
+        }
+    }
+
+    private static List<Op> readOps(DataInputStream in) throws IOException {
+        var replicas = Replicas.read(in);
+        var count = (int) readVarLong(in);
+        var ops = new ArrayList<Op>(count);
+        Op previous = null;
+        try {
+            for (int i = 0; i < count; i++) {
+                var kind = in.readByte();
+                Op op;
+                if (kind == OP_TYPED) {
+                    if (previous == null) throw new IOException("Typed insert with nothing before it");
+                    var id = new Id(previous.id.replica, previous.id.counter + 1);
+                    op = Op.insert(id, previous.id, (char) readVarLong(in));
+                } else {
+                    var id = new Id(replicas.get((int) readVarLong(in)), readVarLong(in));
+                    var target = new Id(replicas.get((int) readVarLong(in)), readVarLong(in));
+                    op = kind == OP_DELETE
+                            ? Op.delete(id, target)
+                            : Op.insert(id, target, (char) readVarLong(in));
+                }
+                ops.add(op);
+                previous = op;
+            }
+        } catch (IndexOutOfBoundsException e) {
+            throw new IOException("Unknown replica", e);
+        }
+        return ops;
+    }
+
+    private static void checkFormat(DataInputStream in) throws IOException {
+        var format = in.readByte();
+        if (format != FORMAT) throw new IllegalArgumentException("Unknown format " + format);
+    }
+
+    /** Replica names are long, so each message lists them once and refers to them by index. */
+    private static class Replicas {
+        private final List<String> names = new ArrayList<>();
+        private final Map<String, Integer> indices = new HashMap<>();
+
+        int indexOf(String name) {
+            var index = indices.get(name);
+            if (index == null) {
+                index = names.size();
+                names.add(name);
+                indices.put(name, index);
+            }
+            return index;
+        }
+
+        String get(int index) {
+            return names.get(index);
+        }
+
+        void write(DataOutputStream out) throws IOException {
+            writeVarLong(out, names.size());
+            for (var name : names) out.writeUTF(name);
+        }
+
+        static Replicas read(DataInputStream in) throws IOException {
+            var replicas = new Replicas();
+            var count = readVarLong(in);
+            for (long i = 0; i < count; i++) replicas.indexOf(in.readUTF());
+            return replicas;
+        }
+    }
+
+    private static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static void writeVarLong(DataOutputStream out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    private static long readVarLong(DataInputStream in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            var b = in.readByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) return value;
+        }
+        throw new IOException("Varint too long");
+    }
+}
@@ -0,0 +1,26 @@
+package edu.ucsd.cse110.sharednotes.model;
+
+import androidx.annotation.NonNull;
+import androidx.room.Entity;
+import androidx.room.PrimaryKey;
+
+/**
+ * How far we've read a server's "changes since" feed (see {@link ChangeFeed}). Everything the
+ * server changed up to here is already in our database.
+ */
+@Entity(tableName = "sync_cursors")
+public class SyncCursor {
+    /** Which feed this is for. There's only one server for now, but this keeps them apart. */
+    @PrimaryKey
+    @NonNull
+    public String feed;
+
+    /** Opaque to us: whatever the server last gave us, to hand back next time. */
+    @NonNull
+    public String cursor;
+
+    public SyncCursor(@NonNull String feed, @NonNull String cursor) {
+        this.feed = feed;
+        this.cursor = cursor;
+    }
+}
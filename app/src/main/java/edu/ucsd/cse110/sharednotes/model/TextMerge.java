@@ -0,0 +1,259 @@
+package edu.ucsd.cse110.sharednotes.model;
+
+import androidx.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Three-way merge of two edited versions of a note's content, line by line, and the line diff it
+ * is built on (see {@link #diff(String, String)}).
+ * <p>
+ * Given the version both sides started from (the base) and both sides' edits, every stretch of
+ * lines that only one side changed takes that side's change, and stretches both sides changed
+ * the same way take that. If both sides changed the same stretch differently, there's no telling
+ * what the user wants, so the merge gives up and the conflict is left for them to settle.
+ * <p>
+ * Each side is matched against the base with Myers' diff, which only does work proportional to
+ * how many lines changed, so scattered edits to even very large notes merge quickly.
+ */
+public class TextMerge {
+    /**
+     * Past this many changed lines on one side, we stop diffing and let the user decide. The
+     * memory the diff needs grows with the square of this.
+     */
+    static final int MAX_EDITS = 1000;
+
+    private TextMerge() {}
+
+    /**
+     * Merge {@code ours} and {@code theirs}, which were both edited from {@code base}.
+     *
+     * @return the merged content, or null if both sides changed the same lines differently (or
+     *         changed too much to tell).
+     */
+    @Nullable
+    public static String merge(String base, String ours, String theirs) {
+        // The easy cases, which are also the common ones.
+        if (ours.equals(theirs) || theirs.equals(base)) return ours;
+        if (ours.equals(base)) return theirs;
+
+        // Diffing ints is a lot cheaper than comparing strings over and over.
+        var ids = new HashMap<String, Integer>();
+        var baseLines = split(base);
+        var ourLines = split(ours);
+        var theirLines = split(theirs);
+        var b = intern(baseLines, ids);
+        var o = intern(ourLines, ids);
+        var t = intern(theirLines, ids);
+
+        var ourMatch = match(b, o);
+        var theirMatch = match(b, t);
+        if (ourMatch == null || theirMatch == null) return null;
+
+        var merged = new StringBuilder(Math.max(ours.length(), theirs.length()));
+        int bStart = 0, oStart = 0, tStart = 0;
+        for (int i = 0; i <= b.length; i++) {
+            // Find the next base line that's still there, untouched, on both sides. Everything
+            // before it (since the last one) is a chunk one or both sides changed.
+            var end = i == b.length;
+            if (!end && (ourMatch[i] < 0 || theirMatch[i] < 0)) continue;
+
+            var oEnd = end ? o.length : ourMatch[i];
+            var tEnd = end ? t.length : theirMatch[i];
+            if (!mergeChunk(b, bStart, i, o, oStart, oEnd, t, tStart, tEnd, ourLines, theirLines, merged)) {
+                return null;
+            }
+            if (end) break;
+
+            merged.append(baseLines.get(i));
+            bStart = i + 1;
+            oStart = oEnd + 1;
+            tStart = tEnd + 1;
+        }
+        return merged.toString();
+    }
+
+    /**
+     * The changes that turn {@code before} into {@code after}: one splice per stretch of changed
+     * lines, trimmed to the characters that actually differ. Unlike
+     * {@link NoteDelta#between(String, String)}, edits in several places stay separate splices
+     * instead of one covering everything in between.
+     *
+     * @return the splices, to be applied in order, each with positions in the text as the ones
+     *         before it left it. If too much changed to diff, the one splice that covers it all.
+     */
+    public static List<NoteDelta> diff(String before, String after) {
+        if (before.equals(after)) return List.of();
+
+        var ids = new HashMap<String, Integer>();
+        var beforeLines = split(before);
+        var afterLines = split(after);
+        var a = intern(beforeLines, ids);
+        var b = intern(afterLines, ids);
+        var matched = match(a, b);
+        if (matched == null) return List.of(NoteDelta.between(before, after));
+
+        var changes = new ArrayList<NoteDelta>();
+        // Where we are in before, and how much the changes so far moved everything after them.
+        int at = 0, shift = 0, bStart = 0;
+        var removed = new StringBuilder();
+        var added = new StringBuilder();
+        for (int i = 0; i <= a.length; i++) {
+            if (i < a.length && matched[i] < 0) {
+                removed.append(beforeLines.get(i));
+                continue;
+            }
+
+            var bEnd = i == a.length ? b.length : matched[i];
+            for (int j = bStart; j < bEnd; j++) added.append(afterLines.get(j));
+            if (removed.length() > 0 || added.length() > 0) {
+                var change = NoteDelta.between(removed.toString(), added.toString());
+                changes.add(new NoteDelta(at + shift + change.start, change.deleteCount, change.insert));
+                shift += added.length() - removed.length();
+                at += removed.length();
+                removed.setLength(0);
+                added.setLength(0);
+            }
+            if (i == a.length) break;
+
+            at += beforeLines.get(i).length();
+            bStart = bEnd + 1;
+        }
+        return changes;
+    }
+
+    /** Merge one changed chunk into {@code out}. Returns false if both sides changed it. */
+    private static boolean mergeChunk(
+            int[] b, int bStart, int bEnd,
+            int[] o, int oStart, int oEnd,
+            int[] t, int tStart, int tEnd,
+            List<String> ourLines, List<String> theirLines,
+            StringBuilder out
+    ) {
+        if (sameLines(o, oStart, oEnd, b, bStart, bEnd)) {
+            // Only they changed it (or nobody did).
+            for (int j = tStart; j < tEnd; j++) out.append(theirLines.get(j));
+            return true;
+        }
+        if (sameLines(t, tStart, tEnd, b, bStart, bEnd) || sameLines(o, oStart, oEnd, t, tStart, tEnd)) {
+            // Only we changed it, or we both changed it the same way.
+            for (int j = oStart; j < oEnd; j++) out.append(ourLines.get(j));
+            return true;
+        }
+        return false;
+    }
+
+    private static boolean sameLines(int[] a, int aStart, int aEnd, int[] b, int bStart, int bEnd) {
+        if (aEnd - aStart != bEnd - bStart) return false;
+        for (int i = 0; i < aEnd - aStart; i++) {
+            if (a[aStart + i] != b[bStart + i]) return false;
+        }
+        return true;
+    }
+
+    /** Split into lines, each keeping its line break (if it has one), so joining is lossless. */
+    private static List<String> split(String text) {
+        var lines = new ArrayList<String>();
+        int start = 0;
+        while (start < text.length()) {
+            var newline = text.indexOf('\n', start);
+            var end = newline < 0 ? text.length() : newline + 1;
+            lines.add(text.substring(start, end));
+            start = end;
+        }
+        return lines;
+    }
+
+    private static int[] intern(List<String> lines, HashMap<String, Integer> ids) {
+        var result = new int[lines.size()];
+        for (int i = 0; i < result.length; i++) {
+            Integer id = ids.get(lines.get(i));
+            if (id == null) {
+                id = ids.size();
+                ids.put(lines.get(i), id);
+            }
+            result[i] = id;
+        }
+        return result;
+    }
+
+    /**
+     * Match up the lines of {@code a} and {@code b} along a longest common subsequence.
+     *
+     * @return for each line of {@code a}, the index of its line in {@code b}, or -1 if it's not
+     *         in {@code b}. Null if more than {@link #MAX_EDITS} lines differ.
+     */
+    @Nullable
+    static int[] match(int[] a, int[] b) {
+        int n = a.length, m = b.length;
+        var result = new int[n];
+        Arrays.fill(result, -1);
+
+        // Most of a note is usually untouched at the start and end, so don't diff that part.
+        int prefix = 0;
+        while (prefix < n && prefix < m && a[prefix] == b[prefix]) {
+            result[prefix] = prefix;
+            prefix++;
+        }
+        int suffix = 0;
+        while (suffix < n - prefix && suffix < m - prefix && a[n - 1 - suffix] == b[m - 1 - suffix]) {
+            result[n - 1 - suffix] = m - 1 - suffix;
+            suffix++;
+        }
+
+        // Myers' diff on what's left. v[k] is how far along a we got on diagonal k = x - y, and
+        // trace keeps v as it was before each round d, so we can walk the path back.
+        int width = n - prefix - suffix, height = m - prefix - suffix;
+        int limit = Math.min(width + height, MAX_EDITS);
+        int offset = limit + 1;
+        var v = new int[2 * limit + 3];
+        var trace = new ArrayList<int[]>();
+
+        for (int d = 0; d <= limit; d++) {
+            trace.add(Arrays.copyOfRange(v, offset - d - 1, offset + d + 2));
+            for (int k = -d; k <= d; k += 2) {
+                int x;
+                if (k == -d || (k != d && v[offset + k - 1] < v[offset + k + 1])) {
+                    x = v[offset + k + 1];
+                } else {
+                    x = v[offset + k - 1] + 1;
+                }
+                int y = x - k;
+                while (x < width && y < height && a[prefix + x] == b[prefix + y]) {
+                    x++;
+                    y++;
+                }
+                v[offset + k] = x;
+
+                if (x >= width && y >= height) {
+                    backtrack(trace, width, height, prefix, result);
+                    return result;
+                }
+            }
+        }
+        return null;
+    }
+
+    private static void backtrack(List<int[]> trace, int x, int y, int prefix, int[] result) {
+        for (int d = trace.size() - 1; d >= 0; d--) {
+            var v = trace.get(d);
+            // v starts at diagonal -d - 1.
+            int k = x - y;
+            int prevK = (k == -d || (k != d && v[k - 1 + d + 1] < v[k + 1 + d + 1])) ? k + 1 : k - 1;
+            int prevX = v[prevK + d + 1];
+            int prevY = prevX - prevK;
+
+            // The diagonal (matching lines) we took after that round's one edit.
+            while (x > prevX && y > prevY) {
+                x--;
+                y--;
+                result[prefix + x] = prefix + y;
+            }
+            x = prevX;
+            y = prevY;
+        }
+    }
+}
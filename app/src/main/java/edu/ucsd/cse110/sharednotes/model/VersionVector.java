@@ -0,0 +1,156 @@
+package edu.ucsd.cse110.sharednotes.model;
+
+import androidx.annotation.NonNull;
+import androidx.room.TypeConverter;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+
+/**
+ * Which edits a note has seen: for every device that ever edited it, how many of that device's
+ * edits are included. A plain version number can't tell "this edit came after that one" apart
+ * from "these two edits were made at the same time on different devices", but this can.
+ * <p>
+ * Vectors are immutable. A note only ever has a handful of entries (one per device that edited
+ * it), so comparing two is a short walk over both, cheap enough to do for every pulled note.
+ * <p>
+ * Notes from before we had vectors (or from a server that drops them) have an empty vector.
+ * Nothing can be said about those, and callers fall back to comparing plain versions.
+ */
+public class VersionVector {
+    public static final VersionVector EMPTY = new VersionVector(new TreeMap<>());
+
+    /** How one vector relates to another. */
+    public enum Order {
+        /** Both have seen exactly the same edits. */
+        EQUAL,
+        /** This one is missing some edits the other has, and has nothing the other is missing. */
+        BEFORE,
+        /** This one has every edit the other has, and more. */
+        AFTER,
+        /** Each has edits the other hasn't seen: they were made concurrently. */
+        CONCURRENT
+    }
+
+    // Sorted, so that equal vectors always encode the same way.
+    private final TreeMap<String, Long> counts;
+
+    private VersionVector(TreeMap<String, Long> counts) {
+        this.counts = counts;
+    }
+
+    public boolean isEmpty() {
+        return counts.isEmpty();
+    }
+
+    public long get(String device) {
+        return counts.getOrDefault(device, 0L);
+    }
+
+    /** This vector plus one more edit made on {@code device}. */
+    public VersionVector increment(String device) {
+        var next = new TreeMap<>(counts);
+        next.merge(device, 1L, Long::sum);
+        return new VersionVector(next);
+    }
+
+    /** This vector, leaving out the edits made on {@code device}. */
+    public VersionVector without(String device) {
+        if (!counts.containsKey(device)) return this;
+        var next = new TreeMap<>(counts);
+        next.remove(device);
+        return new VersionVector(next);
+    }
+
+    /** Every edit seen by either this vector or the other one. */
+    public VersionVector merge(VersionVector other) {
+        if (other.counts.isEmpty()) return this;
+        if (counts.isEmpty()) return other;
+
+        var next = new TreeMap<>(counts);
+        for (var entry : other.counts.entrySet()) {
+            next.merge(entry.getKey(), entry.getValue(), Math::max);
+        }
+        return new VersionVector(next);
+    }
+
+    /** How this vector relates to the other one. */
+    public Order compare(VersionVector other) {
+        var ahead = false;
+        var behind = false;
+
+        for (var entry : counts.entrySet()) {
+            var theirs = other.get(entry.getKey());
+            if (entry.getValue() > theirs) ahead = true;
+            else if (entry.getValue() < theirs) behind = true;
+        }
+        // Devices only they know about: they're ahead of us on those.
+        if (!behind) {
+            for (var device : other.counts.keySet()) {
+                if (!counts.containsKey(device)) {
+                    behind = true;
+                    break;
+                }
+            }
+        }
+
+        if (ahead && behind) return Order.CONCURRENT;
+        if (ahead) return Order.AFTER;
+        if (behind) return Order.BEFORE;
+        return Order.EQUAL;
+    }
+
+    /** The entries, device to count, e.g. for sending as JSON. */
+    public Map<String, Long> asMap() {
+        return Collections.unmodifiableMap(counts);
+    }
+
+    public static VersionVector of(Map<String, Long> counts) {
+        if (counts.isEmpty()) return EMPTY;
+        return new VersionVector(new TreeMap<>(counts));
+    }
+
+    /** Encode as "device=count,device=count", for storing in the database. */
+    @TypeConverter
+    public static String encode(VersionVector vector) {
+        var builder = new StringBuilder();
+        for (var entry : vector.counts.entrySet()) {
+            if (builder.length() > 0) builder.append(',');
+            builder.append(entry.getKey()).append('=').append(entry.getValue());
+        }
+        return builder.toString();
+    }
+
+    /** The reverse of {@link #encode(VersionVector)}. */
+    @TypeConverter
+    public static VersionVector decode(String encoded) {
+        if (encoded == null || encoded.isEmpty()) return EMPTY;
+
+        var counts = new TreeMap<String, Long>();
+        for (var entry : encoded.split(",")) {
+            var split = entry.lastIndexOf('=');
+            counts.put(entry.substring(0, split), Long.parseLong(entry.substring(split + 1)));
+        }
+        return new VersionVector(counts);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof VersionVector)) return false;
+        return counts.equals(((VersionVector) o).counts);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(counts);
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return "{" + encode(this) + "}";
+    }
+}
@@ -1,31 +1,72 @@
 package edu.ucsd.cse110.sharednotes.view;
 
+import android.graphics.Typeface;
+import android.text.SpannableStringBuilder;
+import android.text.Spanned;
+import android.text.style.StyleSpan;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
 import android.widget.TextView;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.VisibleForTesting;
 import androidx.core.util.Consumer;
+import androidx.paging.PagingDataAdapter;
+import androidx.recyclerview.widget.DiffUtil;
 import androidx.recyclerview.widget.RecyclerView;
 
-import java.util.Collections;
 import java.util.List;
-import java.util.function.BiConsumer;
 
 import edu.ucsd.cse110.sharednotes.R;
-import edu.ucsd.cse110.sharednotes.model.Note;
+import edu.ucsd.cse110.sharednotes.model.NoteSummary;
+
+/**
+ * Shows the notes, which are loaded a page at a time as the list scrolls. Use submitData() to
+ * give it the pages; it works out what changed in the background, so when one note changes only
+ * its row is rebound (and animated), not the whole list.
+ * <p>
+ * Rows are identified by title, which is unique (it's the primary key). That's also why we
+ * don't need stable ids (which PagingDataAdapter doesn't support anyway): the diff already
+ * knows exactly which row is which.
+ */
+public class NotesAdapter extends PagingDataAdapter<NoteSummary, NotesAdapter.ViewHolder> {
+    private static final DiffUtil.ItemCallback<NoteSummary> DIFF = new DiffUtil.ItemCallback<>() {
+        @Override
+        public boolean areItemsTheSame(@NonNull NoteSummary oldNote, @NonNull NoteSummary newNote) {
+            return oldNote.title.equals(newNote.title);
+        }
+
+        @Override
+        public boolean areContentsTheSame(@NonNull NoteSummary oldNote, @NonNull NoteSummary newNote) {
+            // Every change to a note bumps its version, but the same version can still be shown
+            // with a different search snippet. Previews are short, so comparing them is cheap.
+            return oldNote.version == newNote.version && oldNote.preview.equals(newNote.preview);
+        }
+
+        @Override
+        public Object getChangePayload(@NonNull NoteSummary oldNote, @NonNull NoteSummary newNote) {
+            // Only the preview can have changed (the title is the identity), so say so. That way
+            // the row is updated in place instead of being cross-faded with a fresh copy of itself.
+            return PAYLOAD_PREVIEW;
+        }
+    };
+
+    @VisibleForTesting
+    static final Object PAYLOAD_PREVIEW = new Object();
 
-public class NotesAdapter extends RecyclerView.Adapter<NotesAdapter.ViewHolder> {
-    private List<Note> notes = Collections.emptyList();
-    private Consumer<Note> onNoteClicked;
-    private Consumer<Note> onNoteDeleteClicked;
+    private Consumer<NoteSummary> onNoteClicked;
+    private Consumer<NoteSummary> onNoteDeleteClicked;
+
+    public NotesAdapter() {
+        super(DIFF);
+    }
 
-    public void setOnNoteClickListener(Consumer<Note> onNoteClicked) {
+    public void setOnNoteClickListener(Consumer<NoteSummary> onNoteClicked) {
         this.onNoteClicked = onNoteClicked;
     }
 
-    public void setOnNoteDeleteClickListener(Consumer<Note> onNoteDeleteClicked) {
+    public void setOnNoteDeleteClickListener(Consumer<NoteSummary> onNoteDeleteClicked) {
         this.onNoteDeleteClicked = onNoteDeleteClicked;
     }
 
@@ -49,17 +90,38 @@ public class NotesAdapter extends RecyclerView.Adapter<NotesAdapter.ViewHolder>
             this.deleteButton = itemView.findViewById(R.id.note_item_delete);
         }
 
-        public void bind(Note note) {
+        public void bind(NoteSummary note) {
             nameView.setText(note.title);
-            previewView.setText(note.content);
+            bindPreview(note);
+        }
+
+        public void bindPreview(NoteSummary note) {
+            previewView.setText(highlight(note.preview));
             itemView.setOnClickListener(v -> onNoteClicked.accept(note));
             deleteButton.setOnClickListener(v -> onNoteDeleteClicked.accept(note));
         }
     }
 
-    public void setNotes(List<Note> notes) {
-        this.notes = notes;
-        notifyDataSetChanged();
+    /** Turn the match markers in a search snippet into bold text. */
+    private static CharSequence highlight(String preview) {
+        if (!preview.contains(NoteSummary.MATCH_START)) return preview;
+
+        var text = new SpannableStringBuilder();
+        var index = 0;
+        while (index < preview.length()) {
+            var start = preview.indexOf(NoteSummary.MATCH_START, index);
+            if (start < 0) break;
+            var end = preview.indexOf(NoteSummary.MATCH_END, start);
+            if (end < 0) break;
+
+            text.append(preview, index, start);
+            var spanStart = text.length();
+            text.append(preview, start + NoteSummary.MATCH_START.length(), end);
+            text.setSpan(new StyleSpan(Typeface.BOLD), spanStart, text.length(), Spanned.SPAN_EXCLUSIVE_EXCLUSIVE);
+            index = end + NoteSummary.MATCH_END.length();
+        }
+        text.append(preview, index, preview.length());
+        return text;
     }
 
     @Override
@@ -72,20 +134,20 @@ public class NotesAdapter extends RecyclerView.Adapter<NotesAdapter.ViewHolder>
 
     @Override
     public void onBindViewHolder(ViewHolder holder, int position) {
-        var note = notes.get(position);
-        holder.bind(note);
+        // Placeholders are off, so every position we're asked to bind has been loaded.
+        var note = getItem(position);
+        if (note != null) holder.bind(note);
     }
 
     @Override
-    public int getItemCount() {
-        return notes.size();
-    }
-
-    @Override
-    public long getItemId(int position) {
-        // We don't actually have a unique int/long ID on the Note object, so instead
-        // we generate a unique ID based on the title. It is possible that two notes
-        // could have different titles but the same hash code, but it is beyond unlikely.
-        return notes.get(position).title.hashCode();
+    public void onBindViewHolder(@NonNull ViewHolder holder, int position, @NonNull List<Object> payloads) {
+        var note = getItem(position);
+        if (note == null) return;
+
+        if (payloads.contains(PAYLOAD_PREVIEW)) {
+            holder.bindPreview(note);
+        } else {
+            holder.bind(note);
+        }
     }
 }
@@ -1,55 +1,114 @@
 package edu.ucsd.cse110.sharednotes.viewmodel;
 
 import android.app.Application;
+import android.os.Handler;
+import android.os.Looper;
 
 import androidx.annotation.NonNull;
 import androidx.lifecycle.AndroidViewModel;
 import androidx.lifecycle.LiveData;
+import androidx.lifecycle.ViewModelKt;
+import androidx.paging.Pager;
+import androidx.paging.PagingConfig;
+import androidx.paging.PagingData;
+import androidx.paging.PagingLiveData;
+import androidx.paging.PagingSource;
 
-import java.util.List;
-
+import edu.ucsd.cse110.sharednotes.R;
 import edu.ucsd.cse110.sharednotes.model.Note;
-import edu.ucsd.cse110.sharednotes.model.NoteDatabase;
 import edu.ucsd.cse110.sharednotes.model.NoteRepository;
+import edu.ucsd.cse110.sharednotes.model.NoteSummary;
 
 public class ListViewModel extends AndroidViewModel {
-    private LiveData<List<Note>> notes;
+    /** How long typing has to pause before we actually run the search. */
+    private static final long SEARCH_DEBOUNCE_MS = 250;
+
+    private LiveData<PagingData<NoteSummary>> notes;
     private final NoteRepository repo;
+    private final PagingConfig pagingConfig;
+
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final Runnable applySearch = this::applySearch;
+    private String pendingSearch = "";
+    private volatile String search = "";
+    private volatile PagingSource<Integer, NoteSummary> source;
 
     public ListViewModel(@NonNull Application application) {
         super(application);
         var context = application.getApplicationContext();
-        var db = NoteDatabase.provide(context);
-        var dao = db.getDao();
-        this.repo = new NoteRepository(dao);
+        this.repo = NoteRepository.provide(context);
+
+        // These live in resources, so they can be tuned per device (e.g. bigger pages on tablets).
+        var resources = context.getResources();
+        this.pagingConfig = new PagingConfig(
+                resources.getInteger(R.integer.notes_page_size),
+                resources.getInteger(R.integer.notes_prefetch_distance),
+                false
+        );
     }
 
     /**
-     * Load all notes from the database.
-     * @return a LiveData object that will be updated when any notes change.
+     * Load summaries of the notes from the database, a page at a time as the list scrolls. The
+     * full notes are only loaded when one is opened. If there's a search (see
+     * {@link #search(String)}), only the matching notes are loaded, best matches first.
+     * @return a LiveData object that will be updated when any notes change, or the search does.
      */
-    public LiveData<List<Note>> getNotes() {
+    public LiveData<PagingData<NoteSummary>> getNotes() {
         if (notes == null) {
-            notes = repo.getAllLocal();
+            var pager = new Pager<>(pagingConfig, this::makeSource);
+            // Cache the pages in the view model, so they survive e.g. rotating the screen.
+            notes = PagingLiveData.cachedIn(PagingLiveData.getLiveData(pager), ViewModelKt.getViewModelScope(this));
         }
         return notes;
     }
 
+    /**
+     * Only show notes matching the given text (or all of them, if it's blank). Meant to be called
+     * on every keystroke: the search only runs once typing pauses.
+     */
+    public void search(String text) {
+        pendingSearch = text.trim();
+        handler.removeCallbacks(applySearch);
+        handler.postDelayed(applySearch, SEARCH_DEBOUNCE_MS);
+    }
+
+    private void applySearch() {
+        if (pendingSearch.equals(search)) return;
+        search = pendingSearch;
+
+        // Invalidating the current source makes the pager ask for a new one (for the new search)
+        // and cancels whatever the old one was still loading.
+        var current = source;
+        if (current != null) current.invalidate();
+    }
+
+    private PagingSource<Integer, NoteSummary> makeSource() {
+        var search = this.search;
+        source = search.isEmpty() ? repo.getSummariesLocal() : repo.searchLocal(search);
+        return source;
+    }
+
+    @Override
+    protected void onCleared() {
+        handler.removeCallbacks(applySearch);
+    }
+
     /**
      * Open a note in the database. If the note does not exist, create it.
      * @param title the title of the note
-     * @return a LiveData object that will be updated when this note changes.
+     * @return a LiveData object that will be updated when this note changes. It holds null until
+     *         the note has been created.
      */
     public LiveData<Note> getOrCreateNote(String title) {
-        if (!repo.existsLocal(title)) {
-            var note = new Note(title, "");
-            repo.upsertLocal(note, false);
-        }
+        return repo.getOrCreateLocal(title);
+    }
 
-        return repo.getLocal(title);
+    /** Catch up on notes that changed on other devices while we weren't looking. */
+    public void sync() {
+        repo.syncAll();
     }
 
-    public void delete(Note note) {
-        repo.deleteLocal(note);
+    public void delete(String title) {
+        repo.deleteLocal(title);
     }
 }
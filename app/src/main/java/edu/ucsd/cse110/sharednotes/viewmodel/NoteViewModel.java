@@ -6,9 +6,13 @@ import androidx.annotation.NonNull;
 import androidx.lifecycle.AndroidViewModel;
 import androidx.lifecycle.LiveData;
 
+import java.util.List;
+
 import edu.ucsd.cse110.sharednotes.model.Note;
-import edu.ucsd.cse110.sharednotes.model.NoteDatabase;
+import edu.ucsd.cse110.sharednotes.model.NoteCoEditor;
+import edu.ucsd.cse110.sharednotes.model.NoteConflict;
 import edu.ucsd.cse110.sharednotes.model.NoteRepository;
+import edu.ucsd.cse110.sharednotes.model.NoteRevision;
 
 public class NoteViewModel extends AndroidViewModel {
     private LiveData<Note> note;
@@ -17,9 +21,7 @@ public class NoteViewModel extends AndroidViewModel {
     public NoteViewModel(@NonNull Application application) {
         super(application);
         var context = application.getApplicationContext();
-        var db = NoteDatabase.provide(context);
-        var dao = db.getDao();
-        this.repo = new NoteRepository(dao);
+        this.repo = NoteRepository.provide(context);
     }
 
     public LiveData<Note> getNote(String title) {
@@ -34,6 +36,31 @@ public class NoteViewModel extends AndroidViewModel {
         return note;
     }
 
+    /** The version of the note that was edited elsewhere at the same time as ours, or null. */
+    public LiveData<NoteConflict> getConflict(String title) {
+        return repo.getConflict(title);
+    }
+
+    /** Keep {@code content} as the note, in place of both conflicting versions. */
+    public void resolveConflict(String title, String content) {
+        repo.resolveConflict(title, content);
+    }
+
+    /** Every version of the note that's been kept, newest first. */
+    public LiveData<List<NoteRevision.Summary>> getHistory(String title) {
+        return repo.getHistoryLocal(title);
+    }
+
+    /** The note's content as it was at {@code version}. */
+    public LiveData<String> getRevision(String title, long version) {
+        return repo.getRevisionLocal(title, version);
+    }
+
+    /** Start co-editing the note with everyone else who has it open, see {@link NoteCoEditor}. */
+    public NoteCoEditor.Session coEdit(Note note, NoteCoEditor.Listener listener) {
+        return NoteCoEditor.provide(getApplication()).open(note, listener);
+    }
+
     public void save(Note note) {
         // TODO: try to upload the note to the server.
         //repo.upsertLocal(note);
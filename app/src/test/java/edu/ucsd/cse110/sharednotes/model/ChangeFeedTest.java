@@ -0,0 +1,69 @@
+package edu.ucsd.cse110.sharednotes.model;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class ChangeFeedTest {
+    private static String feed(int notes, String cursor, boolean more) {
+        var json = new StringBuilder("{\"notes\":[");
+        for (int i = 0; i < notes; i++) {
+            if (i > 0) json.append(',');
+            json.append("{\"title\":\"note ").append(i)
+                    .append("\",\"content\":\"content ").append(i)
+                    .append("\",\"version\":").append(i + 1)
+                    .append(",\"vector\":{\"server\":").append(i + 1).append("}}");
+        }
+        json.append("],\"cursor\":\"").append(cursor).append("\",\"more\":").append(more).append('}');
+        return json.toString();
+    }
+
+    @Test
+    public void thousandsOfNotesArriveInBatches() throws IOException {
+        var batches = new ArrayList<List<Note>>();
+        var page = ChangeFeed.read(new StringReader(feed(5000 + 1, "c42", true)), 500, batches::add);
+
+        assertEquals("c42", page.cursor);
+        assertTrue(page.more);
+        assertEquals(11, batches.size());
+        for (int i = 0; i < 10; i++) assertEquals(500, batches.get(i).size());
+        assertEquals(1, batches.get(10).size());
+
+        // In the order the server sent them, with everything parsed.
+        var last = batches.get(10).get(0);
+        assertEquals("note 5000", last.title);
+        assertEquals("content 5000", last.content);
+        assertEquals(5001, last.version);
+        assertEquals(5001, last.vector.get("server"));
+        assertEquals("note 500", batches.get(1).get(0).title);
+    }
+
+    @Test
+    public void nothingChangedIsJustTheCursor() throws IOException {
+        var batches = new ArrayList<List<Note>>();
+        var page = ChangeFeed.read(new StringReader(feed(0, "c42", false)), 500, batches::add);
+
+        assertTrue(batches.isEmpty());
+        assertEquals("c42", page.cursor);
+        assertFalse(page.more);
+    }
+
+    @Test
+    public void unknownFieldsAndMissingCursorAreFine() throws IOException {
+        var json = "{\"server_time\":{\"ms\":1},\"more\":null,"
+                + "\"notes\":[{\"title\":\"a\",\"version\":\"3\",\"color\":\"red\"}]}";
+        var batches = new ArrayList<List<Note>>();
+        var page = ChangeFeed.read(new StringReader(json), 500, batches::add);
+
+        assertNull(page.cursor);
+        assertFalse(page.more);
+        assertEquals(1, batches.size());
+        assertEquals("a", batches.get(0).get(0).title);
+        assertEquals(3, batches.get(0).get(0).version);
+    }
+}
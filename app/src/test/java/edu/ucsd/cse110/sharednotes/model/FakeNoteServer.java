@@ -0,0 +1,237 @@
+package edu.ucsd.cse110.sharednotes.model;
+
+import androidx.annotation.NonNull;
+
+import com.google.gson.JsonParser;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import okhttp3.Interceptor;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okio.Buffer;
+import okio.BufferedSource;
+import okio.ForwardingSource;
+import okio.Okio;
+
+/**
+ * Stands in for the notes server, as an interceptor that answers every request itself, so tests
+ * can use a real {@link NoteAPI} without a network (MockWebServer isn't one of our test
+ * dependencies). It serves notes with ETags, answers If-None-Match with 304s, and serves the
+ * changes feed, unless told to act like a server that doesn't. Notes can be uploaded whole (PUT)
+ * or as deltas (PATCH), and pulled as deltas against a version the client says it has, unless
+ * told not to do deltas. It also counts what went over the "wire": requests, bytes each way, and
+ * how many response bodies were actually read.
+ */
+class FakeNoteServer implements Interceptor {
+    private static final MediaType JSON = MediaType.get("application/json; charset=utf-8");
+    private static final String NOTES = "/notes/";
+
+    private static final int HTTP_IM_USED = 226;
+
+    private final Map<String, Note> notes = new ConcurrentHashMap<>();
+    // Every version of every note, to make deltas against.
+    private final Map<String, Map<Long, String>> versions = new ConcurrentHashMap<>();
+    private volatile boolean hasFeed = true;
+    private volatile boolean hasDeltas = true;
+    private volatile boolean hasEtags = true;
+    private volatile boolean conditional = true;
+    private volatile String cursor = "c0";
+
+    final AtomicInteger requests = new AtomicInteger();
+    final AtomicLong bytesUp = new AtomicLong();
+    final AtomicLong bytesDown = new AtomicLong();
+    final AtomicInteger bodiesRead = new AtomicInteger();
+
+    /** A client that only ever talks to this server. */
+    OkHttpClient client() {
+        return new OkHttpClient.Builder().addInterceptor(this).build();
+    }
+
+    /** Put a note on the server, as if someone else saved it. */
+    void put(Note note) {
+        notes.put(note.title, note);
+        versions.computeIfAbsent(note.title, title -> new ConcurrentHashMap<>()).put(note.version, note.content);
+        cursor = "c" + (Integer.parseInt(cursor.substring(1)) + 1);
+    }
+
+    /** The server's copy of a note, or null. */
+    Note get(String title) {
+        return notes.get(title);
+    }
+
+    /** Whether to serve the changes feed, or 404 like a server that doesn't have one. */
+    void setHasFeed(boolean hasFeed) {
+        this.hasFeed = hasFeed;
+    }
+
+    /** Whether to take PATCHes and send deltas, or act like a server that only does whole notes. */
+    void setHasDeltas(boolean hasDeltas) {
+        this.hasDeltas = hasDeltas;
+    }
+
+    /** Whether to send ETags at all. */
+    void setHasEtags(boolean hasEtags) {
+        this.hasEtags = hasEtags;
+    }
+
+    /** Whether to answer If-None-Match with a 304, or ignore it and send the note anyway. */
+    void setConditional(boolean conditional) {
+        this.conditional = conditional;
+    }
+
+    void resetCounts() {
+        requests.set(0);
+        bytesUp.set(0);
+        bytesDown.set(0);
+        bodiesRead.set(0);
+    }
+
+    /** The ETag of a version of a note. */
+    static String etag(long version) {
+        return "\"v" + version + "\"";
+    }
+
+    @NonNull
+    @Override
+    public Response intercept(@NonNull Chain chain) throws IOException {
+        var request = chain.request();
+        requests.incrementAndGet();
+        var path = request.url().encodedPath();
+        var query = request.url().encodedQuery();
+        var body = request.body() == null ? null : readBody(request.body());
+        // What an HTTP/1.1 request line, headers and body would take.
+        bytesUp.addAndGet(request.method().length() + path.length()
+                + (query == null ? 0 : query.length() + 1) + 12 + request.headers().byteCount()
+                + (body == null ? 0 : body.getBytes().length));
+
+        var response = new Response.Builder()
+                .request(request)
+                .protocol(Protocol.HTTP_1_1);
+
+        if (path.equals(NOTES + "changes")) {
+            if (!hasFeed) return send(response.code(404).message("Not Found"), null);
+            var since = request.url().queryParameter("since");
+            var page = new StringBuilder("{\"notes\":[");
+            if (!cursor.equals(since)) {
+                var first = true;
+                for (var note : notes.values()) {
+                    if (!first) page.append(',');
+                    page.append(note.toJSON());
+                    first = false;
+                }
+            }
+            page.append("],\"cursor\":\"").append(cursor).append("\",\"more\":false}");
+            return send(response.code(200).message("OK"), page.toString());
+        }
+
+        var title = request.url().pathSegments().get(1);
+        if (request.method().equals("PUT")) {
+            put(Note.fromJSON(body));
+            return send(response.code(200).message("OK"), null);
+        }
+        if (request.method().equals("PATCH")) {
+            if (!hasDeltas) return send(response.code(405).message("Method Not Allowed"), null);
+            var json = JsonParser.parseString(body).getAsJsonObject();
+            var base = versions.getOrDefault(title, Map.of()).get(json.get("base_version").getAsLong());
+            if (base == null) return send(response.code(409).message("Conflict"), null);
+            var delta = new NoteDelta(
+                    json.get("start").getAsInt(),
+                    json.get("delete").getAsInt(),
+                    json.get("insert").getAsString()
+            );
+            put(new Note(title, delta.apply(base), json.get("version").getAsLong()));
+            return send(response.code(200).message("OK"), null);
+        }
+
+        var note = notes.get(title);
+        if (note == null) return send(response.code(404).message("Not Found"), null);
+
+        var etag = etag(note.version);
+        if (hasEtags) response.header("ETag", etag);
+        if (conditional && etag.equals(request.header("If-None-Match"))) {
+            return send(response.code(304).message("Not Modified"), null);
+        }
+
+        // The client has a version we can send a delta against.
+        var baseVersion = request.header("X-Base-Version");
+        if (hasDeltas && "splice".equals(request.header("A-IM")) && baseVersion != null) {
+            var base = versions.get(title).get(Long.parseLong(baseVersion));
+            if (base != null) {
+                var delta = NoteDelta.between(base, note.content);
+                var json = JsonParser.parseString(note.toJSON()).getAsJsonObject();
+                json.remove("content");
+                json.addProperty("base_version", Long.parseLong(baseVersion));
+                json.addProperty("start", delta.start);
+                json.addProperty("delete", delta.deleteCount);
+                json.addProperty("insert", delta.insert);
+                return send(response.code(HTTP_IM_USED).message("IM Used"), json.toString());
+            }
+        }
+        return send(response.code(200).message("OK"), note.toJSON());
+    }
+
+    private static String readBody(RequestBody body) throws IOException {
+        var buffer = new Buffer();
+        body.writeTo(buffer);
+        return buffer.readUtf8();
+    }
+
+    private Response send(Response.Builder builder, String body) {
+        var bytes = body == null ? new byte[0] : body.getBytes();
+        builder.header("Content-Length", Integer.toString(bytes.length));
+        var response = builder.body(new CountingBody(bytes)).build();
+        bytesDown.addAndGet(17 + response.message().length() + response.headers().byteCount()
+                + bytes.length);
+        return response;
+    }
+
+    /** A body that notes it was read, as soon as anyone starts reading it. */
+    private class CountingBody extends ResponseBody {
+        private final byte[] bytes;
+        private BufferedSource source;
+
+        CountingBody(byte[] bytes) {
+            this.bytes = bytes;
+        }
+
+        @Override
+        public MediaType contentType() {
+            return JSON;
+        }
+
+        @Override
+        public long contentLength() {
+            return bytes.length;
+        }
+
+        @NonNull
+        @Override
+        public synchronized BufferedSource source() {
+            if (source == null) {
+                var counted = new ForwardingSource(new Buffer().write(bytes)) {
+                    private boolean read = false;
+
+                    @Override
+                    public long read(@NonNull Buffer sink, long byteCount) throws IOException {
+                        if (!read) {
+                            read = true;
+                            bodiesRead.incrementAndGet();
+                        }
+                        return super.read(sink, byteCount);
+                    }
+                };
+                source = Okio.buffer(counted);
+            }
+            return source;
+        }
+    }
+}
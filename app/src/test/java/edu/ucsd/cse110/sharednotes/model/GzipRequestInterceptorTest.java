@@ -0,0 +1,155 @@
+package edu.ucsd.cse110.sharednotes.model;
+
+import androidx.annotation.NonNull;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import okhttp3.Interceptor;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okio.Buffer;
+import okio.GzipSource;
+import okio.Okio;
+
+import static org.junit.Assert.*;
+
+public class GzipRequestInterceptorTest {
+    private static final MediaType JSON = MediaType.get("application/json; charset=utf-8");
+    private static final int MIN_BYTES = 1024;
+
+    /** Stands in for the server: keeps what it was sent, and can turn gzip down. */
+    private static class Server implements Interceptor {
+        final List<Request> requests = new ArrayList<>();
+        final List<byte[]> bodies = new ArrayList<>();
+        boolean acceptsGzip = true;
+
+        @NonNull
+        @Override
+        public Response intercept(@NonNull Chain chain) throws IOException {
+            var request = chain.request();
+            var buffer = new Buffer();
+            request.body().writeTo(buffer);
+            requests.add(request);
+            bodies.add(buffer.readByteArray());
+
+            var gzipped = "gzip".equals(request.header("Content-Encoding"));
+            var code = gzipped && !acceptsGzip ? 415 : 200;
+            return new Response.Builder()
+                    .request(request)
+                    .protocol(Protocol.HTTP_1_1)
+                    .code(code)
+                    .message(code == 200 ? "OK" : "Unsupported Media Type")
+                    .body(ResponseBody.create("", JSON))
+                    .build();
+        }
+    }
+
+    private final Server server = new Server();
+    private final OkHttpClient client = new OkHttpClient.Builder()
+            .addInterceptor(new GzipRequestInterceptor(MIN_BYTES))
+            .addInterceptor(server)
+            .build();
+
+    private int put(String body) throws IOException {
+        var request = new Request.Builder()
+                .url("https://example.com/notes/a")
+                .put(RequestBody.create(body, JSON))
+                .build();
+        try (var response = client.newCall(request).execute()) {
+            return response.code();
+        }
+    }
+
+    private static String gunzip(byte[] bytes) throws IOException {
+        try (var source = Okio.buffer(new GzipSource(new Buffer().write(bytes)))) {
+            return source.readUtf8();
+        }
+    }
+
+    @Test
+    public void smallBodiesAreSentAsIs() throws IOException {
+        put("{\"content\":\"eggs\"}");
+        assertNull(server.requests.get(0).header("Content-Encoding"));
+        assertEquals("{\"content\":\"eggs\"}", new String(server.bodies.get(0)));
+    }
+
+    @Test
+    public void largeBodiesAreGzipped() throws IOException {
+        var body = new Note("a", note(new Random(0), 20_000), 1).toJSON();
+        assertEquals(200, put(body));
+
+        var request = server.requests.get(0);
+        assertEquals("gzip", request.header("Content-Encoding"));
+        // Sent with a length, not chunked.
+        assertEquals(server.bodies.get(0).length, request.body().contentLength());
+        assertEquals(body, gunzip(server.bodies.get(0)));
+    }
+
+    @Test
+    public void turnedDownOnceMeansNeverAgain() throws IOException {
+        server.acceptsGzip = false;
+        var body = new Note("a", note(new Random(0), 20_000), 1).toJSON();
+
+        // Resent as-is right away...
+        assertEquals(200, put(body));
+        assertEquals(2, server.requests.size());
+        assertEquals(body, new String(server.bodies.get(1)));
+
+        // ...and not even tried after that.
+        assertEquals(200, put(body));
+        assertEquals(3, server.requests.size());
+        assertNull(server.requests.get(2).header("Content-Encoding"));
+    }
+
+    @Test
+    public void compressionBenchmark() throws IOException {
+        var random = new Random(0);
+        for (var size : new int[]{1_000, 10_000, 100_000}) {
+            var body = new Note("a", note(random, size), 1).toJSON();
+            // Warm up first.
+            for (int i = 0; i < 20; i++) put(body);
+
+            var runs = 50;
+            server.requests.clear();
+            server.bodies.clear();
+            var start = System.nanoTime();
+            for (int i = 0; i < runs; i++) put(body);
+            var perUpload = (System.nanoTime() - start) / runs;
+
+            var sent = server.bodies.get(0).length;
+            System.out.printf(
+                    "Uploading a %d B note: %d B sent (%.0f%%), %.2f ms each including gzip%n",
+                    body.length(), sent, 100.0 * sent / body.length(), perUpload / 1e6
+            );
+            // Notes are text: gzip should at least halve them.
+            assertTrue(sent < body.length() / 2);
+        }
+    }
+
+    /** Note-like text: lines of words, roughly as people write them. */
+    private static String note(Random random, int length) {
+        var words = new String[]{
+                "the", "a", "note", "meeting", "buy", "milk", "call", "tomorrow", "project",
+                "ideas", "remember", "to", "and", "for", "list", "draft", "review", "shared",
+                "with", "team", "before", "friday", "update", "notes", "check", "plan"
+        };
+        var text = new StringBuilder(length + 32);
+        while (text.length() < length) {
+            for (int i = 3 + random.nextInt(10); i > 0; i--) {
+                text.append(words[random.nextInt(words.length)]).append(' ');
+            }
+            text.append(random.nextInt(100)).append('\n');
+        }
+        return text.substring(0, length);
+    }
+}
@@ -0,0 +1,229 @@
+package edu.ucsd.cse110.sharednotes.model;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class NoteAPITest {
+    private FakeNoteServer server;
+    private NoteAPI api;
+
+    @Before
+    public void setUp() {
+        server = new FakeNoteServer();
+        api = new NoteAPI(server.client());
+    }
+
+    @Test
+    public void changedNotesArePulled() {
+        server.put(new Note("a", "one", 1));
+        assertEquals("one", api.pullFromRemote("a").content);
+
+        server.put(new Note("a", "two", 2));
+        var note = api.pullFromRemote("a");
+        assertEquals("two", note.content);
+        assertEquals(2, note.version);
+    }
+
+    @Test
+    public void notModifiedIsNotRead() {
+        server.put(new Note("a", "one", 1));
+        api.pullFromRemote("a");
+
+        server.resetCounts();
+        assertNull(api.pullFromRemote("a"));
+        assertEquals(0, server.bodiesRead.get());
+        assertEquals(1, api.unchangedPullCount());
+    }
+
+    @Test
+    public void sameEtagIsNotReadEvenIfSentAgain() {
+        server.put(new Note("a", "one", 1));
+        api.pullFromRemote("a");
+
+        server.setConditional(false);
+        server.resetCounts();
+        assertNull(api.pullFromRemote("a"));
+        assertEquals(1, server.requests.get());
+        assertEquals(0, server.bodiesRead.get());
+        assertEquals(1, api.unchangedPullCount());
+    }
+
+    @Test
+    public void sameVersionIsUnchangedWithoutEtags() {
+        server.setHasEtags(false);
+        server.put(new Note("a", "one", 1));
+        api.pullFromRemote("a");
+
+        assertNull(api.pullFromRemote("a"));
+        assertEquals(1, api.unchangedPullCount());
+    }
+
+    @Test
+    public void forgottenNotesArePulledInFull() {
+        server.put(new Note("a", "one", 1));
+        api.pullFromRemote("a");
+
+        // e.g. deleted here, then made again.
+        api.forget("a");
+        server.resetCounts();
+        var note = api.pullFromRemote("a");
+        assertEquals("one", note.content);
+        assertEquals(1, server.bodiesRead.get());
+    }
+
+    @Test
+    public void batchIsOneRequestPerTitle() {
+        // What a poller tick costs with 1, 10 and 100 notes open.
+        for (var count : new int[]{1, 10, 100}) {
+            var titles = new ArrayList<String>();
+            for (int i = 0; i < count; i++) {
+                var title = count + " note " + i;
+                server.put(new Note(title, "content", 1));
+                titles.add(title);
+            }
+
+            server.resetCounts();
+            assertEquals(count, api.pullFromRemote(titles).size());
+            assertEquals(count, server.requests.get());
+
+            // Nothing changed since: the same requests, all answered with 304s.
+            server.resetCounts();
+            assertTrue(api.pullFromRemote(titles).isEmpty());
+            assertEquals(count, server.requests.get());
+            assertEquals(0, server.bodiesRead.get());
+        }
+    }
+
+    @Test
+    public void batchOnlyHasWhatChanged() {
+        var titles = new ArrayList<String>();
+        for (int i = 0; i < 10; i++) {
+            server.put(new Note("note " + i, "content", 1));
+            titles.add("note " + i);
+        }
+        api.pullFromRemote(titles);
+
+        server.put(new Note("note 3", "changed", 2));
+        var pulled = api.pullFromRemote(titles);
+        assertEquals(1, pulled.size());
+        assertEquals("changed", pulled.get("note 3").content);
+    }
+
+    @Test
+    public void batchSkipsFailures() {
+        server.put(new Note("a", "one", 1));
+        var pulled = api.pullFromRemote(List.of("a", "missing"));
+        assertEquals(1, pulled.size());
+        assertEquals(2, server.requests.get());
+    }
+
+    @Test
+    public void missingChangesFeedIsOnlyAskedForOnce() {
+        server.setHasFeed(false);
+        for (int i = 0; i < 5; i++) {
+            assertNull(api.pullChanges(null, batch -> fail()));
+        }
+        assertEquals(1, server.requests.get());
+    }
+
+    @Test
+    public void resyncBenchmark() {
+        // A cold start with every note unchanged since last time: one conditional GET per note,
+        // against one request for the changes feed.
+        var titles = new ArrayList<String>();
+        for (int i = 0; i < 3000; i++) {
+            var title = "note " + i;
+            server.put(new Note(title, "content of note " + i, i + 1));
+            titles.add(title);
+        }
+        assertEquals(titles.size(), api.pullFromRemote(titles).size());
+        var cursor = api.pullChanges(null, batch -> {}).cursor;
+
+        server.resetCounts();
+        var start = System.nanoTime();
+        assertTrue(api.pullFromRemote(titles).isEmpty());
+        var perTitle = System.nanoTime() - start;
+        var perTitleRequests = server.requests.get();
+        var perTitleUp = server.bytesUp.get();
+        var perTitleDown = server.bytesDown.get();
+        assertEquals(titles.size(), perTitleRequests);
+        assertEquals(0, server.bodiesRead.get());
+
+        server.resetCounts();
+        var changed = new ArrayList<Note>();
+        start = System.nanoTime();
+        var page = api.pullChanges(cursor, changed::addAll);
+        var feed = System.nanoTime() - start;
+        assertEquals(cursor, page.cursor);
+        assertTrue(changed.isEmpty());
+        assertEquals(1, server.requests.get());
+
+        System.out.printf(
+                "Resync of %d unchanged notes: per-title GETs %d requests, %d B up, %d B down, %.1f ms;"
+                        + " changes feed %d request, %d B up, %d B down, %.2f ms%n",
+                titles.size(), perTitleRequests, perTitleUp, perTitleDown, perTitle / 1e6,
+                server.requests.get(), server.bytesUp.get(), server.bytesDown.get(), feed / 1e6
+        );
+        assertTrue(server.bytesUp.get() + server.bytesDown.get() < (perTitleUp + perTitleDown) / 100);
+    }
+
+    @Test
+    public void deltaBenchmark() {
+        // One small edit in the middle of notes from 1 KB to 1 MB, pulled and pushed as a delta,
+        // against the same in full from a server that doesn't do deltas.
+        for (var size : new int[]{1_000, 10_000, 100_000, 1_000_000}) {
+            var content = "a line of a shared note\n".repeat(size / 24 + 1).substring(0, size);
+            var theirs = content.substring(0, size / 2) + "their edit" + content.substring(size / 2 + 4);
+            var ours = theirs.substring(0, size / 4) + "our edit" + theirs.substring(size / 4 + 4);
+
+            var down = new long[2];
+            var up = new long[2];
+            var pullNs = new long[2];
+            var pushNs = new long[2];
+            for (int full = 0; full < 2; full++) {
+                var server = new FakeNoteServer();
+                server.setHasDeltas(full == 0);
+                var api = new NoteAPI(server.client());
+                server.put(new Note("a", content, 1));
+                api.pullFromRemote("a");
+
+                // Someone else edits it, and we pull their edit.
+                server.put(new Note("a", theirs, 2));
+                server.resetCounts();
+                var start = System.nanoTime();
+                var pulled = api.pullFromRemote("a");
+                pullNs[full] = System.nanoTime() - start;
+                down[full] = server.bytesDown.get() + server.bytesUp.get();
+                assertEquals(theirs, pulled.content);
+
+                // Then we edit it, and push ours.
+                var note = new Note("a", ours, 3);
+                var base = full == 0 ? NoteBase.of(pulled) : null;
+                server.resetCounts();
+                start = System.nanoTime();
+                assertEquals(200, api.pushToRemote(note, base));
+                pushNs[full] = System.nanoTime() - start;
+                up[full] = server.bytesDown.get() + server.bytesUp.get();
+                assertEquals(1, server.requests.get());
+                assertEquals(ours, server.get("a").content);
+            }
+
+            System.out.printf(
+                    "A %d B note: pull %d B as a delta (%.2f ms), %d B in full (%.2f ms);"
+                            + " push %d B as a delta (%.2f ms), %d B in full (%.2f ms)%n",
+                    size, down[0], pullNs[0] / 1e6, down[1], pullNs[1] / 1e6,
+                    up[0], pushNs[0] / 1e6, up[1], pushNs[1] / 1e6
+            );
+            // A delta costs about the same whatever the size of the note.
+            assertTrue(down[0] < 1024);
+            assertTrue(up[0] < 1024);
+            assertTrue(down[1] > size);
+            assertTrue(up[1] > size);
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package edu.ucsd.cse110.sharednotes.model;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class NoteCacheTest {
+    // Cached values are StringBuilders, so they can change size like a note does.
+    private static NoteCache<StringBuilder> cache(long maxBytes) {
+        return new NoteCache<>(maxBytes, StringBuilder::length);
+    }
+
+    private static StringBuilder load(String title) {
+        return new StringBuilder(title.substring(0, 1).repeat(10));
+    }
+
+    @Test
+    public void sameTitleGetsTheSameValue() {
+        var cache = cache(100);
+        var first = cache.get("a", NoteCacheTest::load);
+        assertSame(first, cache.get("a", NoteCacheTest::load));
+
+        var stats = cache.stats();
+        assertEquals(1, stats.hits);
+        assertEquals(1, stats.misses);
+        assertEquals(0.5, stats.hitRate(), 0);
+        assertEquals(10, stats.residentBytes);
+    }
+
+    @Test
+    public void leastRecentlyUsedIsEvictedFirst() {
+        var cache = cache(30);
+        var a = cache.get("a", NoteCacheTest::load);
+        cache.get("b", NoteCacheTest::load);
+        cache.get("c", NoteCacheTest::load);
+        // Using "a" again makes "b" the least recently used.
+        cache.get("a", NoteCacheTest::load);
+        cache.get("d", NoteCacheTest::load);
+
+        var stats = cache.stats();
+        assertEquals(1, stats.evictions);
+        assertEquals(3, stats.size);
+        assertEquals(30, stats.residentBytes);
+        assertSame(a, cache.get("a", NoteCacheTest::load));
+        assertEquals(4, cache.stats().misses);
+        cache.get("b", NoteCacheTest::load);
+        assertEquals(5, cache.stats().misses);
+    }
+
+    @Test
+    public void growingValuePushesOthersOut() {
+        var cache = cache(30);
+        var a = cache.get("a", NoteCacheTest::load);
+        cache.get("b", NoteCacheTest::load);
+        cache.get("c", NoteCacheTest::load);
+
+        a.append("a".repeat(15));
+        cache.reweigh("a");
+
+        var stats = cache.stats();
+        assertEquals(2, stats.evictions);
+        assertEquals(1, stats.size);
+        assertEquals(25, stats.residentBytes);
+    }
+
+    @Test
+    public void valueBiggerThanTheCacheStays() {
+        var cache = cache(30);
+        cache.get("a", NoteCacheTest::load);
+        var big = cache.get("big", title -> new StringBuilder("x".repeat(100)));
+
+        assertSame(big, cache.get("big", NoteCacheTest::load));
+        assertEquals(1, cache.stats().size);
+        assertEquals(100, cache.stats().residentBytes);
+    }
+
+    @Test
+    public void invalidateOnlyDropsMatchingValues() {
+        var cache = cache(100);
+        var a = cache.get("a", NoteCacheTest::load);
+        cache.get("b", NoteCacheTest::load);
+        cache.get("c", NoteCacheTest::load);
+
+        // Say "a" is in use, and so isn't stale.
+        cache.invalidate("a", value -> value != a);
+        cache.invalidate("b", value -> true);
+        assertEquals(2, cache.stats().size);
+
+        cache.invalidateIf(value -> value != a);
+        var stats = cache.stats();
+        assertEquals(1, stats.size);
+        assertEquals(10, stats.residentBytes);
+        assertEquals(0, stats.evictions);
+        assertSame(a, cache.get("a", NoteCacheTest::load));
+    }
+
+    @Test
+    public void putReplacesAndCountsTowardsTheBound() {
+        var cache = cache(25);
+        assertNull(cache.getIfPresent("a"));
+        cache.put("a", new StringBuilder("a".repeat(10)));
+        cache.put("b", new StringBuilder("b".repeat(10)));
+        cache.put("a", new StringBuilder("a".repeat(5)));
+        assertEquals(15, cache.stats().residentBytes);
+        assertEquals("aaaaa", cache.getIfPresent("a").toString());
+
+        // "b" is the least recently used now.
+        cache.put("c", new StringBuilder("c".repeat(15)));
+        assertNull(cache.getIfPresent("b"));
+        assertEquals(20, cache.stats().residentBytes);
+        assertEquals(1, cache.stats().evictions);
+    }
+
+    @Test
+    public void titlesAreLeastRecentlyUsedFirst() {
+        var cache = cache(100);
+        cache.get("a", NoteCacheTest::load);
+        cache.get("b", NoteCacheTest::load);
+        cache.get("a", NoteCacheTest::load);
+        assertEquals(List.of("b", "a"), cache.titles());
+        // Listing them doesn't count as using them.
+        assertEquals(List.of("b", "a"), cache.titles());
+    }
+}
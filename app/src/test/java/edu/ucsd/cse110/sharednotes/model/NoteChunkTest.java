@@ -0,0 +1,70 @@
+package edu.ucsd.cse110.sharednotes.model;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class NoteChunkTest {
+    /** Text that compresses about as well as real notes do, not a run of one letter. */
+    private static String text(int length) {
+        var words = new String[]{"note", "shared", "the", "server", "\u00e9dition", "\u7248\u672c", "merge", "a", "line\n"};
+        var random = new Random(length);
+        var text = new StringBuilder(length + 10);
+        while (text.length() < length) text.append(words[random.nextInt(words.length)]).append(' ');
+        text.setLength(length);
+        return text.toString();
+    }
+
+    @Test
+    public void shortNotesAreStoredWhole() {
+        var content = text(NoteChunk.MAX_INLINE);
+        assertTrue(NoteChunk.split(NoteChunk.NOTES, "a", content).isEmpty());
+        assertSame(content, NoteChunk.head(content));
+    }
+
+    @Test
+    public void longNotesComeBackTheSame() {
+        for (var length : new int[]{NoteChunk.MAX_INLINE + 1, 1_000_000, 10_000_000}) {
+            var content = text(length);
+            var chunks = NoteChunk.split(NoteChunk.NOTES, "a", content);
+
+            assertFalse(chunks.isEmpty());
+            for (int i = 0; i < chunks.size(); i++) {
+                assertEquals(NoteChunk.NOTES, chunks.get(i).store);
+                assertEquals("a", chunks.get(i).title);
+                assertEquals(i, chunks.get(i).idx);
+                assertTrue(chunks.get(i).data.length <= NoteChunk.CHUNK_BYTES);
+            }
+            assertEquals(content, NoteChunk.join(chunks));
+        }
+    }
+
+    @Test
+    public void bigNotesAreSplitAndCompressed() {
+        var content = text(10_000_000);
+        var chunks = NoteChunk.split(NoteChunk.NOTES, "a", content);
+        assertTrue(chunks.size() > 1);
+
+        long stored = 0;
+        for (var chunk : chunks) stored += chunk.data.length;
+        // Well under the UTF-8 bytes, let alone what the text takes up as a Java string.
+        assertTrue(stored < content.length() / 2);
+    }
+
+    @Test
+    public void headNeverSplitsASurrogatePair() {
+        var content = "x".repeat(NoteChunk.MAX_INLINE - 1) + "\uD83D\uDE00" + "y";
+        var head = NoteChunk.head(content);
+        assertEquals(NoteChunk.MAX_INLINE - 1, head.length());
+        assertTrue(content.startsWith(head));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void missingChunksAreNoticed() {
+        var chunks = NoteChunk.split(NoteChunk.NOTES, "a", text(10_000_000));
+        chunks.remove(chunks.size() - 1);
+        NoteChunk.join(chunks);
+    }
+}
@@ -0,0 +1,98 @@
+package edu.ucsd.cse110.sharednotes.model;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class NoteDeltaTest {
+    private static void assertRoundTrip(String before, String after) {
+        var delta = NoteDelta.between(before, after);
+        assertEquals(after, delta.apply(before));
+    }
+
+    @Test
+    public void typingAtTheEndIsJustTheNewText() {
+        var delta = NoteDelta.between("milk", "milk and eggs");
+        assertEquals(4, delta.start);
+        assertEquals(0, delta.deleteCount);
+        assertEquals(" and eggs", delta.insert);
+    }
+
+    @Test
+    public void editInTheMiddleOnlyCoversTheChange() {
+        var delta = NoteDelta.between("milk, eggs, bread", "milk, cheese, bread");
+        assertEquals(6, delta.start);
+        assertEquals(4, delta.deleteCount);
+        assertEquals("cheese", delta.insert);
+        assertEquals("milk, cheese, bread", delta.apply("milk, eggs, bread"));
+    }
+
+    @Test
+    public void sameContentIsEmpty() {
+        assertTrue(NoteDelta.between("same", "same").isEmpty());
+        assertTrue(NoteDelta.between("", "").isEmpty());
+    }
+
+    @Test
+    public void repeatedTextDoesNotOverlap() {
+        // The common prefix and suffix would overlap here if they weren't kept apart.
+        assertRoundTrip("aaa", "aaaa");
+        assertRoundTrip("aaaa", "aa");
+        assertRoundTrip("abab", "ab");
+        assertRoundTrip("", "abc");
+        assertRoundTrip("abc", "");
+    }
+
+    @Test
+    public void surrogatePairsAreNeverSplit() {
+        // U+1F600, U+1F601 and U+1F400 share their high surrogate, U+1F600 and U+1FA00 their low one.
+        var grinning = "\uD83D\uDE00";
+        var beaming = "\uD83D\uDE01";
+        var rat = "\uD83D\uDC00";
+        var chess = "\uD83E\uDE00";
+
+        for (var pair : new String[][]{
+                {"a" + grinning + "b", "a" + beaming + "b"},
+                {"a" + grinning, "a" + beaming},
+                {grinning + "b", chess + "b"},
+                {"x" + rat + "y", "x" + grinning + "y"},
+                {grinning, beaming + grinning},
+        }) {
+            var delta = NoteDelta.between(pair[0], pair[1]);
+            assertEquals(pair[1], delta.apply(pair[0]));
+            // A splice at either end of a pair keeps both halves of it on the same side.
+            assertFalse(delta.start > 0 && Character.isHighSurrogate(pair[0].charAt(delta.start - 1)));
+            var end = delta.start + delta.deleteCount;
+            assertFalse(end < pair[0].length() && Character.isLowSurrogate(pair[0].charAt(end)));
+            if (!delta.insert.isEmpty()) {
+                assertFalse(Character.isLowSurrogate(delta.insert.charAt(0)));
+                assertFalse(Character.isHighSurrogate(delta.insert.charAt(delta.insert.length() - 1)));
+            }
+        }
+    }
+
+    @Test
+    public void randomEditsRoundTrip() {
+        var random = new Random(7);
+        var alphabet = new String[]{"a", "b", " ", "\n", "\u00e9", "\uD83D\uDE00", "\uD83D\uDE01"};
+        for (int i = 0; i < 1000; i++) {
+            var before = randomText(random, alphabet);
+            var after = randomText(random, alphabet);
+            assertRoundTrip(before, after);
+        }
+    }
+
+    private static String randomText(Random random, String[] alphabet) {
+        var text = new StringBuilder();
+        var length = random.nextInt(8);
+        for (int i = 0; i < length; i++) text.append(alphabet[random.nextInt(alphabet.length)]);
+        return text.toString();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void deltaThatDoesNotFitIsRejected() {
+        new NoteDelta(3, 5, "x").apply("short");
+    }
+}
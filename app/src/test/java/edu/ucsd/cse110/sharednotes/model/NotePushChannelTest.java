@@ -0,0 +1,267 @@
+package edu.ucsd.cse110.sharednotes.model;
+
+import androidx.annotation.NonNull;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.Request;
+import okhttp3.WebSocket;
+import okhttp3.WebSocketListener;
+import okio.ByteString;
+
+import static org.junit.Assert.*;
+
+public class NotePushChannelTest {
+    private final List<FakeSocket> sockets = new ArrayList<>();
+    private final List<Long> delays = new ArrayList<>();
+    private final List<Runnable> scheduled = new ArrayList<>();
+    private final List<String> updates = new ArrayList<>();
+    private final FakeNoteServer server = new FakeNoteServer();
+    private ScheduledThreadPoolExecutor scheduler;
+    private NoteAPI api;
+    private NotePushChannel channel;
+
+    @Before
+    public void setUp() {
+        api = new NoteAPI(server.client()) {
+            @Override
+            public WebSocket openPushChannel(WebSocketListener listener) {
+                var socket = new FakeSocket(listener);
+                sockets.add(socket);
+                return socket;
+            }
+        };
+        // Nothing actually waits: reconnects are run by hand, so we can see each delay.
+        scheduler = new ScheduledThreadPoolExecutor(1) {
+            @Override
+            public ScheduledFuture<?> schedule(Runnable command, long delay, TimeUnit unit) {
+                delays.add(unit.toMillis(delay));
+                scheduled.add(command);
+                return null;
+            }
+        };
+        channel = new NotePushChannel(api, scheduler, note -> {}, (title, stable, ops) ->
+                updates.add(title + " " + stable + " " + Arrays.toString(ops)));
+    }
+
+    @Test
+    public void updatesRoundTrip() {
+        channel.subscribe("a");
+        var socket = open();
+        var ops = new byte[]{1, 2, 3};
+
+        assertTrue(channel.sendUpdate("a", ops));
+        var sent = socket.sent.get(socket.sent.size() - 1);
+        assertEquals(NotePushChannel.encodeUpdate("a", 0, ops), sent);
+
+        // What the server sends back has the stable counter filled in.
+        socket.receive(NotePushChannel.encodeUpdate("a", 42, ops));
+        socket.receive(NotePushChannel.encodeUpdate("a", 43, new byte[0]));
+        assertEquals(List.of("a 42 [1, 2, 3]", "a 43 []"), updates);
+    }
+
+    @Test
+    public void badOrUnwantedUpdatesAreIgnored() {
+        channel.subscribe("a");
+        var socket = open();
+
+        socket.receive(NotePushChannel.encodeUpdate("b", 1, new byte[]{1}));
+        var truncated = NotePushChannel.encodeUpdate("a", 1, new byte[0]);
+        socket.receive(truncated.substring(0, truncated.size() - 1));
+        socket.receive(ByteString.EMPTY);
+        assertTrue(updates.isEmpty());
+    }
+
+    @Test
+    public void nothingIsSentWhileDisconnected() {
+        channel.subscribe("a");
+        assertFalse(channel.sendUpdate("a", new byte[]{1}));
+        assertTrue(sockets.get(0).sent.isEmpty());
+    }
+
+    @Test
+    public void reconnectsBackOffUpToAMinute() {
+        channel.subscribe("a");
+        for (int i = 0; i < 9; i++) {
+            drop();
+            reconnect();
+        }
+        assertEquals(List.of(1000L, 2000L, 4000L, 8000L, 16000L, 32000L, 60000L, 60000L, 60000L), delays);
+        assertFalse(channel.isConnected());
+    }
+
+    @Test
+    public void connectingResetsTheBackoffAndResubscribes() {
+        channel.subscribe("a");
+        channel.subscribe("b");
+        drop();
+        reconnect();
+        drop();
+        reconnect();
+        var socket = open();
+        assertTrue(channel.isConnected());
+        assertEquals(2, socket.sent.size());
+
+        drop();
+        assertFalse(channel.isConnected());
+        assertEquals(List.of(1000L, 2000L, 1000L), delays);
+    }
+
+    @Test
+    public void noReconnectsOnceNobodyIsSubscribed() {
+        channel.subscribe("a");
+        open();
+        channel.unsubscribe("a");
+        assertTrue(sockets.get(0).closed);
+        assertTrue(delays.isEmpty());
+    }
+
+    /**
+     * How long it takes for someone else's edit to show up on an open note, polled against
+     * pushed, over an hour of a fake clock. Polling only sees an edit on the first tick its
+     * note's schedule is due after it; push sees it as soon as the server sends it.
+     */
+    @Test
+    public void editToVisibleBenchmark() {
+        final long hourMs = 60 * 60 * 1000;
+        var config = PollSchedule.Config.defaults();
+        var random = new Random(0);
+
+        // Someone edits the note every 2 to 60 seconds.
+        var edits = new ArrayList<Long>();
+        for (long at = 0; at < hourMs; at += 2000 + random.nextInt(58_000)) edits.add(at);
+        edits.remove(0);
+        server.put(new Note("a", "edit 0", 0));
+        api.pullFromRemote("a");
+
+        // Polled: the poller ticks every floorMs, and pulls the note whenever it's due.
+        var polled = new ArrayList<Long>();
+        var schedule = new PollSchedule(config, random, 0);
+        var next = 0;
+        server.resetCounts();
+        for (long now = 0; now <= hourMs; now += config.floorMs) {
+            while (next < edits.size() && edits.get(next) <= now) {
+                server.put(new Note("a", "edit " + (next + 1), next + 1));
+                next++;
+            }
+            if (!schedule.isDue(now)) continue;
+
+            var note = api.pullFromRemote("a");
+            if (note == null) {
+                schedule.onUnchanged(now);
+                continue;
+            }
+            // Everything edited since the last pull shows up now.
+            for (long i = polled.size(); i < note.version; i++) polled.add(now - edits.get((int) i));
+            schedule.onChanged(now);
+        }
+        var polls = server.requests.get();
+
+        // Pushed: the server sends each edit down the socket as it's saved.
+        var clock = new long[1];
+        var pushed = new ArrayList<Long>();
+        var pushChannel = new NotePushChannel(api, scheduler,
+                note -> pushed.add(clock[0] - edits.get((int) note.version - 1)), null);
+        pushChannel.subscribe("a");
+        var socket = open();
+        for (int i = 0; i < edits.size(); i++) {
+            clock[0] = edits.get(i);
+            socket.receive(new Note("a", "edit " + (i + 1), i + 1).toJSON());
+        }
+
+        assertEquals(edits.size(), polled.size());
+        assertEquals(edits.size(), pushed.size());
+        Collections.sort(polled);
+        System.out.printf(
+                "%d edits in an hour: polling %d requests, median %.1f s, p95 %.1f s, max %.1f s to show up;"
+                        + " push %d frames, max %d ms%n",
+                edits.size(), polls, polled.get(polled.size() / 2) / 1e3,
+                polled.get(polled.size() * 95 / 100) / 1e3, polled.get(polled.size() - 1) / 1e3,
+                pushed.size(), Collections.max(pushed)
+        );
+        // However far the schedule backed off, an edit never waits longer than its ceiling.
+        assertTrue(polled.get(polled.size() - 1) <= config.ceilingMs + config.floorMs);
+        assertEquals(0, (long) Collections.max(pushed));
+    }
+
+    /** The latest socket opens. */
+    private FakeSocket open() {
+        var socket = sockets.get(sockets.size() - 1);
+        socket.listener.onOpen(socket, null);
+        return socket;
+    }
+
+    /** The latest socket fails. */
+    private void drop() {
+        var socket = sockets.get(sockets.size() - 1);
+        socket.listener.onFailure(socket, new IOException("dropped"), null);
+    }
+
+    /** The latest scheduled reconnect is due. */
+    private void reconnect() {
+        scheduled.remove(scheduled.size() - 1).run();
+    }
+
+    private static class FakeSocket implements WebSocket {
+        final WebSocketListener listener;
+        final List<Object> sent = new ArrayList<>();
+        boolean closed = false;
+
+        FakeSocket(WebSocketListener listener) {
+            this.listener = listener;
+        }
+
+        void receive(ByteString bytes) {
+            listener.onMessage(this, bytes);
+        }
+
+        void receive(String text) {
+            listener.onMessage(this, text);
+        }
+
+        @NonNull
+        @Override
+        public Request request() {
+            return new Request.Builder().url("wss://example.com").build();
+        }
+
+        @Override
+        public long queueSize() {
+            return 0;
+        }
+
+        @Override
+        public boolean send(@NonNull String text) {
+            sent.add(text);
+            return true;
+        }
+
+        @Override
+        public boolean send(@NonNull ByteString bytes) {
+            sent.add(bytes);
+            return true;
+        }
+
+        @Override
+        public boolean close(int code, String reason) {
+            closed = true;
+            return true;
+        }
+
+        @Override
+        public void cancel() {
+            closed = true;
+        }
+    }
+}
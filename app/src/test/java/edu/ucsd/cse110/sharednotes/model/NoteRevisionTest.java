@@ -0,0 +1,47 @@
+package edu.ucsd.cse110.sharednotes.model;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class NoteRevisionTest {
+    /** A chain for going from the first version to each of the others, one save at a time. */
+    private static List<NoteRevision> chain(String... versions) {
+        var chain = new ArrayList<NoteRevision>();
+        chain.add(NoteRevision.keyframe("a", 1, versions[0], 0));
+        for (int i = 1; i < versions.length; i++) {
+            var delta = NoteDelta.between(versions[i - 1], versions[i]);
+            chain.add(NoteRevision.delta("a", i + 1, i, delta, versions[i].length(), 0));
+        }
+        return chain;
+    }
+
+    @Test
+    public void keyframeAloneIsItsContent() {
+        assertEquals("one", NoteRevision.rebuild(chain("one")));
+    }
+
+    @Test
+    public void deltasAreAppliedInOrder() {
+        var versions = new String[]{"eggs", "eggs, milk", "bread, eggs, milk", "bread, milk", "", "tea"};
+        var chain = chain(versions);
+        for (int i = 0; i < versions.length; i++) {
+            assertEquals(versions[i], NoteRevision.rebuild(chain.subList(0, i + 1)));
+        }
+    }
+
+    @Test
+    public void laterKeyframeStartsOver() {
+        var chain = chain("one", "one two");
+        chain.add(NoteRevision.keyframe("a", 3, "three", 0));
+        assertEquals("three", NoteRevision.rebuild(chain));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void chainMustStartWithAKeyframe() {
+        NoteRevision.rebuild(chain("one", "two").subList(1, 2));
+    }
+}
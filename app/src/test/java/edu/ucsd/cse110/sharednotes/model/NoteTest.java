@@ -0,0 +1,37 @@
+package edu.ucsd.cse110.sharednotes.model;
+
+import com.google.gson.JsonParseException;
+
+import org.junit.Test;
+
+import java.io.StringReader;
+
+import static org.junit.Assert.*;
+
+public class NoteTest {
+    @Test
+    public void jsonRoundTrips() {
+        var note = new Note("groceries", "eggs\n\"milk\"", 7, VersionVector.EMPTY.increment("a").increment("b"));
+        var parsed = Note.fromJSON(note.toJSON());
+        assertEquals(note.title, parsed.title);
+        assertEquals(note.content, parsed.content);
+        assertEquals(note.version, parsed.version);
+        assertEquals(note.vector, parsed.vector);
+    }
+
+    @Test
+    public void parsesWhatTheServerSends() {
+        // Versions as strings (as our own uploads used to send them), nulls, and fields we don't know.
+        var json = "{\"title\":\"a\",\"content\":null,\"version\":\"12\",\"id\":3,\"extra\":{\"x\":[1]}}";
+        var note = Note.fromJSON(new StringReader(json));
+        assertEquals("a", note.title);
+        assertEquals("", note.content);
+        assertEquals(12, note.version);
+        assertTrue(note.vector.isEmpty());
+    }
+
+    @Test(expected = JsonParseException.class)
+    public void noteMustHaveATitle() {
+        Note.fromJSON("{\"content\":\"a\"}");
+    }
+}
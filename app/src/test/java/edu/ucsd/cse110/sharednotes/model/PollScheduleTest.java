@@ -0,0 +1,62 @@
+package edu.ucsd.cse110.sharednotes.model;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * The schedule never reads the clock itself, so we can just pass in whatever "now" we want.
+ */
+public class PollScheduleTest {
+    private static final PollSchedule.Config CONFIG = new PollSchedule.Config(1000, 4000, 32_000, 2.0, 0.25);
+
+    @Test
+    public void newScheduleIsDueImmediately() {
+        var schedule = new PollSchedule(CONFIG, new Random(0), 500);
+        assertTrue(schedule.isDue(500));
+    }
+
+    @Test
+    public void changesSpeedUpToTheFloor() {
+        var schedule = new PollSchedule(CONFIG, new Random(0), 0);
+        long now = 0;
+        for (int i = 0; i < 10; i++) {
+            schedule.onChanged(now);
+            assertFalse(schedule.isDue(now + schedule.intervalMs() - 1));
+            now = schedule.nextDueMs();
+        }
+        assertEquals(1000, schedule.intervalMs());
+    }
+
+    @Test
+    public void idleBacksOffToTheCeilingWithJitter() {
+        var schedule = new PollSchedule(CONFIG, new Random(0), 0);
+        long now = 0;
+        for (int i = 0; i < 10; i++) {
+            schedule.onUnchanged(now);
+            var wait = schedule.nextDueMs() - now;
+            assertTrue(wait <= schedule.intervalMs());
+            assertTrue(wait >= schedule.intervalMs() * 3 / 4);
+            now = schedule.nextDueMs();
+        }
+        assertEquals(32_000, schedule.intervalMs());
+    }
+
+    @Test
+    public void resetGoesBackToTheFloor() {
+        var schedule = new PollSchedule(CONFIG, new Random(0), 0);
+        for (int i = 0; i < 10; i++) schedule.onUnchanged(0);
+
+        schedule.reset(100_000);
+        assertEquals(1000, schedule.intervalMs());
+        assertFalse(schedule.isDue(100_999));
+        assertTrue(schedule.isDue(101_000));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsFloorAboveCeiling() {
+        new PollSchedule.Config(5000, 5000, 1000, 2.0, 0);
+    }
+}
@@ -0,0 +1,218 @@
+package edu.ucsd.cse110.sharednotes.model;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class RgaTextTest {
+    @Test
+    public void localEditsChangeTheText() {
+        var doc = RgaText.seed("hello world", "v1", "a");
+        doc.edit(new NoteDelta(5, 6, ", there"));
+        assertEquals("hello, there", doc.text());
+        doc.edit(new NoteDelta(0, 0, "oh "));
+        assertEquals("oh hello, there", doc.text());
+    }
+
+    @Test
+    public void concurrentInsertsAtTheSamePlaceConverge() {
+        var a = RgaText.seed("ab", "v1", "a");
+        var b = RgaText.seed("ab", "v1", "b");
+
+        var fromA = a.edit(new NoteDelta(1, 0, "xx"));
+        var fromB = b.edit(new NoteDelta(1, 0, "yy"));
+        a.apply(fromB);
+        b.apply(fromA);
+
+        assertEquals(a.text(), b.text());
+        // Neither side's typing gets interleaved with the other's.
+        assertTrue(a.text().equals("axxyyb") || a.text().equals("ayyxxb"));
+    }
+
+    @Test
+    public void remoteEditsComeBackAsSplices() {
+        var a = RgaText.seed("one two", "v1", "a");
+        var b = RgaText.seed("one two", "v1", "b");
+
+        var changes = b.apply(a.edit(new NoteDelta(4, 3, "three")));
+
+        var text = "one two";
+        for (var change : changes) text = change.apply(text);
+        assertEquals("one three", text);
+        // The typing arrives as one splice, not one per character.
+        assertEquals(2, changes.size());
+    }
+
+    @Test
+    public void opsArrivingOutOfOrderWait() {
+        var a = new RgaText("a");
+        var b = new RgaText("b");
+
+        var first = a.edit(new NoteDelta(0, 0, "abc"));
+        var second = a.edit(new NoteDelta(1, 1, ""));
+        b.apply(second);
+        assertEquals("", b.text());
+        b.apply(first);
+        assertEquals("ac", b.text());
+    }
+
+    @Test
+    public void randomHistoriesConverge() {
+        for (int seed = 0; seed < 200; seed++) {
+            var random = new Random(seed);
+            var docs = new RgaText[3];
+            var inboxes = new ArrayList<List<byte[]>>();
+            for (int i = 0; i < docs.length; i++) {
+                docs[i] = RgaText.seed("a shared note\n", "v1", "device" + i);
+                inboxes.add(new ArrayList<>());
+            }
+
+            for (int step = 0; step < 40; step++) {
+                var who = random.nextInt(docs.length);
+                var inbox = inboxes.get(who);
+                if (random.nextBoolean() && !inbox.isEmpty()) {
+                    docs[who].apply(RgaText.decodeOps(inbox.remove(random.nextInt(inbox.size()))));
+                } else {
+                    var ops = RgaText.encodeOps(docs[who].edit(randomEdit(random, docs[who].text())));
+                    for (int other = 0; other < docs.length; other++) {
+                        if (other != who) inboxes.get(other).add(ops);
+                    }
+                }
+                if (random.nextInt(10) == 0) {
+                    // Storing and loading a document in the middle of it all changes nothing.
+                    docs[who] = RgaText.decode(docs[who].encode(), "device" + who);
+                }
+            }
+            for (int i = 0; i < docs.length; i++) {
+                Collections.shuffle(inboxes.get(i), random);
+                for (var ops : inboxes.get(i)) docs[i].apply(RgaText.decodeOps(ops));
+            }
+
+            assertEquals(docs[0].text(), docs[1].text());
+            assertEquals(docs[0].text(), docs[2].text());
+        }
+    }
+
+    @Test
+    public void encodingRoundTrips() {
+        var doc = RgaText.seed("some text", "v1", "a");
+        doc.edit(new NoteDelta(5, 4, "more text, typed"));
+        doc.edit(new NoteDelta(0, 5, ""));
+
+        var decoded = RgaText.decode(doc.encode(), "a");
+        assertEquals(doc.text(), decoded.text());
+        assertEquals(doc.size(), decoded.size());
+        assertEquals(doc.clock(), decoded.clock());
+    }
+
+    @Test
+    public void compactionDropsStableTombstones() {
+        var doc = new RgaText("a");
+        doc.edit(new NoteDelta(0, 0, "hello world"));
+        var beforeDelete = doc.clock();
+        doc.edit(new NoteDelta(0, 6, ""));
+        var afterDelete = doc.clock();
+        doc.edit(new NoteDelta(5, 0, "!"));
+
+        assertEquals(0, doc.compact(beforeDelete));
+        assertEquals(6, doc.compact(afterDelete));
+        assertEquals("world!", doc.text());
+        assertEquals(6, doc.size());
+
+        // Still editable, and still encodable, afterwards.
+        doc.edit(new NoteDelta(0, 0, "hi "));
+        assertEquals("hi world!", RgaText.decode(doc.encode(), "a").text());
+    }
+
+    @Test
+    public void typedTextEncodesCompactly() {
+        var doc = new RgaText("a");
+        var text = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            var word = "word" + i + " ";
+            doc.edit(new NoteDelta(text.length(), 0, word));
+            text.append(word);
+        }
+        assertTrue(doc.encode().length < text.length() + 64);
+    }
+
+    @Test
+    public void typingBenchmark() {
+        // Someone types a long note, fixing typos as they go, while someone else watches.
+        var random = new Random(0);
+        var typist = new RgaText("a");
+        var watcher = new RgaText("b");
+        var sent = new ArrayList<List<RgaText.Op>>();
+        var text = new StringBuilder();
+
+        var start = System.nanoTime();
+        int ops = 0;
+        while (text.length() < 100_000) {
+            NoteDelta edit;
+            if (random.nextInt(20) == 0 && text.length() > 0) {
+                edit = new NoteDelta(text.length() - 1, 1, "");
+            } else {
+                var at = random.nextInt(50) == 0 ? random.nextInt(text.length() + 1) : text.length();
+                edit = new NoteDelta(at, 0, String.valueOf((char) ('a' + random.nextInt(26))));
+            }
+            var next = typist.edit(edit);
+            ops += next.size();
+            sent.add(next);
+            text.replace(edit.start, edit.start + edit.deleteCount, edit.insert);
+        }
+        var typed = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (var next : sent) watcher.apply(next);
+        var applied = System.nanoTime() - start;
+
+        assertEquals(text.toString(), watcher.text());
+        typist.compact(typist.clock());
+        var stored = typist.encode().length;
+        System.out.printf(
+                "Typing %d chars (%d ops): local %.0f ops/s, remote %.0f ops/s, stored %.2fx the text%n",
+                text.length(), ops, ops / (typed / 1e9), ops / (applied / 1e9),
+                stored / (double) text.length()
+        );
+        assertTrue(stored < text.length() * 3 / 2);
+    }
+
+    @Test
+    public void randomEditsBenchmark() {
+        var random = new Random(0);
+        var a = RgaText.seed("a shared note\n", "v1", "a");
+        var b = RgaText.seed("a shared note\n", "v1", "b");
+        var sent = new ArrayList<byte[]>();
+        for (int i = 0; i < 10_000; i++) {
+            sent.add(RgaText.encodeOps(a.edit(randomEdit(random, a.text()))));
+        }
+
+        var start = System.nanoTime();
+        int ops = 0;
+        for (var encoded : sent) {
+            var next = RgaText.decodeOps(encoded);
+            ops += next.size();
+            b.apply(next);
+        }
+        var applied = System.nanoTime() - start;
+
+        assertEquals(a.text(), b.text());
+        System.out.printf(
+                "%d random edits (%d ops): remote %.0f ops/s, including decoding%n",
+                sent.size(), ops, ops / (applied / 1e9)
+        );
+    }
+
+    private static NoteDelta randomEdit(Random random, String text) {
+        var start = random.nextInt(text.length() + 1);
+        var delete = random.nextInt(Math.min(3, text.length() - start) + 1);
+        var insert = new StringBuilder();
+        for (int i = random.nextInt(5); i > 0; i--) insert.append((char) ('a' + random.nextInt(26)));
+        return new NoteDelta(start, delete, insert.toString());
+    }
+}
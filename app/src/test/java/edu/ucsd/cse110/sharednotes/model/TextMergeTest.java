@@ -0,0 +1,136 @@
+package edu.ucsd.cse110.sharednotes.model;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class TextMergeTest {
+    @Test
+    public void takesWhicheverSideChanged() {
+        assertEquals("a\nB\nc\n", TextMerge.merge("a\nb\nc\n", "a\nB\nc\n", "a\nb\nc\n"));
+        assertEquals("a\nB\nc\n", TextMerge.merge("a\nb\nc\n", "a\nb\nc\n", "a\nB\nc\n"));
+    }
+
+    @Test
+    public void combinesEditsToDifferentLines() {
+        var base = "one\ntwo\nthree\nfour\nfive\n";
+        var ours = "ONE\ntwo\nthree\nfour\nfive\n";
+        var theirs = "one\ntwo\nthree\nfour\nfive\nsix\n";
+        assertEquals("ONE\ntwo\nthree\nfour\nfive\nsix\n", TextMerge.merge(base, ours, theirs));
+    }
+
+    @Test
+    public void acceptsTheSameEditOnBothSides() {
+        assertEquals("a\nX\nc\n", TextMerge.merge("a\nb\nc\n", "a\nX\nc\n", "a\nX\nc\n"));
+    }
+
+    @Test
+    public void givesUpOnDifferentEditsToTheSameLine() {
+        assertNull(TextMerge.merge("a\nb\nc\n", "a\nX\nc\n", "a\nY\nc\n"));
+    }
+
+    @Test
+    public void diffKeepsEditsInSeveralPlacesApart() {
+        var before = "one\ntwo\nthree\nfour\nfive\n";
+        var after = "One\ntwo\nthree\nfour\nfive\nsix\n";
+        var changes = TextMerge.diff(before, after);
+        assertEquals(2, changes.size());
+        assertEquals(0, changes.get(0).start);
+        assertEquals(1, changes.get(0).deleteCount);
+        assertEquals("O", changes.get(0).insert);
+        assertEquals(before.length(), changes.get(1).start);
+        assertEquals("six\n", changes.get(1).insert);
+        assertEquals(after, applyAll(before, changes));
+    }
+
+    @Test
+    public void diffTurnsOneIntoTheOther() {
+        var random = new Random(0);
+        for (int n = 0; n < 200; n++) {
+            var before = lines(random, 30);
+            var after = before;
+            for (int i = random.nextInt(5); i >= 0; i--) {
+                var at = random.nextInt(after.length() + 1);
+                var end = Math.min(after.length(), at + random.nextInt(20));
+                after = after.substring(0, at) + lines(random, random.nextInt(3)) + after.substring(end);
+            }
+            assertEquals(after, applyAll(before, TextMerge.diff(before, after)));
+        }
+        assertTrue(TextMerge.diff("same\n", "same\n").isEmpty());
+    }
+
+    private static String applyAll(String text, List<NoteDelta> changes) {
+        for (var change : changes) text = change.apply(text);
+        return text;
+    }
+
+    private static String lines(Random random, int count) {
+        var text = new StringBuilder();
+        for (int i = 0; i < count; i++) text.append("line ").append(random.nextInt(10)).append('\n');
+        return text.toString();
+    }
+
+    @Test
+    public void keepsTextWithoutATrailingNewline() {
+        assertEquals("x\na\nb\nmine", TextMerge.merge("a\nb", "a\nb\nmine", "x\na\nb"));
+    }
+
+    @Test
+    public void mergesScatteredEditsToALargeNote() {
+        var lines = new ArrayList<String>();
+        for (int i = 0; i < 2500; i++) lines.add("line " + i + " of a fairly long shared note\n");
+        var base = String.join("", lines);
+
+        List<String> ourLines = new ArrayList<>(lines);
+        List<String> theirLines = new ArrayList<>(lines);
+        for (int i = 10; i < lines.size(); i += 200) ourLines.set(i, "ours " + i + "\n");
+        for (int i = 110; i < lines.size(); i += 200) theirLines.set(i, "theirs " + i + "\n");
+        theirLines.add(500, "inserted\n");
+
+        var merged = TextMerge.merge(base, String.join("", ourLines), String.join("", theirLines));
+
+        var expected = new ArrayList<>(ourLines);
+        for (int i = 110; i < lines.size(); i += 200) expected.set(i, "theirs " + i + "\n");
+        expected.add(500, "inserted\n");
+        assertEquals(String.join("", expected), merged);
+    }
+
+    @Test
+    public void largeNotesMergeWithinTheEditBound() {
+        // A 100 KB note, polled every 3 seconds: the diff's work (and memory) is bounded by the
+        // number of edits, not the size of the note.
+        var lines = new ArrayList<String>();
+        for (int i = 0; i < 2500; i++) lines.add("line " + i + " of a fairly long shared note\n");
+        var base = String.join("", lines);
+
+        // A few scattered edits on each side, then a lot of them: both well within the bound.
+        for (var every : new int[]{200, 10}) {
+            List<String> ourLines = new ArrayList<>(lines);
+            List<String> theirLines = new ArrayList<>(lines);
+            List<String> expected = new ArrayList<>(lines);
+            for (int i = 0; i < lines.size(); i += every) {
+                ourLines.set(i, "ours " + i + "\n");
+                expected.set(i, "ours " + i + "\n");
+            }
+            for (int i = every / 2; i < lines.size(); i += every) {
+                theirLines.set(i, "theirs " + i + "\n");
+                expected.set(i, "theirs " + i + "\n");
+            }
+            // Each changed line is a delete and an insert.
+            assertTrue(2 * lines.size() / every < TextMerge.MAX_EDITS);
+
+            var merged = TextMerge.merge(base, String.join("", ourLines), String.join("", theirLines));
+            assertEquals(String.join("", expected), merged);
+        }
+
+        // Past the bound, the merge gives up instead of doing work that grows with its square.
+        List<String> rewritten = new ArrayList<>(lines);
+        for (int i = 0; i < lines.size(); i++) rewritten.set(i, "rewritten " + i + "\n");
+        assertTrue(2 * lines.size() > TextMerge.MAX_EDITS);
+        assertNull(TextMerge.merge(base, String.join("", rewritten), base + "more\n"));
+    }
+}
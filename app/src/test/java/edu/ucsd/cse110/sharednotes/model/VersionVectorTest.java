@@ -0,0 +1,57 @@
+package edu.ucsd.cse110.sharednotes.model;
+
+import org.junit.Test;
+
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class VersionVectorTest {
+    private static final VersionVector BASE = VersionVector.EMPTY.increment("a").increment("b");
+
+    @Test
+    public void editsOnOneDeviceAreOrdered() {
+        var next = BASE.increment("a");
+        assertEquals(VersionVector.Order.AFTER, next.compare(BASE));
+        assertEquals(VersionVector.Order.BEFORE, BASE.compare(next));
+        assertEquals(VersionVector.Order.EQUAL, BASE.compare(VersionVector.decode(VersionVector.encode(BASE))));
+    }
+
+    @Test
+    public void editsOnTwoDevicesAreConcurrent() {
+        var ours = BASE.increment("a");
+        var theirs = BASE.increment("c");
+        assertEquals(VersionVector.Order.CONCURRENT, ours.compare(theirs));
+        assertEquals(VersionVector.Order.CONCURRENT, theirs.compare(ours));
+    }
+
+    @Test
+    public void mergeHasSeenBoth() {
+        var ours = BASE.increment("a");
+        var theirs = BASE.increment("c").increment("c");
+        var merged = ours.merge(theirs);
+
+        assertEquals(2, merged.get("a"));
+        assertEquals(1, merged.get("b"));
+        assertEquals(2, merged.get("c"));
+        assertEquals(VersionVector.Order.AFTER, merged.increment("a").compare(ours));
+        assertEquals(VersionVector.Order.AFTER, merged.increment("a").compare(theirs));
+    }
+
+    @Test
+    public void withoutLeavesOutOneDevice() {
+        var vector = BASE.increment("a");
+        assertEquals(0, vector.without("a").get("a"));
+        assertEquals(1, vector.without("a").get("b"));
+        assertEquals(VersionVector.Order.EQUAL, vector.without("a").compare(BASE.without("a")));
+        assertSame(vector, vector.without("c"));
+    }
+
+    @Test
+    public void encodingRoundTrips() {
+        var vector = VersionVector.of(Map.of("device-1", 3L, "b", 12L));
+        assertEquals("b=12,device-1=3", VersionVector.encode(vector));
+        assertEquals(vector, VersionVector.decode(VersionVector.encode(vector)));
+        assertSame(VersionVector.EMPTY, VersionVector.decode(""));
+    }
+}